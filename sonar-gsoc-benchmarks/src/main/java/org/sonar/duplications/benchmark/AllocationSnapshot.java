@@ -0,0 +1,130 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Allows to measure memory allocated in heap by all threads, including threads of executors used by benchmark.
+ * <p>
+ * Memory allocated by thread, which terminated before {@link #accumulatedBytes()}, can't be retrieved from JVM,
+ * unless thread was created by {@link #trackingThreadFactory(ThreadFactory)}, which records allocations of thread at its exit.
+ * So measurement is considered unavailable, if some untracked thread started after creation of snapshot already terminated.
+ * Allocations of untracked threads, which existed before creation of snapshot and terminated after, are not taken into account.
+ * </p>
+ */
+public final class AllocationSnapshot {
+
+  /**
+   * Pairs of id of thread and bytes allocated by it, recorded at exit of tracked threads, in order of exit.
+   */
+  private static final List<long[]> EXITED_THREADS = Lists.newArrayList();
+
+  private final Map<Long, Long> allocatedBytes = MemoryUtils.getAllocatedBytesByThread();
+  private final long startedThreads = MemoryUtils.getTotalStartedThreadCount();
+  private final int exitedThreads = exitedThreadsCount();
+
+  /**
+   * @return factory, which creates threads by given factory, but records memory allocated by thread at its exit,
+   *         so that it is measured by snapshots even after termination of thread
+   */
+  public static ThreadFactory trackingThreadFactory(final ThreadFactory delegate) {
+    return new ThreadFactory() {
+      public Thread newThread(final Runnable r) {
+        return delegate.newThread(new Runnable() {
+          public void run() {
+            try {
+              r.run();
+            } finally {
+              recordExit();
+            }
+          }
+        });
+      }
+    };
+  }
+
+  private static void recordExit() {
+    long bytes = MemoryUtils.getAllocatedBytes();
+    if (bytes >= 0) {
+      synchronized (EXITED_THREADS) {
+        EXITED_THREADS.add(new long[] { Thread.currentThread().getId(), bytes });
+      }
+    }
+  }
+
+  private static int exitedThreadsCount() {
+    synchronized (EXITED_THREADS) {
+      return EXITED_THREADS.size();
+    }
+  }
+
+  /**
+   * @return bytes allocated by all threads since creation of this snapshot,
+   *         or -1 if measurement is not supported by JVM or some untracked threads, which were started after creation of this snapshot, terminated
+   */
+  public long accumulatedBytes() {
+    if (allocatedBytes == null) {
+      return -1;
+    }
+    // threads, which start after this point, can only decrease counter below
+    long newThreads = MemoryUtils.getTotalStartedThreadCount() - startedThreads;
+    Map<Long, Long> current = MemoryUtils.getAllocatedBytesByThread();
+    if (current == null) {
+      return -1;
+    }
+    List<long[]> exited;
+    synchronized (EXITED_THREADS) {
+      exited = Lists.newArrayList(EXITED_THREADS.subList(exitedThreads, EXITED_THREADS.size()));
+    }
+    long sum = 0;
+    for (long[] exit : exited) {
+      // thread might be still alive right after recording
+      current.remove(exit[0]);
+      Long before = allocatedBytes.get(exit[0]);
+      if (before == null) {
+        newThreads--;
+        sum += exit[1];
+      } else {
+        sum += exit[1] - before;
+      }
+    }
+    for (Map.Entry<Long, Long> entry : current.entrySet()) {
+      Long before = allocatedBytes.get(entry.getKey());
+      if (before == null) {
+        newThreads--;
+        sum += entry.getValue();
+      } else {
+        sum += entry.getValue() - before;
+      }
+    }
+    return newThreads > 0 ? -1 : sum;
+  }
+
+  @Override
+  public String toString() {
+    return "Allocated bytes: " + accumulatedBytes();
+  }
+
+}
@@ -31,20 +31,21 @@ public final class Average {
    */
   public final double stddev;
 
-  private Average(double avg, double stddev) {
+  Average(double avg, double stddev) {
     this.avg = avg;
     this.stddev = stddev;
   }
 
   public static Average from(long[] values) {
     long sum = 0;
-    long sumSquares = 0;
+    // double to avoid overflow for big values, e.g. allocated bytes
+    double sumSquares = 0;
     for (long l : values) {
       sum += l;
-      sumSquares += l * l;
+      sumSquares += (double) l * l;
     }
     double avg = sum / (double) values.length;
-    return new Average(avg, Math.sqrt(sumSquares / (double) values.length - avg * avg));
+    return new Average(avg, Math.sqrt(Math.max(0, sumSquares / values.length - avg * avg)));
   }
 
 }
@@ -19,6 +19,8 @@
  */
 package org.sonar.duplications.benchmark;
 
+import java.util.Arrays;
+
 public abstract class Benchmark {
 
   private boolean lastRound;
@@ -44,19 +46,34 @@ public abstract class Benchmark {
     // benchmark rounds
     long[] peakMemory = new long[benchmarkRounds];
     long[] roundTime = new long[benchmarkRounds];
+    long[] allocated = new long[benchmarkRounds];
+    long[] gcCount = new long[benchmarkRounds];
+    long[] gcTime = new long[benchmarkRounds];
     for (int i = 0; i < benchmarkRounds; i++) {
       if (callgc) {
         MemoryUtils.cleanup();
       }
       MemoryUtils.resetPeakUsage();
+      GCSnapshot gcSnapshot = new GCSnapshot();
+      AllocationSnapshot allocationSnapshot = new AllocationSnapshot();
       long time = System.currentTimeMillis();
       lastRound = i == benchmarkRounds - 1;
       internalRunRound();
       time = System.currentTimeMillis() - time;
       roundTime[i] = time;
       peakMemory[i] = MemoryUtils.getPeakUsage();
+      allocated[i] = allocationSnapshot.accumulatedBytes();
+      gcCount[i] = gcSnapshot.accumulatedInvocations();
+      gcTime[i] = gcSnapshot.accumulatedTime();
     }
     benchTime = System.currentTimeMillis() - benchTime;
+    // average with unavailable measurements would be misleading
+    for (long bytes : allocated) {
+      if (bytes < 0) {
+        Arrays.fill(allocated, -1);
+        break;
+      }
+    }
 
     BenchmarkResult result = new BenchmarkResult(
         getName(),
@@ -65,7 +82,10 @@ public abstract class Benchmark {
         warmupTime,
         benchTime,
         Average.from(roundTime),
-        Average.from(peakMemory));
+        Average.from(peakMemory),
+        Average.from(allocated),
+        Average.from(gcCount),
+        Average.from(gcTime));
     System.out.println(result);
     return result;
   }
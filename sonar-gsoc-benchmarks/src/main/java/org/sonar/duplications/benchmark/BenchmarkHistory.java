@@ -0,0 +1,89 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * History of results, which is stored in CSV file (see {@link ResultsFormat#csvHeader()}) and only grows.
+ * Rows with different number of columns, i.e. written by other version of format, are ignored.
+ */
+public class BenchmarkHistory {
+
+  private static final String CHARSET = "UTF-8";
+
+  private final File file;
+
+  public BenchmarkHistory(File file) {
+    this.file = file;
+  }
+
+  public void append(long timestamp, Environment environment, Iterable<BenchmarkResult> results) throws IOException {
+    boolean empty = !file.exists() || file.length() == 0;
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), CHARSET);
+    try {
+      if (empty) {
+        writer.write(ResultsFormat.csvHeader());
+        writer.write('\n');
+      }
+      for (BenchmarkResult result : results) {
+        writer.write(ResultsFormat.toCsv(timestamp, environment, result));
+        writer.write('\n');
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * @return latest result of benchmark with given name, which was obtained in comparable environment, or null if there is no such result
+   * @see Environment#isComparableWith(Environment)
+   */
+  public BenchmarkResult getBaseline(Environment environment, String name) throws IOException {
+    if (!file.exists()) {
+      return null;
+    }
+    BenchmarkResult baseline = null;
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+    try {
+      // skip header
+      String line = reader.readLine();
+      while ((line = reader.readLine()) != null) {
+        String[] values = ResultsFormat.parseCsvLine(line);
+        if (values.length == ResultsFormat.CSV_COLUMNS.length
+            && name.equals(values[1])
+            && environment.isComparableWith(ResultsFormat.environmentFromCsv(values))) {
+          baseline = ResultsFormat.resultFromCsv(values);
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return baseline;
+  }
+
+}
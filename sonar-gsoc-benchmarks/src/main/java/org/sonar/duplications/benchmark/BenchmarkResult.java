@@ -28,10 +28,19 @@ public class BenchmarkResult {
   public final int benchmarkRounds;
   public final Average time;
   public final Average memory;
+
+  /**
+   * Bytes allocated by all threads during round, or -1 if measurement is not supported by JVM
+   * or not possible, because threads started during round terminated before its end (see {@link AllocationSnapshot}).
+   */
+  public final Average allocated;
+  public final Average gcCount;
+  public final Average gcTime;
   public final long warmupTime;
   public final long benchTime;
 
-  BenchmarkResult(String name, int warmupRounds, int benchmarkRounds, long warmupTime, long benchTime, Average time, Average memory) {
+  BenchmarkResult(String name, int warmupRounds, int benchmarkRounds, long warmupTime, long benchTime, Average time, Average memory,
+      Average allocated, Average gcCount, Average gcTime) {
     this.name = name;
     this.warmupRounds = warmupRounds;
     this.benchmarkRounds = benchmarkRounds;
@@ -39,11 +48,15 @@ public class BenchmarkResult {
     this.benchTime = benchTime;
     this.time = time;
     this.memory = memory;
+    this.allocated = allocated;
+    this.gcCount = gcCount;
+    this.gcTime = gcTime;
   }
 
   @Override
   public String toString() {
-    return String.format(Locale.ENGLISH, "%s [measured %d out of %d rounds] time: %.2f [+-%.2f], memory: %.2f [+-%.2f], total: %.2f, warm: %.2f, bench: %.2f",
+    return String.format(Locale.ENGLISH, "%s [measured %d out of %d rounds] time: %.2f [+-%.2f], memory: %.2f [+-%.2f], "
+        + "allocated: %.2f [+-%.2f], gc: %.1f [+-%.1f], gc time: %.2f [+-%.2f], total: %.2f, warm: %.2f, bench: %.2f",
         name,
         benchmarkRounds,
         warmupRounds + benchmarkRounds,
@@ -51,6 +64,12 @@ public class BenchmarkResult {
         millisecondsToSeconds(time.stddev),
         bytesToMegabytes(memory.avg),
         bytesToMegabytes(memory.stddev),
+        bytesToMegabytes(allocated.avg),
+        bytesToMegabytes(allocated.stddev),
+        gcCount.avg,
+        gcCount.stddev,
+        millisecondsToSeconds(gcTime.avg),
+        millisecondsToSeconds(gcTime.stddev),
         millisecondsToSeconds(warmupTime + benchTime),
         millisecondsToSeconds(warmupTime),
         millisecondsToSeconds(benchTime));
@@ -19,12 +19,26 @@
  */
 package org.sonar.duplications.benchmark;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.List;
 
 import com.google.common.collect.Lists;
 
 public class BenchmarksDiff {
 
+  /**
+   * Directory for exported results and history. Results are not recorded, if not specified.
+   */
+  public static final String RESULTS_DIR_PROPERTY = "sonar.benchmark.results";
+  public static final String THRESHOLD_PROPERTY = "sonar.benchmark.threshold";
+  public static final String DEVIATIONS_PROPERTY = "sonar.benchmark.deviations";
+
+  private static final String HISTORY_FILE = "history.csv";
+
   private BenchmarkResult reference;
   private final List<BenchmarkResult> results = Lists.newArrayList();
   
@@ -49,13 +63,89 @@ public class BenchmarksDiff {
     }
     double[] time = new double[results.size()];
     double[] memory = new double[results.size()];
+    double[] allocated = new double[results.size()];
+    double[] gcCount = new double[results.size()];
+    double[] gcTime = new double[results.size()];
     for (int i = 0; i < results.size(); i++) {
       BenchmarkResult result = results.get(i);
       time[i] = result.time.avg;
       memory[i] = result.memory.avg;
+      allocated[i] = result.allocated.avg;
+      gcCount[i] = result.gcCount.avg;
+      gcTime[i] = result.gcTime.avg;
     }
-    System.out.println("Time   " + Difference.from(reference.time.avg, time));
-    System.out.println("Memory " + Difference.from(reference.memory.avg, memory));
+    System.out.println("Time      " + Difference.from(reference.time.avg, time));
+    System.out.println("Memory    " + Difference.from(reference.memory.avg, memory));
+    System.out.println("Allocated " + Difference.from(reference.allocated.avg, allocated));
+    System.out.println("GC count  " + Difference.from(reference.gcCount.avg, gcCount));
+    System.out.println("GC time   " + Difference.from(reference.gcTime.avg, gcTime));
   }
-  
+
+  /**
+   * Exports results as JSON and CSV into directory specified by system property {@value #RESULTS_DIR_PROPERTY}
+   * and compares them with latest results from history in same environment.
+   * If there are no regressions, then results are appended to history, so they become new baseline.
+   * To accept intended regression, run should be repeated with greater {@value #THRESHOLD_PROPERTY}.
+   *
+   * @param corpus name of set of files, which was used as input for benchmarks
+   * @throws AssertionError if time or memory of some benchmark regressed
+   * @see RegressionDetector
+   */
+  public void record(String corpus) throws IOException {
+    String resultsDir = System.getProperty(RESULTS_DIR_PROPERTY);
+    if (resultsDir == null) {
+      return;
+    }
+    File dir = new File(resultsDir);
+    dir.mkdirs();
+    List<BenchmarkResult> all = Lists.newArrayList();
+    if (reference != null) {
+      all.add(reference);
+    }
+    all.addAll(results);
+    long timestamp = System.currentTimeMillis();
+    Environment environment = Environment.current(corpus);
+
+    write(new File(dir, "results-" + timestamp + ".json"), ResultsFormat.toJson(timestamp, environment, all));
+    StringBuilder csv = new StringBuilder(ResultsFormat.csvHeader()).append('\n');
+    for (BenchmarkResult result : all) {
+      csv.append(ResultsFormat.toCsv(timestamp, environment, result)).append('\n');
+    }
+    write(new File(dir, "results-" + timestamp + ".csv"), csv.toString());
+
+    BenchmarkHistory history = new BenchmarkHistory(new File(dir, HISTORY_FILE));
+    RegressionDetector detector = new RegressionDetector(
+        getDoubleProperty(THRESHOLD_PROPERTY, RegressionDetector.DEFAULT_THRESHOLD),
+        getDoubleProperty(DEVIATIONS_PROPERTY, RegressionDetector.DEFAULT_DEVIATIONS));
+    List<String> regressions = Lists.newArrayList();
+    for (BenchmarkResult result : all) {
+      BenchmarkResult baseline = history.getBaseline(environment, result.name);
+      if (baseline != null) {
+        regressions.addAll(detector.check(baseline, result));
+      }
+    }
+    if (!regressions.isEmpty()) {
+      StringBuilder message = new StringBuilder("Regressions in comparison with baseline for ").append(environment);
+      for (String regression : regressions) {
+        message.append("\n  ").append(regression);
+      }
+      throw new AssertionError(message.toString());
+    }
+    history.append(timestamp, environment, all);
+  }
+
+  private static void write(File file, String content) throws IOException {
+    Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      writer.write(content);
+    } finally {
+      writer.close();
+    }
+  }
+
+  private static double getDoubleProperty(String key, double defaultValue) {
+    String value = System.getProperty(key);
+    return value == null ? defaultValue : Double.parseDouble(value);
+  }
+
 }
@@ -0,0 +1,71 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark;
+
+/**
+ * Describes environment, in which benchmarks were executed.
+ * Results are comparable only when obtained in same environment.
+ */
+public final class Environment {
+
+  public final String corpus;
+  public final String javaVersion;
+  public final String jvm;
+  public final String os;
+  public final int cores;
+  public final long maxHeap;
+
+  Environment(String corpus, String javaVersion, String jvm, String os, int cores, long maxHeap) {
+    this.corpus = corpus;
+    this.javaVersion = javaVersion;
+    this.jvm = jvm;
+    this.os = os;
+    this.cores = cores;
+    this.maxHeap = maxHeap;
+  }
+
+  /**
+   * @param corpus name of set of files, which was used as input for benchmarks
+   */
+  public static Environment current(String corpus) {
+    return new Environment(
+        corpus,
+        System.getProperty("java.version"),
+        System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version"),
+        System.getProperty("os.name") + " " + System.getProperty("os.arch"),
+        Runtime.getRuntime().availableProcessors(),
+        Runtime.getRuntime().maxMemory());
+  }
+
+  public boolean isComparableWith(Environment other) {
+    return corpus.equals(other.corpus)
+        && javaVersion.equals(other.javaVersion)
+        && jvm.equals(other.jvm)
+        && os.equals(other.os)
+        && cores == other.cores
+        && maxHeap == other.maxHeap;
+  }
+
+  @Override
+  public String toString() {
+    return corpus + " on " + jvm + " (Java " + javaVersion + "), " + os + ", cores: " + cores + ", max heap: " + maxHeap;
+  }
+
+}
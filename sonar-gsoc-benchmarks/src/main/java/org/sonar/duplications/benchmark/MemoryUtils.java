@@ -22,9 +22,13 @@ package org.sonar.duplications.benchmark;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryPoolMXBean;
 import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
 import java.util.List;
+import java.util.Map;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * See article <a href="http://www.informit.com/guides/content.aspx?g=java&seqNum=249">"Memory Monitoring with Java SE 5"</a>.
@@ -41,9 +45,83 @@ public final class MemoryUtils {
     }
   }
 
+  private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+  /**
+   * Methods of HotSpot extension com.sun.management.ThreadMXBean, which are accessed by reflection,
+   * because they are not available on all JVMs and not available at all in Java 5.
+   */
+  private static final Method GET_THREAD_ALLOCATED_BYTES = findThreadAllocatedBytesMethod(long.class);
+  private static final Method GET_THREADS_ALLOCATED_BYTES = GET_THREAD_ALLOCATED_BYTES == null ? null
+      : findThreadAllocatedBytesMethod(long[].class);
+
   private MemoryUtils() {
   }
 
+  private static Method findThreadAllocatedBytesMethod(Class<?> parameterType) {
+    try {
+      Class<?> extension = Class.forName("com.sun.management.ThreadMXBean");
+      if (!extension.isInstance(THREAD_BEAN)) {
+        return null;
+      }
+      Method method = extension.getMethod("getThreadAllocatedBytes", parameterType);
+      // check that measurement supported and enabled
+      if (parameterType == long.class && (Long) method.invoke(THREAD_BEAN, Thread.currentThread().getId()) < 0) {
+        return null;
+      }
+      return method;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return amount of memory in bytes, which has been allocated in heap by current thread since its start,
+   *         or -1 if measurement is not supported by JVM
+   */
+  public static long getAllocatedBytes() {
+    if (GET_THREAD_ALLOCATED_BYTES == null) {
+      return -1;
+    }
+    try {
+      return (Long) GET_THREAD_ALLOCATED_BYTES.invoke(THREAD_BEAN, Thread.currentThread().getId());
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+  /**
+   * @return amounts of memory in bytes, which have been allocated in heap by each live thread since its start, by id of thread,
+   *         or null if measurement is not supported by JVM
+   */
+  public static Map<Long, Long> getAllocatedBytesByThread() {
+    if (GET_THREADS_ALLOCATED_BYTES == null) {
+      return null;
+    }
+    long[] ids = THREAD_BEAN.getAllThreadIds();
+    long[] allocated;
+    try {
+      allocated = (long[]) GET_THREADS_ALLOCATED_BYTES.invoke(THREAD_BEAN, ids);
+    } catch (Exception e) {
+      return null;
+    }
+    Map<Long, Long> result = Maps.newHashMapWithExpectedSize(ids.length);
+    for (int i = 0; i < ids.length; i++) {
+      // -1 for threads, which terminated after retrieval of ids
+      if (allocated[i] >= 0) {
+        result.put(ids[i], allocated[i]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return number of threads, which have been started since the start of JVM
+   */
+  public static long getTotalStartedThreadCount() {
+    return THREAD_BEAN.getTotalStartedThreadCount();
+  }
+
   /**
    * @return returns peak of used heap memory in bytes, which has been achieved since the start of JVM or since reset of peak.
    * @see #resetPeakUsage()
@@ -0,0 +1,85 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark;
+
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Compares time, peak memory and allocated memory of result with baseline.
+ * <p>
+ * Difference considered as regression only if it exceeds relative threshold and at the same time
+ * exceeds given number of standard errors of difference between averages, so noisy benchmarks don't fail
+ * because of random variations, whereas stable benchmarks are checked precisely.
+ * </p>
+ */
+public class RegressionDetector {
+
+  public static final double DEFAULT_THRESHOLD = 0.1;
+  public static final double DEFAULT_DEVIATIONS = 3;
+
+  private final double threshold;
+  private final double deviations;
+
+  public RegressionDetector() {
+    this(DEFAULT_THRESHOLD, DEFAULT_DEVIATIONS);
+  }
+
+  /**
+   * @param threshold  allowed increase relative to baseline, e.g. 0.1 for 10%
+   * @param deviations number of standard errors, which difference should exceed
+   */
+  public RegressionDetector(double threshold, double deviations) {
+    this.threshold = threshold;
+    this.deviations = deviations;
+  }
+
+  /**
+   * @return descriptions of regressions, empty if there is no regressions
+   */
+  public List<String> check(BenchmarkResult baseline, BenchmarkResult result) {
+    List<String> regressions = Lists.newArrayList();
+    if (isRegression(baseline.time, baseline.benchmarkRounds, result.time, result.benchmarkRounds)) {
+      regressions.add(describe(result.name, "time (ms)", baseline.time, result.time));
+    }
+    if (isRegression(baseline.memory, baseline.benchmarkRounds, result.memory, result.benchmarkRounds)) {
+      regressions.add(describe(result.name, "memory (bytes)", baseline.memory, result.memory));
+    }
+    if (baseline.allocated.avg >= 0 && result.allocated.avg >= 0
+        && isRegression(baseline.allocated, baseline.benchmarkRounds, result.allocated, result.benchmarkRounds)) {
+      regressions.add(describe(result.name, "allocated (bytes)", baseline.allocated, result.allocated));
+    }
+    return regressions;
+  }
+
+  private boolean isRegression(Average baseline, int baselineRounds, Average value, int rounds) {
+    double diff = value.avg - baseline.avg;
+    double standardError = Math.sqrt(baseline.stddev * baseline.stddev / baselineRounds + value.stddev * value.stddev / rounds);
+    return diff > threshold * baseline.avg && diff > deviations * standardError;
+  }
+
+  private static String describe(String name, String metric, Average baseline, Average value) {
+    return String.format(Locale.ENGLISH, "%s: %s regressed from %.2f [+-%.2f] to %.2f [+-%.2f] (%+.1f%%)",
+        name, metric, baseline.avg, baseline.stddev, value.avg, value.stddev, (value.avg - baseline.avg) / baseline.avg * 100);
+  }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark;
+
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Machine-readable representations of {@link BenchmarkResult}.
+ * Time is in milliseconds and memory in bytes.
+ */
+public final class ResultsFormat {
+
+  static final String[] CSV_COLUMNS = {
+    "timestamp", "name", "corpus", "javaVersion", "jvm", "os", "cores", "maxHeap",
+    "warmupRounds", "benchmarkRounds", "warmupTime", "benchTime", "time", "timeStddev", "memory", "memoryStddev",
+    "allocated", "allocatedStddev", "gcCount", "gcCountStddev", "gcTime", "gcTimeStddev" };
+
+  private ResultsFormat() {
+  }
+
+  public static String toJson(long timestamp, Environment environment, List<BenchmarkResult> results) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\n");
+    sb.append("  \"timestamp\": ").append(timestamp).append(",\n");
+    sb.append("  \"environment\": {\n");
+    sb.append("    \"corpus\": ").append(quoteJson(environment.corpus)).append(",\n");
+    sb.append("    \"javaVersion\": ").append(quoteJson(environment.javaVersion)).append(",\n");
+    sb.append("    \"jvm\": ").append(quoteJson(environment.jvm)).append(",\n");
+    sb.append("    \"os\": ").append(quoteJson(environment.os)).append(",\n");
+    sb.append("    \"cores\": ").append(environment.cores).append(",\n");
+    sb.append("    \"maxHeap\": ").append(environment.maxHeap).append("\n");
+    sb.append("  },\n");
+    sb.append("  \"results\": [");
+    for (int i = 0; i < results.size(); i++) {
+      BenchmarkResult result = results.get(i);
+      sb.append(i == 0 ? "\n" : ",\n");
+      sb.append("    {");
+      sb.append("\"name\": ").append(quoteJson(result.name));
+      sb.append(", \"warmupRounds\": ").append(result.warmupRounds);
+      sb.append(", \"benchmarkRounds\": ").append(result.benchmarkRounds);
+      sb.append(", \"warmupTime\": ").append(result.warmupTime);
+      sb.append(", \"benchTime\": ").append(result.benchTime);
+      sb.append(", \"time\": ").append(format(result.time.avg));
+      sb.append(", \"timeStddev\": ").append(format(result.time.stddev));
+      sb.append(", \"memory\": ").append(format(result.memory.avg));
+      sb.append(", \"memoryStddev\": ").append(format(result.memory.stddev));
+      sb.append(", \"allocated\": ").append(format(result.allocated.avg));
+      sb.append(", \"allocatedStddev\": ").append(format(result.allocated.stddev));
+      sb.append(", \"gcCount\": ").append(format(result.gcCount.avg));
+      sb.append(", \"gcCountStddev\": ").append(format(result.gcCount.stddev));
+      sb.append(", \"gcTime\": ").append(format(result.gcTime.avg));
+      sb.append(", \"gcTimeStddev\": ").append(format(result.gcTime.stddev));
+      sb.append("}");
+    }
+    sb.append("\n  ]\n");
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  public static String csvHeader() {
+    return toCsvLine(CSV_COLUMNS);
+  }
+
+  public static String toCsv(long timestamp, Environment environment, BenchmarkResult result) {
+    return toCsvLine(new String[] {
+      Long.toString(timestamp),
+      result.name,
+      environment.corpus,
+      environment.javaVersion,
+      environment.jvm,
+      environment.os,
+      Integer.toString(environment.cores),
+      Long.toString(environment.maxHeap),
+      Integer.toString(result.warmupRounds),
+      Integer.toString(result.benchmarkRounds),
+      Long.toString(result.warmupTime),
+      Long.toString(result.benchTime),
+      format(result.time.avg),
+      format(result.time.stddev),
+      format(result.memory.avg),
+      format(result.memory.stddev),
+      format(result.allocated.avg),
+      format(result.allocated.stddev),
+      format(result.gcCount.avg),
+      format(result.gcCount.stddev),
+      format(result.gcTime.avg),
+      format(result.gcTime.stddev) });
+  }
+
+  static Environment environmentFromCsv(String[] values) {
+    return new Environment(values[2], values[3], values[4], values[5], Integer.parseInt(values[6]), Long.parseLong(values[7]));
+  }
+
+  static BenchmarkResult resultFromCsv(String[] values) {
+    return new BenchmarkResult(
+        values[1],
+        Integer.parseInt(values[8]),
+        Integer.parseInt(values[9]),
+        Long.parseLong(values[10]),
+        Long.parseLong(values[11]),
+        new Average(Double.parseDouble(values[12]), Double.parseDouble(values[13])),
+        new Average(Double.parseDouble(values[14]), Double.parseDouble(values[15])),
+        new Average(Double.parseDouble(values[16]), Double.parseDouble(values[17])),
+        new Average(Double.parseDouble(values[18]), Double.parseDouble(values[19])),
+        new Average(Double.parseDouble(values[20]), Double.parseDouble(values[21])));
+  }
+
+  private static String toCsvLine(String[] values) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      String value = values[i];
+      if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+        sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+      } else {
+        sb.append(value);
+      }
+    }
+    return sb.toString();
+  }
+
+  static String[] parseCsvLine(String line) {
+    List<String> values = Lists.newArrayList();
+    StringBuilder value = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c != '"') {
+          value.append(c);
+        } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          value.append('"');
+          i++;
+        } else {
+          quoted = false;
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        values.add(value.toString());
+        value.setLength(0);
+      } else {
+        value.append(c);
+      }
+    }
+    values.add(value.toString());
+    return values.toArray(new String[values.size()]);
+  }
+
+  private static String quoteJson(String value) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < ' ') {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  private static String format(double value) {
+    return String.format(Locale.ENGLISH, "%.3f", value);
+  }
+
+}
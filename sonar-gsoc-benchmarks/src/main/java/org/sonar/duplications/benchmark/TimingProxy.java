@@ -23,35 +23,38 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * Allows to measure time of execution of methods.
+ * <p>
+ * Time is measured in nanoseconds and recorded into {@link LatencyHistogram} per method.
+ * Each thread has its own histograms, so proxy can be used from several threads without contention,
+ * and histograms are merged only on {@link #getTimings()}. Thus timings should be obtained after completion of threads,
+ * which use proxy, otherwise they might not include last invocations.
+ * </p>
  */
 public class TimingProxy implements InvocationHandler {
 
-  private Object delegate;
+  private final Object delegate;
 
-  private Map<String, Result> results = Maps.newHashMap();
+  private final Queue<Map<String, LatencyHistogram>> allRecorders = new ConcurrentLinkedQueue<Map<String, LatencyHistogram>>();
 
-  private static class Result {
-    long totalTime;
-    int invocations;
-
-    public void cumulate(long time) {
-      invocations++;
-      totalTime += time;
-    }
-
-    public double getAvgTime() {
-      return (double) totalTime / invocations;
+  private final ThreadLocal<Map<String, LatencyHistogram>> recorders = new ThreadLocal<Map<String, LatencyHistogram>>() {
+    @Override
+    protected Map<String, LatencyHistogram> initialValue() {
+      Map<String, LatencyHistogram> recorder = Maps.newHashMap();
+      allRecorders.add(recorder);
+      return recorder;
     }
-  }
+  };
 
   public static <E> E newInstance(Object obj) {
     return (E) java.lang.reflect.Proxy.newProxyInstance(obj.getClass().getClassLoader(), getAllInterfaces(obj.getClass()), new TimingProxy(obj));
@@ -62,7 +65,8 @@ public class TimingProxy implements InvocationHandler {
   }
 
   private static Class[] getAllInterfaces(Class cls) {
-    List<Class> result = Lists.newArrayList();
+    // same interface can be declared by several classes in hierarchy, but can't be repeated for proxy
+    Set<Class> result = Sets.newLinkedHashSet();
     while (cls != null) { // up to Object by class hierarchy
       for (Class i : cls.getInterfaces()) {
         result.add(i);
@@ -78,7 +82,7 @@ public class TimingProxy implements InvocationHandler {
 
   public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
     Object result;
-    long start = System.currentTimeMillis();
+    long start = System.nanoTime();
     try {
       result = method.invoke(delegate, args);
     } catch (InvocationTargetException e) {
@@ -86,35 +90,69 @@ public class TimingProxy implements InvocationHandler {
     } catch (Exception e) {
       throw new RuntimeException("Unexpected invocation exception: " + e.getMessage());
     } finally {
-      Result r = results.get(method.getName());
-      if (r == null) {
-        r = new Result();
-        results.put(method.getName(), r);
+      long time = System.nanoTime() - start;
+      Map<String, LatencyHistogram> recorder = recorders.get();
+      LatencyHistogram histogram = recorder.get(method.getName());
+      if (histogram == null) {
+        histogram = new LatencyHistogram();
+        recorder.put(method.getName(), histogram);
+      }
+      histogram.record(time);
+    }
+    return result;
+  }
+
+  /**
+   * @return histograms of time in nanoseconds by method name, merged from all threads
+   */
+  public Map<String, LatencyHistogram> getTimings() {
+    Map<String, LatencyHistogram> result = Maps.newTreeMap();
+    for (Map<String, LatencyHistogram> recorder : allRecorders) {
+      for (Map.Entry<String, LatencyHistogram> entry : recorder.entrySet()) {
+        LatencyHistogram histogram = result.get(entry.getKey());
+        if (histogram == null) {
+          histogram = new LatencyHistogram();
+          result.put(entry.getKey(), histogram);
+        }
+        histogram.add(entry.getValue());
       }
-      r.cumulate(System.currentTimeMillis() - start);
     }
     return result;
   }
 
   public void printTimings() {
-    int totalInvocations = 0;
+    Map<String, LatencyHistogram> timings = getTimings();
+    long totalInvocations = 0;
     long totalTime = 0L;
-    for (Result result : results.values()) {
-      totalTime += result.totalTime;
-      totalInvocations += result.invocations;
+    for (LatencyHistogram histogram : timings.values()) {
+      totalTime += histogram.getTotal();
+      totalInvocations += histogram.getCount();
     }
 
     System.out.println("Timings for " + delegate);
-    System.out.println(String.format(Locale.ENGLISH, "%20s , %6s , %6s , %6s , %6s , %7s", "Method", "T (s)", "%", "Calls", "%", "Avg (ms)"));
-    for (Map.Entry<String, Result> entry : results.entrySet()) {
-      Result r = entry.getValue();
-      System.out.println(String.format(Locale.ENGLISH, "%20s : %6.2f ( %6.2f ) %6d ( %6.2f ) %7.6f",
+    System.out.println(String.format(Locale.ENGLISH, "%20s , %6s , %6s , %8s , %6s , %9s , %9s , %9s , %9s , %9s",
+        "Method", "T (s)", "%", "Calls", "%", "Avg (us)", "p50 (us)", "p99 (us)", "p999 (us)", "Max (us)"));
+    for (Map.Entry<String, LatencyHistogram> entry : timings.entrySet()) {
+      LatencyHistogram h = entry.getValue();
+      System.out.println(String.format(Locale.ENGLISH, "%20s : %6.2f ( %6.2f ) %8d ( %6.2f ) %9.3f , %9.3f , %9.3f , %9.3f , %9.3f",
           entry.getKey(),
-          r.totalTime / 1000.0, r.totalTime * 100.0 / totalTime,
-          r.invocations, r.invocations * 100.0 / totalInvocations,
-          r.getAvgTime()));
+          nanosecondsToSeconds(h.getTotal()), h.getTotal() * 100.0 / totalTime,
+          h.getCount(), h.getCount() * 100.0 / totalInvocations,
+          nanosecondsToMicroseconds(h.getMean()),
+          nanosecondsToMicroseconds(h.getValueAtPercentile(50)),
+          nanosecondsToMicroseconds(h.getValueAtPercentile(99)),
+          nanosecondsToMicroseconds(h.getValueAtPercentile(99.9)),
+          nanosecondsToMicroseconds(h.getMax())));
     }
-    System.out.println(String.format(Locale.ENGLISH, "%20s : %6.2f", "Total", totalTime / 1000.0));
+    System.out.println(String.format(Locale.ENGLISH, "%20s : %6.2f", "Total", nanosecondsToSeconds(totalTime)));
+  }
+
+  private static double nanosecondsToSeconds(double value) {
+    return value / 1000000000.0;
+  }
+
+  private static double nanosecondsToMicroseconds(double value) {
+    return value / 1000.0;
   }
 
 }
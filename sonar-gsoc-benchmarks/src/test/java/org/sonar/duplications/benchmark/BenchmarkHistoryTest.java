@@ -0,0 +1,70 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BenchmarkHistoryTest {
+
+  private File file;
+  private BenchmarkHistory history;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("history", ".csv");
+    file.delete();
+    history = new BenchmarkHistory(file);
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void shouldReturnLatestResultFromComparableEnvironment() throws IOException {
+    Environment environment = new Environment("jdk, \"16\"", "1.6", "HotSpot", "Linux", 4, 1024);
+    Environment other = new Environment("jdk, \"16\"", "1.6", "HotSpot", "Linux", 2, 1024);
+    assertThat(history.getBaseline(environment, "test"), nullValue());
+
+    history.append(1, environment, Arrays.asList(RegressionDetectorTest.result(100, 1, 10, 1)));
+    history.append(2, environment, Arrays.asList(RegressionDetectorTest.result(200, 2, 20, 2)));
+    history.append(3, other, Arrays.asList(RegressionDetectorTest.result(300, 3, 30, 3)));
+
+    BenchmarkResult baseline = history.getBaseline(environment, "test");
+    assertThat(baseline.time.avg, is(200.0));
+    assertThat(baseline.time.stddev, is(2.0));
+    assertThat(baseline.memory.avg, is(20.0));
+    assertThat(baseline.benchmarkRounds, is(10));
+    assertThat(history.getBaseline(other, "test").time.avg, is(300.0));
+    assertThat(history.getBaseline(environment, "unknown"), nullValue());
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class BenchmarkTest {
+
+  private static final int ALLOCATION = 1024 * 1024;
+
+  @Test
+  public void shouldMeasureAllocatedBytes() {
+    Assume.assumeThat(MemoryUtils.getAllocatedBytes(), greaterThanOrEqualTo(0L));
+    BenchmarkResult result = new Benchmark() {
+      @Override
+      public void runRound() {
+        byte[] bytes = new byte[ALLOCATION];
+        bytes[0] = 1;
+      }
+    }.runBenchmark(3, 1, false);
+
+    assertThat(result.allocated.avg, greaterThanOrEqualTo((double) ALLOCATION));
+    assertThat(result.gcCount.avg, greaterThanOrEqualTo(0.0));
+    assertThat(result.benchmarkRounds, is(3));
+  }
+
+  @Test
+  public void shouldMeasureBytesAllocatedByOtherThreads() {
+    Assume.assumeThat(MemoryUtils.getAllocatedBytesByThread() != null, is(true));
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      BenchmarkResult result = new Benchmark() {
+        @Override
+        public void runRound() throws Exception {
+          executor.submit(new Callable<byte[]>() {
+            public byte[] call() {
+              byte[] bytes = new byte[ALLOCATION];
+              bytes[0] = 1;
+              return bytes;
+            }
+          }).get();
+        }
+      }.runBenchmark(3, 0, false);
+
+      assertThat(result.allocated.avg, greaterThanOrEqualTo((double) ALLOCATION));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Same as threaded benchmarks, which create and shutdown executor in each round.
+   */
+  @Test
+  public void shouldMeasureBytesAllocatedByTerminatedTrackedThreads() {
+    Assume.assumeThat(MemoryUtils.getAllocatedBytesByThread() != null, is(true));
+    BenchmarkResult result = new Benchmark() {
+      @Override
+      public void runRound() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2, AllocationSnapshot.trackingThreadFactory(Executors.defaultThreadFactory()));
+        for (int i = 0; i < 2; i++) {
+          executor.submit(new Callable<byte[]>() {
+            public byte[] call() {
+              byte[] bytes = new byte[ALLOCATION];
+              bytes[0] = 1;
+              return bytes;
+            }
+          });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+      }
+    }.runBenchmark(3, 0, false);
+
+    assertThat(result.allocated.avg, greaterThanOrEqualTo(2.0 * ALLOCATION));
+  }
+
+  @Test
+  public void shouldNotMeasureBytesAllocatedByTerminatedThreads() {
+    Assume.assumeThat(MemoryUtils.getAllocatedBytesByThread() != null, is(true));
+    BenchmarkResult result = new Benchmark() {
+      @Override
+      public void runRound() throws Exception {
+        Thread thread = new Thread() {
+          @Override
+          public void run() {
+            byte[] bytes = new byte[ALLOCATION];
+            bytes[0] = 1;
+          }
+        };
+        thread.start();
+        thread.join();
+      }
+    }.runBenchmark(3, 0, false);
+
+    assertThat(result.allocated.avg, is(-1.0));
+  }
+
+}
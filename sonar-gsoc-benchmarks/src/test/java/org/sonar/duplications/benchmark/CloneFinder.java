@@ -20,6 +20,7 @@
 package org.sonar.duplications.benchmark;
 
 import java.io.File;
+import java.nio.CharBuffer;
 import java.util.List;
 
 import org.sonar.duplications.DuplicationsException;
@@ -27,12 +28,14 @@ import org.sonar.duplications.algorithm.CloneReporterAlgorithm;
 import org.sonar.duplications.algorithm.FileBlockGroup;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.BlockChunker;
+import org.sonar.duplications.block.BlockFingerprints;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.CloneIndex;
 import org.sonar.duplications.statement.Statement;
 import org.sonar.duplications.statement.StatementChunker;
 import org.sonar.duplications.token.TokenChunker;
 import org.sonar.duplications.token.TokenQueue;
+import org.sonar.duplications.utils.SourceReader;
 
 /**
  * TODO Godin: For better flexibility we must allow detection of clones for file, which is not in index (index maintenance and detection of clones are two different tasks).
@@ -48,14 +51,18 @@ public final class CloneFinder {
   private StatementChunker stmtChunker;
   private BlockChunker blockChunker;
   private CloneIndex cloneIndex;
+  private SourceReader sourceReader;
+  private BlockFingerprints blockFingerprints;
 
   private CloneReporterAlgorithm cloneReporter;
 
   private CloneFinder(Builder builder) {
     this.tokenChunker = builder.tokenChunker;
+    this.sourceReader = builder.sourceReader;
     this.stmtChunker = builder.stmtChunker;
     this.blockChunker = builder.blockChunker;
     this.cloneIndex = builder.cloneIndex;
+    this.blockFingerprints = builder.blockFingerprints;
     cloneReporter = builder.cloneReporter;
   }
 
@@ -70,6 +77,8 @@ public final class CloneFinder {
     private BlockChunker blockChunker;
     private CloneIndex cloneIndex;
     private CloneReporterAlgorithm cloneReporter;
+    private SourceReader sourceReader;
+    private BlockFingerprints blockFingerprints;
 
     public Builder setTokenChunker(TokenChunker tokenChunker) {
       this.tokenChunker = tokenChunker;
@@ -96,6 +105,22 @@ public final class CloneFinder {
       return this;
     }
 
+    /**
+     * @param sourceReader reader, which will be used to read files instead of {@link TokenChunker#chunk(File)}, or null
+     */
+    public Builder setSourceReader(SourceReader sourceReader) {
+      this.sourceReader = sourceReader;
+      return this;
+    }
+
+    /**
+     * @param blockFingerprints fingerprints, which will be computed for each tokenized file, or null
+     */
+    public Builder setBlockFingerprints(BlockFingerprints blockFingerprints) {
+      this.blockFingerprints = blockFingerprints;
+      return this;
+    }
+
     public CloneFinder build() {
       return new CloneFinder(this);
     }
@@ -117,15 +142,30 @@ public final class CloneFinder {
     List<Block> blocks;
     String absolutePath = sourceFile.getAbsolutePath();
     try {
-      TokenQueue tokenQueue = tokenChunker.chunk(sourceFile);
+      TokenQueue tokenQueue = chunkTokens(sourceFile);
       List<Statement> statements = stmtChunker.chunk(tokenQueue);
       blocks = blockChunker.chunk(absolutePath, statements);
+      if (blockFingerprints != null) {
+        blockFingerprints.add(absolutePath, statements);
+      }
     } catch (Exception e) {
       throw new DuplicationsException("Exception during registering file: " + absolutePath, e);
     }
     return FileBlockGroup.create(absolutePath, blocks);
   }
 
+  private TokenQueue chunkTokens(File sourceFile) {
+    if (sourceReader == null) {
+      return tokenChunker.chunk(sourceFile);
+    }
+    CharBuffer source = sourceReader.read(sourceFile);
+    try {
+      return tokenChunker.chunk(SourceReader.asReader(source));
+    } finally {
+      sourceReader.release(source);
+    }
+  }
+
   public List<CloneGroup> findClones(FileBlockGroup fileBlockGroup) {
     //build on the fly
     // if (!cloneIndex.containsResourceId(fileBlockGroup.getResourceId())) {
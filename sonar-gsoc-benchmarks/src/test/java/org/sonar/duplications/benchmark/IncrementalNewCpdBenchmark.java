@@ -0,0 +1,94 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+import org.sonar.duplications.algorithm.AdvancedGroupCloneReporter;
+import org.sonar.duplications.algorithm.IncrementalCloneDetector;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.index.ConcurrentCloneIndex;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Simulates re-analysis, where only small part of files was modified.
+ * Full analysis is performed during first round, so at least one warmup round is required.
+ */
+public class IncrementalNewCpdBenchmark extends Benchmark {
+
+  private final List<File> files;
+  private final int blockSize;
+  private final int modifiedFiles;
+
+  private IncrementalCloneDetector detector;
+  private IncrementalCloneDetector.BlockSource blockSource;
+  private Map<String, String> fingerprints;
+  private int round;
+
+  /**
+   * @param modifiedRatio part of files, which will be considered as modified in each round
+   */
+  public IncrementalNewCpdBenchmark(List<File> files, int blockSize, double modifiedRatio) {
+    this.files = files;
+    this.blockSize = blockSize;
+    this.modifiedFiles = Math.max(1, (int) (files.size() * modifiedRatio));
+  }
+
+  @Override
+  public void runRound() throws Exception {
+    if (detector == null) {
+      fullAnalysis();
+      return;
+    }
+    round++;
+    // files are not really modified, but fingerprints are changed, so they will be processed
+    for (int i = 0; i < modifiedFiles; i++) {
+      File file = files.get((round * modifiedFiles + i) % files.size());
+      fingerprints.put(file.getAbsolutePath(), file.lastModified() + ":" + round);
+    }
+    detector.detect(fingerprints, blockSource);
+  }
+
+  private void fullAnalysis() {
+    ConcurrentCloneIndex index = new ConcurrentCloneIndex(1);
+    final CloneFinder cloneFinder = JavaCloneFinder.build(index, blockSize);
+    blockSource = new IncrementalCloneDetector.BlockSource() {
+      public List<Block> getBlocks(String resourceId) {
+        return Lists.newArrayList(cloneFinder.tokenize(new File(resourceId)).getBlockList());
+      }
+    };
+    fingerprints = Maps.newLinkedHashMap();
+    for (File file : files) {
+      fingerprints.put(file.getAbsolutePath(), Long.toString(file.lastModified()));
+    }
+    detector = new IncrementalCloneDetector(index, new AdvancedGroupCloneReporter(index));
+    detector.detect(fingerprints, blockSource);
+  }
+
+  @Override
+  public String getName() {
+    return "new CPD incremental modified=" + modifiedFiles;
+  }
+
+}
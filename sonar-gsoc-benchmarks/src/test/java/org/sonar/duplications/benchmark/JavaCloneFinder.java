@@ -22,9 +22,11 @@ package org.sonar.duplications.benchmark;
 import org.sonar.duplications.algorithm.AdvancedGroupCloneReporter;
 import org.sonar.duplications.algorithm.CloneReporterAlgorithm;
 import org.sonar.duplications.block.BlockChunker;
+import org.sonar.duplications.block.BlockFingerprints;
 import org.sonar.duplications.index.CloneIndex;
 import org.sonar.duplications.java.JavaStatementBuilder;
 import org.sonar.duplications.java.JavaTokenProducer;
+import org.sonar.duplications.utils.SourceReader;
 
 /**
  * @deprecated not very flexible and used only in benchmarks
@@ -44,12 +46,38 @@ public final class JavaCloneFinder {
   }
 
   public static CloneFinder build(CloneIndex cloneIndex, int blockSize, CloneReporterAlgorithm cloneReporter) {
+    return JavaCloneFinder.build(cloneIndex, blockSize, cloneReporter, null);
+  }
+
+  /**
+   * @param fingerprints fingerprints, which will be computed for registered files and used by {@link AdvancedGroupCloneReporter}
+   *                     to discard collisions of hashes
+   */
+  public static CloneFinder build(CloneIndex cloneIndex, int blockSize, BlockFingerprints fingerprints) {
+    return JavaCloneFinder.build(cloneIndex, blockSize, new AdvancedGroupCloneReporter(cloneIndex, fingerprints), null, fingerprints);
+  }
+
+  /**
+   * @param sourceReader reader of files, or null to read them by {@link org.sonar.duplications.token.TokenChunker}
+   */
+  public static CloneFinder build(CloneIndex cloneIndex, int blockSize, CloneReporterAlgorithm cloneReporter, SourceReader sourceReader) {
+    return JavaCloneFinder.build(cloneIndex, blockSize, cloneReporter, sourceReader, null);
+  }
+
+  /**
+   * @param sourceReader reader of files, or null to read them by {@link org.sonar.duplications.token.TokenChunker}
+   * @param fingerprints fingerprints, which will be computed for registered files, or null
+   */
+  public static CloneFinder build(CloneIndex cloneIndex, int blockSize, CloneReporterAlgorithm cloneReporter, SourceReader sourceReader,
+      BlockFingerprints fingerprints) {
     CloneFinder.Builder builder = CloneFinder.build()
         .setTokenChunker(JavaTokenProducer.build())
         .setStatementChunker(JavaStatementBuilder.build())
         .setBlockChunker(new BlockChunker(blockSize))
         .setCloneIndex(cloneIndex)
-        .setCloneReporter(cloneReporter);
+        .setCloneReporter(cloneReporter)
+        .setSourceReader(sourceReader)
+        .setBlockFingerprints(fingerprints);
     return builder.build();
   }
 }
@@ -0,0 +1,80 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void shouldCountSmallValuesExactly() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10; i++) {
+      histogram.record(i);
+    }
+    assertThat(histogram.getCount(), is(10L));
+    assertThat(histogram.getTotal(), is(55L));
+    assertThat(histogram.getMax(), is(10L));
+    assertThat(histogram.getValueAtPercentile(50), is(5L));
+    assertThat(histogram.getValueAtPercentile(99), is(10L));
+    assertThat(histogram.getValueAtPercentile(100), is(10L));
+  }
+
+  @Test
+  public void shouldCoverAllValuesWithContinuousBuckets() {
+    assertThat(LatencyHistogram.indexOf(Long.MAX_VALUE), is(LatencyHistogram.indexOf(Long.MAX_VALUE - 1)));
+    assertThat(LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(Long.MAX_VALUE)), is(Long.MAX_VALUE));
+    for (int index = 1; index < LatencyHistogram.indexOf(Long.MAX_VALUE); index++) {
+      long lowest = LatencyHistogram.highestValueOf(index - 1) + 1;
+      assertThat(LatencyHistogram.indexOf(lowest), is(index));
+      assertThat(LatencyHistogram.indexOf(LatencyHistogram.highestValueOf(index)), is(index));
+    }
+  }
+
+  @Test
+  public void shouldReportPercentilesWithinRelativeError() {
+    Random random = new Random(1);
+    long[] values = new long[10000];
+    LatencyHistogram first = new LatencyHistogram();
+    LatencyHistogram second = new LatencyHistogram();
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (long) Math.exp(random.nextDouble() * 20);
+      (i % 2 == 0 ? first : second).record(values[i]);
+    }
+    first.add(second);
+    Arrays.sort(values);
+
+    assertThat(first.getCount(), is((long) values.length));
+    assertThat(first.getMax(), is(values[values.length - 1]));
+    for (double percentile : new double[] { 50, 90, 99, 99.9 }) {
+      long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+      long actual = first.getValueAtPercentile(percentile);
+      assertThat(Math.abs(actual - expected) * LatencyHistogram.SUB_BUCKETS, lessThanOrEqualTo(expected));
+    }
+  }
+
+}
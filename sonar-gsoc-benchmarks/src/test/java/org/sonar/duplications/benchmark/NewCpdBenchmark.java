@@ -26,6 +26,7 @@ import org.sonar.duplications.algorithm.AdvancedGroupCloneReporter;
 import org.sonar.duplications.algorithm.CloneReporterAlgorithm;
 import org.sonar.duplications.algorithm.FileBlockGroup;
 import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.BlockFingerprints;
 import org.sonar.duplications.index.CloneIndex;
 import org.sonar.duplications.index.MemoryCloneIndex;
 
@@ -35,23 +36,53 @@ public class NewCpdBenchmark extends Benchmark {
 
   private final List<File> files;
   private final int blockSize;
+  private final boolean fingerprinted;
 
   public NewCpdBenchmark(List<File> files, int blockSize) {
+    this(files, blockSize, false);
+  }
+
+  /**
+   * @param fingerprinted if true, then collisions of hashes are discarded by {@link BlockFingerprints}
+   *                      and number of discarded pairs of blocks is printed after each round
+   */
+  public NewCpdBenchmark(List<File> files, int blockSize, boolean fingerprinted) {
     this.files = files;
     this.blockSize = blockSize;
+    this.fingerprinted = fingerprinted;
   }
 
   @Override
   public void runRound() throws Exception {
     CloneIndex delegate = new MemoryCloneIndex();
     CloneIndex index = TimingProxy.newInstance(delegate);
-    CloneReporterAlgorithm reporter = new AdvancedGroupCloneReporter(index);
-    singleRun(files, blockSize, index, reporter);
+    if (fingerprinted) {
+      BlockFingerprints fingerprints = new BlockFingerprints(blockSize);
+      AdvancedGroupCloneReporter reporter = new AdvancedGroupCloneReporter(index, fingerprints);
+      singleRun(files, blockSize, index, reporter, fingerprints);
+      System.out.println("Discarded collisions: " + reporter.getDiscardedCollisions());
+    } else {
+      CloneReporterAlgorithm reporter = new AdvancedGroupCloneReporter(index);
+      singleRun(files, blockSize, index, reporter);
+    }
     TimingProxy.getHandlerFor(index).printTimings();
   }
 
+  @Override
+  public String getName() {
+    return fingerprinted ? super.getName() + " fingerprints" : super.getName();
+  }
+
   protected static void singleRun(List<File> files, int blockSize, CloneIndex index, CloneReporterAlgorithm reporter) {
-    CloneFinder cf = JavaCloneFinder.build(index, blockSize);
+    singleRun(files, blockSize, index, reporter, null);
+  }
+
+  /**
+   * @param fingerprints fingerprints, which are computed for each registered file, or null
+   */
+  protected static void singleRun(List<File> files, int blockSize, CloneIndex index, CloneReporterAlgorithm reporter,
+      BlockFingerprints fingerprints) {
+    CloneFinder cf = JavaCloneFinder.build(index, blockSize, reporter, null, fingerprints);
     for (File file : files) {
       cf.register(file);
     }
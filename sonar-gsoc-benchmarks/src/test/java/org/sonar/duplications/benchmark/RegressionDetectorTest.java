@@ -0,0 +1,72 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class RegressionDetectorTest {
+
+  private RegressionDetector detector = new RegressionDetector(0.1, 3);
+
+  @Test
+  public void shouldDetectStableRegression() {
+    BenchmarkResult baseline = result(1000, 10, 100, 1);
+    assertThat(detector.check(baseline, result(1200, 10, 100, 1)).size(), is(1));
+    assertThat(detector.check(baseline, result(1200, 10, 200, 1)).size(), is(2));
+  }
+
+  @Test
+  public void shouldIgnoreDifferenceBelowThreshold() {
+    BenchmarkResult baseline = result(1000, 0, 100, 0);
+    assertThat(detector.check(baseline, result(1050, 0, 105, 0)).size(), is(0));
+  }
+
+  @Test
+  public void shouldIgnoreDifferenceWithinNoise() {
+    BenchmarkResult baseline = result(1000, 400, 100, 1);
+    assertThat(detector.check(baseline, result(1200, 400, 100, 1)).size(), is(0));
+  }
+
+  @Test
+  public void shouldIgnoreImprovement() {
+    BenchmarkResult baseline = result(1000, 10, 100, 1);
+    assertThat(detector.check(baseline, result(500, 10, 50, 1)).size(), is(0));
+  }
+
+  @Test
+  public void shouldDetectAllocationRegression() {
+    BenchmarkResult baseline = result(1000, 10, 100, 1, 5000);
+    assertThat(detector.check(baseline, result(1000, 10, 100, 1, 10000)).size(), is(1));
+    assertThat(detector.check(result(1000, 10, 100, 1, -1), result(1000, 10, 100, 1, 10000)).size(), is(0));
+  }
+
+  static BenchmarkResult result(double time, double timeStddev, double memory, double memoryStddev) {
+    return result(time, timeStddev, memory, memoryStddev, -1);
+  }
+
+  static BenchmarkResult result(double time, double timeStddev, double memory, double memoryStddev, double allocated) {
+    return new BenchmarkResult("test", 1, 10, 0, 0, new Average(time, timeStddev), new Average(memory, memoryStddev),
+        new Average(allocated, 0), new Average(0, 0), new Average(0, 0));
+  }
+
+}
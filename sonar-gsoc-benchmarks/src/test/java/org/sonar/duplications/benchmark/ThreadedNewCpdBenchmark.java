@@ -23,10 +23,15 @@ import com.google.common.collect.Lists;
 import org.sonar.duplications.DuplicationsException;
 import org.sonar.duplications.algorithm.AdvancedGroupCloneReporter;
 import org.sonar.duplications.algorithm.CloneReporterAlgorithm;
+import org.sonar.duplications.algorithm.CloneReporterAlgorithmBuilder;
 import org.sonar.duplications.algorithm.FileBlockGroup;
+import org.sonar.duplications.algorithm.IngestionPipeline;
+import org.sonar.duplications.algorithm.ParallelCloneDetector;
+import org.sonar.duplications.algorithm.StageMetrics;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.BlockChunker;
 import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.ConcurrentCloneIndex;
 import org.sonar.duplications.index.MemoryCloneIndex;
 import org.sonar.duplications.java.JavaStatementBuilder;
 import org.sonar.duplications.java.JavaTokenProducer;
@@ -37,6 +42,7 @@ import org.sonar.duplications.token.TokenQueue;
 
 import java.io.File;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 
 public class ThreadedNewCpdBenchmark extends Benchmark {
@@ -44,50 +50,125 @@ public class ThreadedNewCpdBenchmark extends Benchmark {
   private final List<File> files;
   private final int threadsCount;
   private final int blockSize;
+  private final boolean pipelined;
+  private final boolean instrumented;
+
+  /**
+   * Timings of indexes from last round, when benchmark is instrumented.
+   */
+  private TimingProxy populatedIndexTimings;
+  private TimingProxy frozenIndexTimings;
+
+  /**
+   * Metrics of stages from last round, when benchmark is pipelined.
+   */
+  private Map<IngestionPipeline.Stage, StageMetrics> stageMetrics;
 
   public ThreadedNewCpdBenchmark(List<File> files, int blockSize, int threadsCount) {
+    this(files, blockSize, threadsCount, false);
+  }
+
+  /**
+   * @param pipelined if true, then index populated by {@link IngestionPipeline}, which uses given number of threads in total,
+   *                  so it should be not less than number of stages
+   */
+  public ThreadedNewCpdBenchmark(List<File> files, int blockSize, int threadsCount, boolean pipelined) {
+    this(files, blockSize, threadsCount, pipelined, false);
+  }
+
+  /**
+   * @param instrumented if true, then both indexes wrapped by {@link TimingProxy}, which adds overhead to each invocation,
+   *                     so results should not be compared with uninstrumented benchmarks; timings can be printed by {@link #printTimings()}
+   */
+  public ThreadedNewCpdBenchmark(List<File> files, int blockSize, int threadsCount, boolean pipelined, boolean instrumented) {
+    if (pipelined && threadsCount < IngestionPipeline.Stage.values().length) {
+      throw new IllegalArgumentException("Pipeline requires at least one thread for each stage, but got " + threadsCount + " threads");
+    }
     this.files = files;
     this.blockSize = blockSize;
     this.threadsCount = threadsCount;
-  }
-
-  @Override
-  public void runRound() throws Exception {
-    singleRun(files, threadsCount, blockSize);
+    this.pipelined = pipelined;
+    this.instrumented = instrumented;
   }
 
   /**
    * Notes about implementation:
    * <ul>
    * <li>We don't know amount of work required to process each file, so we can't define list of files for each thread, thus we should use queue.</li>
-   * <li>We can't directly use {@link CloneIndex} in {@link Worker}, because {@link MemoryCloneIndex} is not thread-safe for update operations,
-   * thus we use {@link IndexUpdater}.</li>
+   * <li>We can't directly use {@link MemoryCloneIndex} in {@link Worker}, because it is not thread-safe for update operations,
+   * thus we use {@link ConcurrentCloneIndex}, which is frozen before search.</li>
+   * <li>If benchmark is instrumented, then both indexes are wrapped by {@link TimingProxy}, which is safe to use from several threads.</li>
    * </ul>
    */
-  private static void singleRun(List<File> files, int threadsCount, int blockSize) throws Exception {
-    MemoryCloneIndex index = new MemoryCloneIndex();
+  @Override
+  public void runRound() throws Exception {
+    ConcurrentCloneIndex index = new ConcurrentCloneIndex(threadsCount);
+
+    CloneIndex populatedIndex = instrumented ? TimingProxy.<CloneIndex> newInstance(index) : index;
+    ExecutorService executor;
+    if (pipelined) {
+      // pipeline uses its own threads, so executor created after it, in order to not hold twice more threads
+      stageMetrics = populateIndexByPipeline(threadsCount, files, populatedIndex, blockSize);
+      executor = Executors.newFixedThreadPool(threadsCount, newThreadFactory());
+    } else {
+      executor = Executors.newFixedThreadPool(threadsCount, newThreadFactory());
+      populateIndex(executor, threadsCount, files, populatedIndex, blockSize);
+    }
+    CloneIndex frozenIndex = index.freeze();
+    if (instrumented) {
+      frozenIndex = TimingProxy.newInstance(frozenIndex);
+    }
+    try {
+      search(executor, threadsCount, files, frozenIndex);
+    } finally {
+      // shutdown executor for proper shutdown of JVM
+      executor.shutdownNow();
+    }
 
-    ExecutorService executor = Executors.newFixedThreadPool(threadsCount);
-    populateIndex(executor, threadsCount, files, new IndexUpdater(index), blockSize);
-    search(executor, threadsCount, files, index);
+    if (instrumented) {
+      populatedIndexTimings = TimingProxy.getHandlerFor(populatedIndex);
+      frozenIndexTimings = TimingProxy.getHandlerFor(frozenIndex);
+    }
+  }
 
-    // shutdown executor for proper shutdown of JVM
-    executor.shutdownNow();
+  /**
+   * Threads are terminated at the end of each round, so they record allocated memory at exit in order to be measured by {@link AllocationSnapshot}.
+   */
+  private static ThreadFactory newThreadFactory() {
+    return AllocationSnapshot.trackingThreadFactory(Executors.defaultThreadFactory());
   }
 
-  private static void search(ExecutorService executor, int threadsCount, List<File> files, CloneIndex index) throws InterruptedException, ExecutionException {
-    ConcurrentLinkedQueue<File> filesQueue = new ConcurrentLinkedQueue<File>(files);
-    List<Future> futures = Lists.newArrayList();
-    for (int i = 0; i < threadsCount; i++) {
-      futures.add(executor.submit(new Worker2(filesQueue, index)));
+  /**
+   * Prints timings of indexes and metrics of stages of pipeline from last round, should be invoked after benchmark,
+   * so that printing is not measured.
+   */
+  public void printTimings() {
+    if (populatedIndexTimings != null) {
+      populatedIndexTimings.printTimings();
+      frozenIndexTimings.printTimings();
     }
-    // wait for completion of all tasks
-    for (Future future : futures) {
-      future.get();
+    if (stageMetrics != null) {
+      for (StageMetrics metrics : stageMetrics.values()) {
+        System.out.println(metrics);
+      }
     }
   }
 
-  private static void populateIndex(ExecutorService executor, int threadsCount, List<File> files, IndexUpdater index, int blockSize) throws InterruptedException, ExecutionException {
+  private static void search(ExecutorService executor, int threadsCount, List<File> files, CloneIndex index) {
+    List<FileBlockGroup> fileBlockGroups = Lists.newArrayListWithCapacity(files.size());
+    for (File file : files) {
+      String resourceId = file.getAbsolutePath();
+      fileBlockGroups.add(FileBlockGroup.create(resourceId, index.getByResourceId(resourceId)));
+    }
+    CloneReporterAlgorithmBuilder reporterBuilder = new CloneReporterAlgorithmBuilder() {
+      public CloneReporterAlgorithm build(CloneIndex cloneIndex) {
+        return new AdvancedGroupCloneReporter(cloneIndex);
+      }
+    };
+    new ParallelCloneDetector(index, reporterBuilder, executor, threadsCount).detect(fileBlockGroups);
+  }
+
+  private static void populateIndex(ExecutorService executor, int threadsCount, List<File> files, CloneIndex index, int blockSize) throws InterruptedException, ExecutionException {
     ChunkersFactory chunkersFactory = new ChunkersFactory(blockSize);
     ConcurrentLinkedQueue<File> filesQueue = new ConcurrentLinkedQueue<File>(files);
     List<Future> futures = Lists.newArrayList();
@@ -100,6 +181,32 @@ public class ThreadedNewCpdBenchmark extends Benchmark {
     }
   }
 
+  /**
+   * Tokenization is the most expensive stage, so it receives all remaining threads, whereas other stages are cheap enough to be executed by one thread.
+   * Thus pipeline uses same number of threads as {@link #populateIndex(ExecutorService, int, List, CloneIndex, int)}.
+   */
+  private static Map<IngestionPipeline.Stage, StageMetrics> populateIndexByPipeline(int threadsCount, List<File> files, CloneIndex index, int blockSize) {
+    final ChunkersFactory chunkersFactory = new ChunkersFactory(blockSize);
+    IngestionPipeline.ChunkersFactory pipelineChunkersFactory = new IngestionPipeline.ChunkersFactory() {
+      public TokenChunker createTokenChunker() {
+        return chunkersFactory.createTokenChunker();
+      }
+
+      public StatementChunker createStatementChunker() {
+        return chunkersFactory.createStatementChunker();
+      }
+
+      public BlockChunker createBlockChunker() {
+        return chunkersFactory.createBlockChunker();
+      }
+    };
+    return IngestionPipeline.builder(pipelineChunkersFactory, index)
+        .setThreads(IngestionPipeline.Stage.TOKENS, threadsCount - IngestionPipeline.Stage.values().length + 1)
+        .setThreadFactory(newThreadFactory())
+        .build()
+        .run(files);
+  }
+
   /**
    * We use this factory to provide different chunkers for different threads,
    * because at least {@link TokenChunker} and {@link StatementChunker} are not thread-safe.
@@ -124,22 +231,6 @@ public class ThreadedNewCpdBenchmark extends Benchmark {
     }
   }
 
-  public static class IndexUpdater {
-    private final CloneIndex index;
-
-    public IndexUpdater(CloneIndex index) {
-      this.index = index;
-    }
-
-    public void save(String resourceId, List<Block> blocks) {
-      synchronized (this) {
-        for (Block block : blocks) {
-          index.insert(block);
-        }
-      }
-    }
-  }
-
   private static abstract class AbstractWorker implements Callable<Object> {
     private final ConcurrentLinkedQueue<File> filesQueue;
 
@@ -163,13 +254,13 @@ public class ThreadedNewCpdBenchmark extends Benchmark {
   }
 
   private static class Worker extends AbstractWorker {
-    private final IndexUpdater index;
+    private final CloneIndex index;
 
     private final TokenChunker tokenChunker;
     private final StatementChunker statementChunker;
     private final BlockChunker blockChunker;
 
-    public Worker(ChunkersFactory factory, ConcurrentLinkedQueue<File> filesQueue, IndexUpdater index) {
+    public Worker(ChunkersFactory factory, ConcurrentLinkedQueue<File> filesQueue, CloneIndex index) {
       super(filesQueue);
       this.index = index;
       tokenChunker = factory.createTokenChunker();
@@ -182,31 +273,15 @@ public class ThreadedNewCpdBenchmark extends Benchmark {
       TokenQueue tokenQueue = tokenChunker.chunk(file);
       List<Statement> statements = statementChunker.chunk(tokenQueue);
       List<Block> blocks = blockChunker.chunk(file.getAbsolutePath(), statements);
-      index.save(file.getAbsolutePath(), blocks);
-    }
-  }
-
-  private static class Worker2 extends AbstractWorker {
-    private final CloneIndex cloneIndex;
-    private final CloneReporterAlgorithm cloneReporter;
-
-    public Worker2(ConcurrentLinkedQueue<File> filesQueue, CloneIndex cloneIndex) {
-      super(filesQueue);
-      this.cloneIndex = cloneIndex;
-      cloneReporter = new AdvancedGroupCloneReporter(cloneIndex);
-    }
-
-    @Override
-    protected void processFile(File file) {
-      List<Block> fileBlocks = Lists.newArrayList(cloneIndex.getByResourceId(file.getAbsolutePath()));
-      FileBlockGroup fileBlockGroup = FileBlockGroup.create(file.getAbsolutePath(), fileBlocks);
-      cloneReporter.reportClones(fileBlockGroup);
+      for (Block block : blocks) {
+        index.insert(block);
+      }
     }
   }
 
   @Override
   public String getName() {
-    return "new CPD threads=" + threadsCount;
+    return (pipelined ? "new CPD pipeline threads=" : "new CPD threads=") + threadsCount + (instrumented ? " instrumented" : "");
   }
 
 }
@@ -0,0 +1,65 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+public class TimingProxyTest {
+
+  @Test
+  public void shouldMergeTimingsFromAllThreads() throws InterruptedException {
+    final List<String> delegate = new Vector<String>();
+    final List<String> proxy = TimingProxy.newInstance(delegate);
+    List<Thread> threads = Lists.newArrayList();
+    for (int i = 0; i < 4; i++) {
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int j = 0; j < 1000; j++) {
+            proxy.add("x");
+            proxy.size();
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Map<String, LatencyHistogram> timings = TimingProxy.getHandlerFor(proxy).getTimings();
+    assertThat(timings.size(), is(2));
+    assertThat(timings.get("add").getCount(), is(4000L));
+    assertThat(timings.get("size").getCount(), is(4000L));
+    assertThat(delegate.size(), is(4000));
+  }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark.db;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.Block;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Writes blocks into database in background thread, so caller is not blocked on database, unless queue of batches is full.
+ * <p>
+ * Blocks are inserted using JDBC batches ({@link ExecutorType#BATCH}) of given size and all batches, which are in queue,
+ * are written in one transaction. {@link #flush()} allows to wait for completion of all submitted batches,
+ * e.g. before reading of blocks from database.
+ * </p>
+ * <p>
+ * Note that this implementation is not thread-safe, i.e. should be used by one thread.
+ * </p>
+ */
+public class AsyncBlockWriter {
+
+  private static final Batch STOP = new Batch(Collections.<Block> emptyList(), 0, null);
+
+  private final SqlSessionFactory sqlSessionFactory;
+  private final HashColumn hashColumn;
+  private final int batchSize;
+  private final BlockingQueue<Batch> queue;
+  private final Thread thread;
+
+  private volatile Throwable failure;
+
+  private static class Batch {
+    final List<Block> blocks;
+    final int snapshotId;
+
+    /**
+     * Not null for markers, which are submitted by {@link AsyncBlockWriter#flush()}.
+     */
+    final CountDownLatch written;
+
+    Batch(List<Block> blocks, int snapshotId, CountDownLatch written) {
+      this.blocks = blocks;
+      this.snapshotId = snapshotId;
+      this.written = written;
+    }
+  }
+
+  /**
+   * @param batchSize     maximal number of blocks in one JDBC batch
+   * @param queueCapacity maximal number of batches, which can wait for write
+   */
+  public AsyncBlockWriter(SqlSessionFactory sqlSessionFactory, HashColumn hashColumn, int batchSize, int queueCapacity) {
+    this.sqlSessionFactory = sqlSessionFactory;
+    this.hashColumn = hashColumn;
+    this.batchSize = batchSize;
+    this.queue = new ArrayBlockingQueue<Batch>(queueCapacity);
+    this.thread = new Thread(new Runnable() {
+      public void run() {
+        processQueue();
+      }
+    }, getClass().getSimpleName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Submits blocks for write. Given list should not be modified after this call.
+   *
+   * @throws DuplicationsException if some of previous writes failed
+   */
+  public void write(List<Block> blocks, int snapshotId) {
+    checkFailure();
+    put(new Batch(blocks, snapshotId, null));
+  }
+
+  /**
+   * Waits for completion of all submitted writes.
+   *
+   * @throws DuplicationsException if some of writes failed
+   */
+  public void flush() {
+    CountDownLatch written = new CountDownLatch(1);
+    put(new Batch(Collections.<Block> emptyList(), 0, written));
+    try {
+      written.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DuplicationsException("Interrupted while waiting for write of blocks", e);
+    }
+    checkFailure();
+  }
+
+  /**
+   * Completes all submitted writes and stops background thread.
+   */
+  public void close() {
+    put(STOP);
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DuplicationsException("Interrupted while waiting for write of blocks", e);
+    }
+    checkFailure();
+  }
+
+  private void put(Batch batch) {
+    try {
+      queue.put(batch);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DuplicationsException("Interrupted while submitting blocks for write", e);
+    }
+  }
+
+  private void checkFailure() {
+    if (failure != null) {
+      throw new DuplicationsException("Unable to write blocks", failure);
+    }
+  }
+
+  private void processQueue() {
+    List<Batch> batches = Lists.newArrayList();
+    while (true) {
+      try {
+        batches.add(queue.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      queue.drainTo(batches);
+
+      // after failure batches are skipped, but markers should be released
+      if (failure == null) {
+        try {
+          writeAll(batches);
+        } catch (Throwable e) {
+          failure = e;
+        }
+      }
+      for (Batch batch : batches) {
+        if (batch == STOP) {
+          return;
+        }
+        if (batch.written != null) {
+          batch.written.countDown();
+        }
+      }
+      batches.clear();
+    }
+  }
+
+  private void writeAll(List<Batch> batches) {
+    boolean empty = true;
+    for (Batch batch : batches) {
+      empty &= batch.blocks.isEmpty();
+    }
+    if (empty) {
+      return;
+    }
+    SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    try {
+      Mapper mapper = session.getMapper(Mapper.class);
+      int pending = 0;
+      for (Batch batch : batches) {
+        for (Block block : batch.blocks) {
+          if (hashColumn == HashColumn.BIGINT) {
+            mapper.insertBigint(block.getBlockHash(), block.getResourceId(), block.getIndexInFile(), block.getFirstLineNumber(), block.getLastLineNumber(), batch.snapshotId);
+          } else {
+            mapper.insert(block.getHashHex(), block.getResourceId(), block.getIndexInFile(), block.getFirstLineNumber(), block.getLastLineNumber(), batch.snapshotId);
+          }
+          // otherwise JDBC batch would contain all drained blocks, which are held in memory by driver until commit
+          pending++;
+          if (pending == batchSize) {
+            session.flushStatements();
+            pending = 0;
+          }
+        }
+      }
+      session.commit();
+    } finally {
+      session.close();
+    }
+  }
+
+}
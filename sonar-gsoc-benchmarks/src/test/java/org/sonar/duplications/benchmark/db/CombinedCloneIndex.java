@@ -21,20 +21,32 @@ package org.sonar.duplications.benchmark.db;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 import org.sonar.duplications.index.AbstractCloneIndex;
+import org.sonar.duplications.index.BatchLookupAdapter;
+import org.sonar.duplications.index.BatchLookupCloneIndex;
 import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.utils.ByteArrayBloomFilter;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
-public class CombinedCloneIndex extends AbstractCloneIndex {
+/**
+ * Combines index of current analysis (first) with index of previous analyses (second), which usually is remote.
+ * <p>
+ * Optional filter of hashes, which are present in second index, allows to skip lookups in second index for most of hashes.
+ * </p>
+ */
+public class CombinedCloneIndex extends AbstractCloneIndex implements BatchLookupCloneIndex {
 
-  private final CloneIndex first;
-  private final CloneIndex second;
+  private final BatchLookupCloneIndex first;
+  private final BatchLookupCloneIndex second;
+  private final ByteArrayBloomFilter secondHashes;
 
   /**
    * Ids of all resources, which were indexed.
@@ -42,8 +54,17 @@ public class CombinedCloneIndex extends AbstractCloneIndex {
   private final Set<String> resourceIds = Sets.newHashSet();
 
   public CombinedCloneIndex(CloneIndex first, CloneIndex second) {
-    this.first = first;
-    this.second = second;
+    this(first, second, null);
+  }
+
+  /**
+   * @param secondHashes filter, which contains all hashes of blocks from second index, except blocks of resources inserted into this index;
+   *                     should be recreated when content of second index changes, e.g. for each new snapshot
+   */
+  public CombinedCloneIndex(CloneIndex first, CloneIndex second, ByteArrayBloomFilter secondHashes) {
+    this.first = BatchLookupAdapter.wrap(first);
+    this.second = BatchLookupAdapter.wrap(second);
+    this.secondHashes = secondHashes;
   }
 
   public Collection<Block> getByResourceId(String resourceId) {
@@ -53,6 +74,9 @@ public class CombinedCloneIndex extends AbstractCloneIndex {
   public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
     List<Block> result = Lists.newArrayList();
     result.addAll(first.getBySequenceHash(sequenceHash));
+    if (!mightBeInSecond(sequenceHash)) {
+      return result;
+    }
     for (Block block : second.getBySequenceHash(sequenceHash)) {
       if (!resourceIds.contains(block.getResourceId())) {
         result.add(block);
@@ -61,6 +85,48 @@ public class CombinedCloneIndex extends AbstractCloneIndex {
     return result;
   }
 
+  public Map<ByteArray, Collection<Block>> getBySequenceHashes(Collection<ByteArray> sequenceHashes) {
+    Map<ByteArray, Collection<Block>> fromFirst = first.getBySequenceHashes(sequenceHashes);
+    Map<ByteArray, Collection<Block>> fromSecond = second.getBySequenceHashes(filterForSecond(sequenceHashes));
+    Map<ByteArray, Collection<Block>> result = Maps.newHashMapWithExpectedSize(sequenceHashes.size());
+    for (ByteArray sequenceHash : sequenceHashes) {
+      List<Block> blocks = Lists.newArrayList();
+      Collection<Block> firstBlocks = fromFirst.get(sequenceHash);
+      if (firstBlocks != null) {
+        blocks.addAll(firstBlocks);
+      }
+      Collection<Block> secondBlocks = fromSecond.get(sequenceHash);
+      if (secondBlocks != null) {
+        for (Block block : secondBlocks) {
+          if (!resourceIds.contains(block.getResourceId())) {
+            blocks.add(block);
+          }
+        }
+      }
+      if (!blocks.isEmpty()) {
+        result.put(sequenceHash, blocks);
+      }
+    }
+    return result;
+  }
+
+  private boolean mightBeInSecond(ByteArray sequenceHash) {
+    return secondHashes == null || secondHashes.mightContain(sequenceHash);
+  }
+
+  private Collection<ByteArray> filterForSecond(Collection<ByteArray> sequenceHashes) {
+    if (secondHashes == null) {
+      return sequenceHashes;
+    }
+    List<ByteArray> result = Lists.newArrayListWithCapacity(sequenceHashes.size());
+    for (ByteArray sequenceHash : sequenceHashes) {
+      if (secondHashes.mightContain(sequenceHash)) {
+        result.add(sequenceHash);
+      }
+    }
+    return result;
+  }
+
   public void insert(Block block) {
     resourceIds.add(block.getResourceId());
     first.insert(block);
@@ -0,0 +1,38 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark.db;
+
+/**
+ * Representation of hash of block in database.
+ */
+public enum HashColumn {
+
+  /**
+   * Hexadecimal string, see {@link org.sonar.duplications.block.Block#getHashHex()}.
+   */
+  HEX,
+
+  /**
+   * BIGINT, which is twice smaller and faster to compare, but can hold only hashes of 8 bytes (see {@link LongHashTypeHandler}).
+   * Index on (hash, snapshot_id) is used for lookup of blocks with same hashes.
+   */
+  BIGINT
+
+}
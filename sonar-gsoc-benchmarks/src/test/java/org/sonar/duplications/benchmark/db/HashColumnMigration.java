@@ -0,0 +1,160 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark.db;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.utils.ByteArrayUtils;
+
+/**
+ * Converts table of blocks from {@link HashColumn#HEX} to {@link HashColumn#BIGINT}.
+ * <p>
+ * Conversion of hexadecimal strings into numbers is not portable between databases, so rows are copied through JDBC:
+ * old table renamed, new table created, rows streamed from old table into new one by JDBC batches, and finally old table dropped.
+ * If copying fails (e.g. because of hash, which doesn't fit into BIGINT), then new table dropped and old one renamed back,
+ * so migration can be repeated after correction of data. Table of snapshots is not affected.
+ * </p>
+ */
+public final class HashColumnMigration {
+
+  private static final int BATCH_SIZE = 1000;
+
+  private HashColumnMigration() {
+  }
+
+  /**
+   * Row of table with {@link HashColumn#HEX}.
+   */
+  public static class HexBlockRecord {
+    private String hash;
+    private String resource;
+    private int indexInFile;
+    private int firstLine;
+    private int lastLine;
+    private int snapshotId;
+
+    public void setHash(String hash) {
+      this.hash = hash;
+    }
+
+    public void setResource(String resource) {
+      this.resource = resource;
+    }
+
+    public void setIndexInFile(int indexInFile) {
+      this.indexInFile = indexInFile;
+    }
+
+    public void setFirstLine(int firstLine) {
+      this.firstLine = firstLine;
+    }
+
+    public void setLastLine(int lastLine) {
+      this.lastLine = lastLine;
+    }
+
+    public void setSnapshotId(int snapshotId) {
+      this.snapshotId = snapshotId;
+    }
+  }
+
+  /**
+   * @return number of migrated blocks
+   * @throws DuplicationsException if migration failed, table with {@link HashColumn#HEX} is restored in this case
+   */
+  public static int migrate(SqlSessionFactory sqlSessionFactory) {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      session.getMapper(Mapper.class).prepareBigintMigration();
+      session.commit();
+    } finally {
+      session.close();
+    }
+
+    int count;
+    try {
+      count = copy(sqlSessionFactory);
+    } catch (RuntimeException e) {
+      try {
+        restore(sqlSessionFactory);
+      } catch (RuntimeException restoreFailure) {
+        throw new DuplicationsException("Unable to restore table with HEX hashes, which is kept as blocks_hex, after failure of migration: "
+            + e.getMessage(), restoreFailure);
+      }
+      throw new DuplicationsException("Unable to migrate blocks, table with HEX hashes restored", e);
+    }
+
+    session = sqlSessionFactory.openSession();
+    try {
+      session.getMapper(Mapper.class).dropHexTable();
+      session.commit();
+    } finally {
+      session.close();
+    }
+    return count;
+  }
+
+  private static int copy(SqlSessionFactory sqlSessionFactory) {
+    final SqlSession readSession = sqlSessionFactory.openSession();
+    final SqlSession writeSession = sqlSessionFactory.openSession(ExecutorType.BATCH);
+    final int[] count = new int[1];
+    try {
+      final Mapper mapper = writeSession.getMapper(Mapper.class);
+      readSession.select("org.sonar.duplications.benchmark.db.Mapper.selectHexBlocks", new ResultHandler() {
+        public void handleResult(ResultContext context) {
+          HexBlockRecord record = (HexBlockRecord) context.getResultObject();
+          ByteArray hash = new ByteArray(ByteArrayUtils.fromHex(record.hash.trim()));
+          mapper.insertBigint(hash, record.resource, record.indexInFile, record.firstLine, record.lastLine, record.snapshotId);
+          count[0]++;
+          if (count[0] % BATCH_SIZE == 0) {
+            writeSession.flushStatements();
+          }
+        }
+      });
+      writeSession.commit();
+    } finally {
+      writeSession.close();
+      readSession.close();
+    }
+    return count[0];
+  }
+
+  private static void restore(SqlSessionFactory sqlSessionFactory) {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      session.getMapper(Mapper.class).restoreHexTable();
+      session.commit();
+    } finally {
+      session.close();
+    }
+  }
+
+  public static void main(String[] args) {
+    String environment = args.length > 0 ? args[0] : "h2";
+    int count = migrate(MyBatisIndex.createSqlSessionFactory(environment));
+    System.out.println("Migrated " + count + " blocks");
+  }
+
+}
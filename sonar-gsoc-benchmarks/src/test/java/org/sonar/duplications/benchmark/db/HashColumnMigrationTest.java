@@ -0,0 +1,124 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark.db;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import com.google.common.collect.Lists;
+
+public class HashColumnMigrationTest {
+
+  private static final long[] HASHES = { 1, 2, -3, Long.MIN_VALUE, Long.MAX_VALUE };
+
+  private SqlSessionFactory sqlSessionFactory;
+  private int snapshotId;
+
+  @Before
+  public void setUp() {
+    sqlSessionFactory = MyBatisIndex.createSqlSessionFactory("h2-mem");
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = session.getMapper(Mapper.class);
+      mapper.recreateTable();
+      Snapshot snapshot = new Snapshot();
+      snapshot.setProject("project");
+      mapper.newSnapshot(snapshot);
+      snapshotId = snapshot.getId();
+      for (int i = 0; i < HASHES.length; i++) {
+        String hash = new Block(null, new ByteArray(HASHES[i]), 0, 0, 0).getHashHex();
+        mapper.insert(hash, "a", i, i, i + 5, snapshotId);
+        mapper.insert(hash, "b", i + 1, i + 1, i + 6, snapshotId);
+      }
+      mapper.doneSnapshot(snapshot);
+      session.commit();
+    } finally {
+      session.close();
+    }
+  }
+
+  @Test
+  public void shouldReturnSameBlocksAfterMigration() {
+    List<String> expected = select(false, "a");
+    assertThat(expected.size(), is(2 * HASHES.length));
+
+    assertThat(HashColumnMigration.migrate(sqlSessionFactory), is(2 * HASHES.length));
+
+    assertThat(select(true, "a"), is(expected));
+    assertThat(select(true, "b"), is(expected));
+  }
+
+  @Test
+  public void shouldRestoreTableWhenMigrationFailed() {
+    List<String> expected = select(false, "a");
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      // hash of 4 bytes can't be converted into BIGINT
+      session.getMapper(Mapper.class).insert("01020304", "c", 0, 0, 5, snapshotId);
+      session.commit();
+    } finally {
+      session.close();
+    }
+
+    try {
+      HashColumnMigration.migrate(sqlSessionFactory);
+      fail();
+    } catch (DuplicationsException e) {
+      // expected
+    }
+
+    assertThat(select(false, "a"), is(expected));
+    assertThat(select(false, "c").size(), is(1));
+  }
+
+  private List<String> select(boolean bigint, String resourceId) {
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      Mapper mapper = session.getMapper(Mapper.class);
+      return toStrings(bigint ? mapper.getBigint(resourceId, snapshotId) : mapper.get(resourceId, snapshotId));
+    } finally {
+      session.close();
+    }
+  }
+
+  private static List<String> toStrings(Collection<Block> blocks) {
+    List<String> result = Lists.newArrayList();
+    for (Block block : blocks) {
+      result.add(block.getResourceId() + ":" + block.getIndexInFile() + ":" + block.getFirstLineNumber() + ":" + block.getLastLineNumber()
+          + ":" + block.getHashHex().trim());
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark.db;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.utils.ByteArrayUtils;
+
+/**
+ * Maps hash of 8 bytes, which is produced by {@link org.sonar.duplications.block.BlockChunker}, to BIGINT column.
+ * Conversion is same as in {@link ByteArrayUtils#toLong(ByteArray)}, so values in column match keys of {@link org.sonar.duplications.index.LongHashCloneIndex}.
+ */
+public class LongHashTypeHandler extends BaseTypeHandler {
+
+  @Override
+  public void setNonNullParameter(PreparedStatement ps, int i, Object parameter, JdbcType jdbcType) throws SQLException {
+    ps.setLong(i, ByteArrayUtils.toLong((ByteArray) parameter));
+  }
+
+  @Override
+  public Object getNullableResult(ResultSet rs, String columnName) throws SQLException {
+    return new ByteArray(rs.getLong(columnName));
+  }
+
+  @Override
+  public Object getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+    return new ByteArray(cs.getLong(columnIndex));
+  }
+
+}
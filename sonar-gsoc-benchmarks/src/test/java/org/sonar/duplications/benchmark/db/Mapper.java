@@ -23,6 +23,7 @@ import java.util.List;
 
 import org.apache.ibatis.annotations.Param;
 import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
 
 public interface Mapper {
 
@@ -38,8 +39,55 @@ public interface Mapper {
       @Param("resource_id") String resourceId,
       @Param("current_snapshot_id") int snapshotId);
 
+  /**
+   * @return blocks from last snapshots with given hashes
+   */
+  List<Block> getByHashes(@Param("hashes") List<String> hashes);
+
   void recreateTable();
 
+  /**
+   * Same as {@link #insert(String, String, int, int, int, int)}, but for {@link HashColumn#BIGINT}.
+   */
+  void insertBigint(
+      @Param("hash") ByteArray hash,
+      @Param("resource_id") String resourceId,
+      @Param("index_in_file") int indexInFile,
+      @Param("first_line") int firstLineNumber,
+      @Param("last_line") int lastLineNumber,
+      @Param("current_snapshot_id") int snapshotId);
+
+  /**
+   * Same as {@link #get(String, int)}, but for {@link HashColumn#BIGINT}.
+   */
+  List<Block> getBigint(
+      @Param("resource_id") String resourceId,
+      @Param("current_snapshot_id") int snapshotId);
+
+  /**
+   * Same as {@link #getByHashes(List)}, but for {@link HashColumn#BIGINT}.
+   */
+  List<Block> getBigintByHashes(@Param("hashes") List<Long> hashes);
+
+  void recreateBigintTable();
+
+  /**
+   * Renames table with {@link HashColumn#HEX} and creates empty table with {@link HashColumn#BIGINT}, see {@link HashColumnMigration}.
+   */
+  void prepareBigintMigration();
+
+  /**
+   * @return number of distinct hashes in last snapshots, see {@link MyBatisIndex#createHashFilter(double)}
+   */
+  int countLastHashes();
+
+  void dropHexTable();
+
+  /**
+   * Drops table with {@link HashColumn#BIGINT} and renames back table with {@link HashColumn#HEX}, i.e. reverts {@link #prepareBigintMigration()}.
+   */
+  void restoreHexTable();
+
   void newSnapshot(Snapshot snapshot);
 
   void doneSnapshot(Snapshot snapshot);
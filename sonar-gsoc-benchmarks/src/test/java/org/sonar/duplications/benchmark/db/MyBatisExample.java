@@ -27,6 +27,7 @@ import org.sonar.duplications.benchmark.Utils;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.BlockChunker;
 import org.sonar.duplications.detector.original.OriginalCloneDetectionAlgorithm;
+import org.sonar.duplications.index.CachingCloneIndex;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.CloneIndex;
 import org.sonar.duplications.index.MemoryCloneIndex;
@@ -37,6 +38,8 @@ import org.sonar.duplications.statement.StatementChunker;
 import org.sonar.duplications.token.TokenChunker;
 import org.sonar.duplications.token.TokenQueue;
 
+import com.google.common.collect.Lists;
+
 /**
  * This is example of usage of database to store index.
  *
@@ -56,6 +59,10 @@ public class MyBatisExample {
   // private static final String environment = "h2";
   private static final String environment = "postgresql";
 
+  private static final int PREFETCH_DEPTH = 4;
+  private static final double HASH_FILTER_FPP = 0.01;
+  private static final int CACHE_WEIGHT = 100000;
+
   private static final MyBatisIndex dbIndex = new MyBatisIndex(environment);
 
   private static void analyse(String project) {
@@ -68,7 +75,9 @@ public class MyBatisExample {
     StatementChunker statementChunker = JavaStatementBuilder.build();
     BlockChunker blockChunker = new BlockChunker(13);
 
-    CloneIndex combinedIndex = new CombinedCloneIndex(new MemoryCloneIndex(), dbIndex);
+    // hashes of previous analyses don't change during analysis
+    CachingCloneIndex cachingIndex = new CachingCloneIndex(dbIndex, CACHE_WEIGHT);
+    CloneIndex combinedIndex = new CombinedCloneIndex(new MemoryCloneIndex(), cachingIndex, dbIndex.createHashFilter(HASH_FILTER_FPP));
 
     for (File file : files) {
       TokenQueue tokenQueue = tokenChunker.chunk(file);
@@ -80,6 +89,12 @@ public class MyBatisExample {
     }
     System.out.println("Index populated");
 
+    List<String> resourceIds = Lists.newArrayListWithCapacity(files.size());
+    for (File file : files) {
+      resourceIds.add(file.getAbsolutePath());
+    }
+    dbIndex.prefetch(resourceIds, PREFETCH_DEPTH);
+
     int cloneGroups = 0;
     int cloneParts = 0;
     for (File file : files) {
@@ -97,6 +112,7 @@ public class MyBatisExample {
 
     dbIndex.done();
     System.out.println("Analysis completed");
+    System.out.println("Cache hit rate: " + cachingIndex.getHitRate() + ", evictions: " + cachingIndex.getEvictionCount());
     System.out.println(cloneGroups + " groups, " + cloneParts + " parts");
   }
 
@@ -123,5 +139,7 @@ public class MyBatisExample {
     // 1195 groups, 15256 parts
     analyse("struts-1.3.9");
     // 1328 groups, 15929 parts
+
+    dbIndex.close();
   }
 }
@@ -23,51 +23,121 @@ import java.io.IOException;
 import java.io.Reader;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.SqlSession;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.sonar.duplications.DuplicationsException;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 import org.sonar.duplications.index.AbstractCloneIndex;
+import org.sonar.duplications.index.BatchLookupCloneIndex;
+import org.sonar.duplications.utils.ByteArrayBloomFilter;
+import org.sonar.duplications.utils.ByteArrayUtils;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 /**
+ * Inserted blocks are collected into batches, which are written by {@link AsyncBlockWriter} in background.
+ * <p>
+ * When order of analysis is known, blocks for next resources can be loaded in background by {@link #prefetch(List, int)},
+ * so queries to database are overlapped with reporting of clones for current resource.
+ * </p>
+ * <p>
+ * {@link #getBySequenceHash(ByteArray)} and {@link #getBySequenceHashes(Collection)} return same blocks as database
+ * (blocks of last snapshots). Hashes, which are present in cache prepared by {@link #prepareCache(String)}, are served from cache,
+ * because it contains all blocks of last snapshots with these hashes. Remaining hashes are queried from database
+ * by one query per {@code batchSize} hashes.
+ * </p>
+ * <p>
  * Note that this implementation is not thread-safe.
+ * </p>
  */
-public class MyBatisIndex extends AbstractCloneIndex implements BatchIndex {
+public class MyBatisIndex extends AbstractCloneIndex implements BatchIndex, BatchLookupCloneIndex {
 
-  private static final int BATCH_SIZE = 200;
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+  public static final int DEFAULT_QUEUE_CAPACITY = 16;
 
   private final SqlSessionFactory sqlSessionFactory;
+  private final HashColumn hashColumn;
+  private final AsyncBlockWriter writer;
+  private final int batchSize;
 
   private String cachedResource = "";
   private List<Block> byResourceId = Lists.newArrayList();
   private Map<ByteArray, List<Block>> byHash = Maps.newHashMap();
 
-  private List<Block> blocksToInsert = Lists.newArrayListWithCapacity(BATCH_SIZE);
+  private List<Block> blocksToInsert;
 
   private Snapshot snapshot;
 
+  private Map<String, Integer> analysisOrder;
+  private List<String> resources;
+  private int prefetchDepth;
+  private ExecutorService prefetchExecutor;
+
+  /**
+   * Loads, which are in progress or completed, but not yet used, by resource id.
+   */
+  private final Map<String, Future<List<Block>>> prefetched = Maps.newLinkedHashMap();
+
+  /**
+   * True, if some blocks were submitted to writer after last {@link #flush()}.
+   */
+  private boolean unflushed;
+
   public MyBatisIndex(String environment) {
+    this(environment, HashColumn.HEX);
+  }
+
+  public MyBatisIndex(String environment, HashColumn hashColumn) {
+    this(environment, hashColumn, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /**
+   * @param batchSize     number of blocks in one JDBC batch
+   * @param queueCapacity maximal number of batches, which can wait for write, before {@link #insert(Block)} blocks
+   */
+  public MyBatisIndex(String environment, HashColumn hashColumn, int batchSize, int queueCapacity) {
+    this.sqlSessionFactory = createSqlSessionFactory(environment);
+    this.hashColumn = hashColumn;
+    this.batchSize = batchSize;
+    this.blocksToInsert = Lists.newArrayListWithCapacity(batchSize);
+    this.writer = new AsyncBlockWriter(sqlSessionFactory, hashColumn, batchSize, queueCapacity);
+  }
+
+  static SqlSessionFactory createSqlSessionFactory(String environment) {
     try {
       Reader reader = Resources.getResourceAsReader("mybatis.xml");
-      sqlSessionFactory = new SqlSessionFactoryBuilder().build(reader, environment);
+      return new SqlSessionFactoryBuilder().build(reader, environment);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
   public void removeAll() {
+    flush();
     SqlSession session = sqlSessionFactory.openSession();
     try {
       Mapper mapper = session.getMapper(Mapper.class);
-      mapper.recreateTable();
+      if (hashColumn == HashColumn.BIGINT) {
+        mapper.recreateBigintTable();
+      } else {
+        mapper.recreateTable();
+      }
       session.commit();
     } finally {
       session.close();
@@ -78,35 +148,147 @@ public class MyBatisIndex extends AbstractCloneIndex implements BatchIndex {
    * TODO Godin: note that this will not work if resource was not inserted into index
    */
   public void prepareCache(String resourceId) {
-    if (!blocksToInsert.isEmpty()) {
-      batchInsert();
+    flush();
+
+    List<Block> blocks;
+    Future<List<Block>> future = prefetched.remove(resourceId);
+    if (future != null) {
+      blocks = getPrefetched(resourceId, future);
+    } else {
+      blocks = load(resourceId, snapshot.getId());
     }
+    schedulePrefetch(resourceId);
+
+    cachedResource = resourceId;
+    byResourceId.clear();
+    byHash.clear();
+    for (Block block : blocks) {
+      if (resourceId.equals(block.getResourceId())) {
+        byResourceId.add(block);
+      }
 
+      List<Block> sameHash = byHash.get(block.getBlockHash());
+      if (sameHash == null) {
+        sameHash = Lists.newArrayList();
+        byHash.put(block.getBlockHash(), sameHash);
+      }
+      sameHash.add(block);
+    }
+  }
+
+  private List<Block> load(String resourceId, int snapshotId) {
     SqlSession session = sqlSessionFactory.openSession();
     try {
       Mapper mapper = session.getMapper(Mapper.class);
-      List<Block> blocks = mapper.get(resourceId, snapshot.getId());
-
-      cachedResource = resourceId;
-      byResourceId.clear();
-      byHash.clear();
-      for (Block block : blocks) {
-        if (resourceId.equals(block.getResourceId())) {
-          byResourceId.add(block);
-        }
+      return hashColumn == HashColumn.BIGINT ? mapper.getBigint(resourceId, snapshotId) : mapper.get(resourceId, snapshotId);
+    } finally {
+      session.close();
+    }
+  }
 
-        List<Block> sameHash = byHash.get(block.getBlockHash());
-        if (sameHash == null) {
-          sameHash = Lists.newArrayList();
-          byHash.put(block.getBlockHash(), sameHash);
+  /**
+   * Creates filter of hashes of all blocks in last snapshots, which can be used to skip lookups in this index
+   * (see {@link CombinedCloneIndex}). Should be created after {@link #start(String)}, because content of last snapshots
+   * changes only on {@link #done()}.
+   */
+  public ByteArrayBloomFilter createHashFilter(double falsePositiveProbability) {
+    flush();
+    SqlSession session = sqlSessionFactory.openSession();
+    try {
+      int count = session.getMapper(Mapper.class).countLastHashes();
+      final ByteArrayBloomFilter filter = ByteArrayBloomFilter.create(count, falsePositiveProbability);
+      String statement = hashColumn == HashColumn.BIGINT ? "selectLastBigintHashes" : "selectLastHexHashes";
+      session.select("org.sonar.duplications.benchmark.db.Mapper." + statement, new ResultHandler() {
+        public void handleResult(ResultContext context) {
+          Object hash = context.getResultObject();
+          if (hash instanceof Long) {
+            filter.add(new ByteArray((Long) hash));
+          } else {
+            filter.add(new ByteArray(ByteArrayUtils.fromHex(((String) hash).trim())));
+          }
         }
-        sameHash.add(block);
-      }
+      });
+      return filter;
     } finally {
       session.close();
     }
   }
 
+  /**
+   * Enables loading of blocks in background for resources, which follow resource passed to {@link #prepareCache(String)}.
+   * Memory consumed by loaded blocks is bounded by given depth.
+   * Inserts invalidate all loads, so should be completed before analysis.
+   *
+   * @param resourceIds order, in which resources will be passed to {@link #prepareCache(String)}
+   * @param depth       number of resources to load in advance
+   */
+  public void prefetch(List<String> resourceIds, int depth) {
+    cancelPrefetch();
+    resources = Lists.newArrayList(resourceIds);
+    analysisOrder = Maps.newHashMapWithExpectedSize(resources.size());
+    for (int i = 0; i < resources.size(); i++) {
+      analysisOrder.put(resources.get(i), i);
+    }
+    prefetchDepth = depth;
+    if (prefetchExecutor == null) {
+      prefetchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "MyBatisIndex prefetch");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+  }
+
+  private void schedulePrefetch(String currentResourceId) {
+    if (analysisOrder == null) {
+      return;
+    }
+    Integer position = analysisOrder.get(currentResourceId);
+    if (position == null) {
+      return;
+    }
+    // loads for resources, which were skipped, would never be used
+    Iterator<Map.Entry<String, Future<List<Block>>>> iterator = prefetched.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Future<List<Block>>> entry = iterator.next();
+      if (analysisOrder.get(entry.getKey()) <= position) {
+        entry.getValue().cancel(false);
+        iterator.remove();
+      }
+    }
+    final int snapshotId = snapshot.getId();
+    for (int i = position + 1; i <= position + prefetchDepth && i < resources.size(); i++) {
+      final String resourceId = resources.get(i);
+      if (!prefetched.containsKey(resourceId)) {
+        prefetched.put(resourceId, prefetchExecutor.submit(new Callable<List<Block>>() {
+          public List<Block> call() {
+            return load(resourceId, snapshotId);
+          }
+        }));
+      }
+    }
+  }
+
+  private List<Block> getPrefetched(String resourceId, Future<List<Block>> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DuplicationsException("Interrupted while loading blocks of " + resourceId, e);
+    } catch (ExecutionException e) {
+      throw new DuplicationsException("Unable to load blocks of " + resourceId, e.getCause());
+    }
+  }
+
+  private void cancelPrefetch() {
+    for (Future<List<Block>> future : prefetched.values()) {
+      future.cancel(false);
+    }
+    prefetched.clear();
+  }
+
   public Collection<Block> getByResourceId(String resourceId) {
     if (cachedResource.equals(resourceId)) {
       return byResourceId;
@@ -116,35 +298,104 @@ public class MyBatisIndex extends AbstractCloneIndex implements BatchIndex {
   }
 
   public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
-    List<Block> result = byHash.get(sequenceHash);
-    if (result != null) {
-      return result;
-    } else {
-      return Collections.emptyList();
-      // TODO Godin: causes exception on a first analysis
-      // throw new IllegalStateException("Cache must be prepared");
+    List<Block> cached = byHash.get(sequenceHash);
+    if (cached != null) {
+      return cached;
     }
+    Collection<Block> result = getBySequenceHashes(Collections.singleton(sequenceHash)).get(sequenceHash);
+    return result == null ? Collections.<Block> emptyList() : result;
   }
 
-  public void insert(Block block) {
-    blocksToInsert.add(block);
-    if (blocksToInsert.size() == BATCH_SIZE) {
-      batchInsert();
+  public Map<ByteArray, Collection<Block>> getBySequenceHashes(Collection<ByteArray> sequenceHashes) {
+    Map<ByteArray, Collection<Block>> result = Maps.newHashMapWithExpectedSize(sequenceHashes.size());
+    List<ByteArray> hashes = Lists.newArrayList();
+    for (ByteArray sequenceHash : sequenceHashes) {
+      List<Block> blocks = byHash.get(sequenceHash);
+      if (blocks != null) {
+        result.put(sequenceHash, blocks);
+      } else {
+        hashes.add(sequenceHash);
+      }
+    }
+    if (hashes.isEmpty()) {
+      return result;
     }
-  }
 
-  private void batchInsert() {
+    flush();
     SqlSession session = sqlSessionFactory.openSession();
     try {
       Mapper mapper = session.getMapper(Mapper.class);
-      for (Block block : blocksToInsert) {
-        mapper.insert(block.getHashHex(), block.getResourceId(), block.getIndexInFile(), block.getFirstLineNumber(), block.getLastLineNumber(), snapshot.getId());
+      for (int start = 0; start < hashes.size(); start += batchSize) {
+        List<ByteArray> chunk = hashes.subList(start, Math.min(start + batchSize, hashes.size()));
+        for (Block block : selectByHashes(mapper, chunk)) {
+          Collection<Block> sameHash = result.get(block.getBlockHash());
+          if (sameHash == null) {
+            sameHash = Lists.newArrayList();
+            result.put(block.getBlockHash(), sameHash);
+          }
+          sameHash.add(block);
+        }
       }
-      session.commit();
-      blocksToInsert.clear();
     } finally {
       session.close();
     }
+    return result;
+  }
+
+  private List<Block> selectByHashes(Mapper mapper, List<ByteArray> hashes) {
+    if (hashColumn == HashColumn.BIGINT) {
+      List<Long> values = Lists.newArrayListWithCapacity(hashes.size());
+      for (ByteArray hash : hashes) {
+        values.add(ByteArrayUtils.toLong(hash));
+      }
+      return mapper.getBigintByHashes(values);
+    }
+    List<String> values = Lists.newArrayListWithCapacity(hashes.size());
+    for (ByteArray hash : hashes) {
+      values.add(ByteArrayUtils.toHex(hash));
+    }
+    return mapper.getByHashes(values);
+  }
+
+  public void insert(Block block) {
+    cancelPrefetch();
+    blocksToInsert.add(block);
+    if (blocksToInsert.size() == batchSize) {
+      submitBatch();
+    }
+  }
+
+  private void submitBatch() {
+    writer.write(blocksToInsert, snapshot.getId());
+    blocksToInsert = Lists.newArrayListWithCapacity(batchSize);
+    unflushed = true;
+  }
+
+  /**
+   * Waits until all inserted blocks are written into database.
+   */
+  public void flush() {
+    if (!blocksToInsert.isEmpty()) {
+      submitBatch();
+    }
+    if (unflushed) {
+      writer.flush();
+      unflushed = false;
+    }
+  }
+
+  /**
+   * Writes remaining blocks and stops background threads.
+   */
+  public void close() {
+    cancelPrefetch();
+    if (prefetchExecutor != null) {
+      prefetchExecutor.shutdown();
+    }
+    if (!blocksToInsert.isEmpty()) {
+      submitBatch();
+    }
+    writer.close();
   }
 
   @Override
@@ -172,6 +423,9 @@ public class MyBatisIndex extends AbstractCloneIndex implements BatchIndex {
    * Finalize current snapshot and purge old snapshots.
    */
   public void done() {
+    flush();
+    cancelPrefetch();
+    analysisOrder = null;
     SqlSession session = sqlSessionFactory.openSession();
     try {
       Mapper mapper = session.getMapper(Mapper.class);
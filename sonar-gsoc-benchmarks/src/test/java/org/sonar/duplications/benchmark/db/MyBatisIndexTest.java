@@ -0,0 +1,135 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark.db;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import com.google.common.collect.Lists;
+
+public class MyBatisIndexTest {
+
+  private static final String ENVIRONMENT = "h2-mem";
+
+  @Test
+  public void shouldLookupHexHashesByOneQuery() {
+    shouldLookupHashesByOneQuery(HashColumn.HEX);
+  }
+
+  @Test
+  public void shouldLookupBigintHashesByOneQuery() {
+    shouldLookupHashesByOneQuery(HashColumn.BIGINT);
+  }
+
+  private void shouldLookupHashesByOneQuery(HashColumn hashColumn) {
+    // batch of 2 hashes forces several queries for 3 hashes
+    MyBatisIndex index = new MyBatisIndex(ENVIRONMENT, hashColumn, 2, 1);
+    try {
+      populate(index);
+
+      Map<ByteArray, Collection<Block>> result = index.getBySequenceHashes(Arrays.asList(hash(1), hash(2), hash(3), hash(4)));
+      assertThat(result.size(), is(3));
+      assertThat(toStrings(result.get(hash(1))), is(Arrays.asList("a:0")));
+      assertThat(toStrings(result.get(hash(2))), is(Arrays.asList("a:1", "b:0")));
+      assertThat(toStrings(result.get(hash(3))), is(Arrays.asList("b:1")));
+    } finally {
+      index.close();
+    }
+  }
+
+  @Test
+  public void shouldLookupHashesInPreparedCache() {
+    MyBatisIndex index = new MyBatisIndex(ENVIRONMENT, HashColumn.BIGINT);
+    try {
+      populate(index);
+      index.insert(new Block("a", hash(1), 0, 0, 5));
+      index.insert(new Block("a", hash(2), 1, 1, 6));
+      index.prepareCache("a");
+
+      // hash 3 is not in cache, so queried from database
+      Map<ByteArray, Collection<Block>> result = index.getBySequenceHashes(Arrays.asList(hash(1), hash(2), hash(3)));
+      assertThat(result.size(), is(3));
+      assertThat(toStrings(result.get(hash(2))), is(toStrings(index.getBySequenceHash(hash(2)))));
+      assertThat(toStrings(result.get(hash(3))), is(Arrays.asList("b:1")));
+    } finally {
+      index.close();
+    }
+  }
+
+  @Test
+  public void shouldReturnSameBlocksForSingleAndBatchLookup() {
+    MyBatisIndex index = new MyBatisIndex(ENVIRONMENT, HashColumn.BIGINT);
+    try {
+      populate(index);
+      checkSameBlocksForSingleAndBatchLookup(index);
+      index.insert(new Block("a", hash(1), 0, 0, 5));
+      index.insert(new Block("a", hash(2), 1, 1, 6));
+      index.prepareCache("a");
+      checkSameBlocksForSingleAndBatchLookup(index);
+    } finally {
+      index.close();
+    }
+  }
+
+  private static void checkSameBlocksForSingleAndBatchLookup(MyBatisIndex index) {
+    List<ByteArray> hashes = Arrays.asList(hash(1), hash(2), hash(3), hash(4));
+    Map<ByteArray, Collection<Block>> batch = index.getBySequenceHashes(hashes);
+    for (ByteArray hash : hashes) {
+      Collection<Block> expected = batch.containsKey(hash) ? batch.get(hash) : Collections.<Block> emptyList();
+      assertThat(toStrings(index.getBySequenceHash(hash)), is(toStrings(expected)));
+    }
+    assertThat(toStrings(index.getBySequenceHash(hash(3))), is(Arrays.asList("b:1")));
+  }
+
+  private static void populate(MyBatisIndex index) {
+    index.removeAll();
+    index.start("project");
+    index.insert(new Block("a", hash(1), 0, 0, 5));
+    index.insert(new Block("a", hash(2), 1, 1, 6));
+    index.insert(new Block("b", hash(2), 0, 0, 5));
+    index.insert(new Block("b", hash(3), 1, 1, 6));
+    index.done();
+    index.start("project");
+  }
+
+  private static ByteArray hash(long value) {
+    return new ByteArray(value);
+  }
+
+  static List<String> toStrings(Collection<Block> blocks) {
+    List<String> result = Lists.newArrayList();
+    for (Block block : blocks) {
+      result.add(block.getResourceId() + ":" + block.getIndexInFile());
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+}
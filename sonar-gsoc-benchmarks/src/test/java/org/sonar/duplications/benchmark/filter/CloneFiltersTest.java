@@ -0,0 +1,164 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.benchmark.filter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.sonar.duplications.algorithm.FilterUtils;
+import org.sonar.duplications.algorithm.filter.BruteForceCloneFilter;
+import org.sonar.duplications.algorithm.filter.IntervalTreeCloneFilter;
+import org.sonar.duplications.algorithm.filter.SweepLineCloneFilter;
+import org.sonar.duplications.benchmark.Benchmark;
+import org.sonar.duplications.benchmark.BenchmarksDiff;
+import org.sonar.duplications.benchmark.MemoryUtils;
+import org.sonar.duplications.index.CloneGroup;
+import org.sonar.duplications.index.ClonePart;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Compares filters on generated clones: many small sets, which are typical for ordinary files,
+ * and few large sets, which are typical for generated files.
+ */
+public class CloneFiltersTest {
+
+  private static final int WARMUP_ROUNDS = 3;
+  private static final int BENCHMARK_ROUNDS = 10;
+
+  private static List<List<CloneGroup>> smallSets;
+  private static List<List<CloneGroup>> largeSets;
+
+  private BenchmarksDiff results;
+
+  @BeforeClass
+  public static void generate() {
+    Random random = new Random(1);
+    smallSets = Lists.newArrayList();
+    for (int i = 0; i < 20000; i++) {
+      smallSets.add(randomCloneGroups(random, 1 + random.nextInt(8), 50));
+    }
+    largeSets = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      largeSets.add(randomCloneGroups(random, 2000, 5000));
+    }
+  }
+
+  @Before
+  public void setUp() {
+    MemoryUtils.cleanup();
+    results = new BenchmarksDiff();
+  }
+
+  @After
+  public void tearDown() {
+    results.print();
+    MemoryUtils.cleanup();
+  }
+
+  @Test
+  public void smallSets() {
+    run(smallSets);
+  }
+
+  @Test
+  public void largeSets() {
+    run(largeSets);
+  }
+
+  private void run(final List<List<CloneGroup>> sets) {
+    final IntervalTreeCloneFilter intervalTreeFilter = new IntervalTreeCloneFilter();
+    results.setReference(new FilterBenchmark("IntervalTreeCloneFilter", sets) {
+      @Override
+      protected List<CloneGroup> filter(List<CloneGroup> clones) {
+        return intervalTreeFilter.filter(clones);
+      }
+    }.runBenchmark(BENCHMARK_ROUNDS, WARMUP_ROUNDS));
+
+    final SweepLineCloneFilter sweepLineFilter = new SweepLineCloneFilter();
+    results.add(new FilterBenchmark("SweepLineCloneFilter", sets) {
+      @Override
+      protected List<CloneGroup> filter(List<CloneGroup> clones) {
+        return sweepLineFilter.filter(clones);
+      }
+    }.runBenchmark(BENCHMARK_ROUNDS, WARMUP_ROUNDS));
+
+    final BruteForceCloneFilter bruteForceFilter = new BruteForceCloneFilter();
+    results.add(new FilterBenchmark("BruteForceCloneFilter", sets) {
+      @Override
+      protected List<CloneGroup> filter(List<CloneGroup> clones) {
+        return bruteForceFilter.filter(clones);
+      }
+    }.runBenchmark(BENCHMARK_ROUNDS, WARMUP_ROUNDS));
+  }
+
+  private static List<CloneGroup> randomCloneGroups(Random random, int count, int units) {
+    List<CloneGroup> clones = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      int length = 1 + random.nextInt(20);
+      ClonePart origin = randomPart(random, "origin", length, units);
+      List<ClonePart> parts = Lists.newArrayList(origin);
+      int others = 1 + random.nextInt(3);
+      for (int j = 0; j < others; j++) {
+        parts.add(randomPart(random, "file" + random.nextInt(5), length, units));
+      }
+      Collections.sort(parts, FilterUtils.CLONEPART_COMPARATOR);
+      clones.add(new CloneGroup(length, origin, parts));
+    }
+    return clones;
+  }
+
+  private static ClonePart randomPart(Random random, String resourceId, int length, int units) {
+    int start = random.nextInt(units);
+    return new ClonePart(resourceId, start, start, start + length);
+  }
+
+  private abstract static class FilterBenchmark extends Benchmark {
+
+    private final String name;
+    private final List<List<CloneGroup>> sets;
+
+    public FilterBenchmark(String name, List<List<CloneGroup>> sets) {
+      this.name = name;
+      this.sets = sets;
+    }
+
+    @Override
+    public void runRound() {
+      for (List<CloneGroup> clones : sets) {
+        filter(clones);
+      }
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    protected abstract List<CloneGroup> filter(List<CloneGroup> clones);
+
+  }
+
+}
@@ -26,11 +26,16 @@ import org.junit.Test;
 import org.junit.Ignore;
 import org.sonar.duplications.benchmark.*;
 import org.sonar.duplications.block.BlockChunker;
+import org.sonar.duplications.block.LongBlockChunker;
+import org.sonar.duplications.block.Murmur3BlockChunker;
+import org.sonar.duplications.block.RollingHashBlockChunker;
 
 import java.io.File;
 import java.util.List;
 
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
 
 @Ignore("Irrelevant for the moment")
 public class HashCollisionsTest {
@@ -66,6 +71,22 @@ public class HashCollisionsTest {
     printStatistics(benchmark);
   }
 
+  /**
+   * Hashes stored as primitive longs should not introduce collisions in comparison with {@link BlockChunker}.
+   */
+  @Test
+  public void longRabinKarpHashWithoutObjects() throws Exception {
+    HashCollisionsBenchmark reference = new HashCollisionsBenchmark("Rabin-Karp long", files, new BlockChunker(BLOCK_SIZE));
+    reference.runRound();
+    HashCollisionsBenchmark benchmark = new HashCollisionsBenchmark("Rabin-Karp primitive long", files, new LongBlockChunker(BLOCK_SIZE));
+    results.add(run(benchmark));
+    printStatistics(benchmark);
+
+    assertThat(benchmark.getTotalBlocks(), is(reference.getTotalBlocks()));
+    assertThat(benchmark.getUniqueHashes(), is(reference.getUniqueHashes()));
+    assertThat(benchmark.getHashesChecksum(), is(reference.getHashesChecksum()));
+  }
+
   @Test
   public void intRabinKarpHash() {
     BlockChunker chunker = new IntRabinKarpBlockChunker(BLOCK_SIZE);
@@ -100,6 +121,38 @@ public class HashCollisionsTest {
     printStatistics(benchmark);
   }
 
+  @Test
+  public void rollingMurmurHash() {
+    BlockChunker chunker = new RollingHashBlockChunker(BLOCK_SIZE, RollingHashBlockChunker.MURMUR_HASHER);
+    HashCollisionsBenchmark benchmark = new HashCollisionsBenchmark("Rolling Murmur", files, chunker);
+    results.add(run(benchmark));
+    printStatistics(benchmark);
+  }
+
+  @Test
+  public void rollingMd5Hash() {
+    BlockChunker chunker = new RollingHashBlockChunker(BLOCK_SIZE, RollingHashBlockChunker.digestHasher("MD5"));
+    HashCollisionsBenchmark benchmark = new HashCollisionsBenchmark("Rolling MD5", files, chunker);
+    results.add(run(benchmark));
+    printStatistics(benchmark);
+  }
+
+  @Test
+  public void murmur3Hash64() {
+    BlockChunker chunker = new Murmur3BlockChunker(BLOCK_SIZE, Murmur3BlockChunker.Width.BITS_64);
+    HashCollisionsBenchmark benchmark = new HashCollisionsBenchmark("Murmur3 64", files, chunker);
+    results.add(run(benchmark));
+    printStatistics(benchmark);
+  }
+
+  @Test
+  public void murmur3Hash128() {
+    BlockChunker chunker = new Murmur3BlockChunker(BLOCK_SIZE, Murmur3BlockChunker.Width.BITS_128);
+    HashCollisionsBenchmark benchmark = new HashCollisionsBenchmark("Murmur3 128", files, chunker);
+    results.add(run(benchmark));
+    printStatistics(benchmark);
+  }
+
   @AfterClass
   public static void after() {
     results.print();
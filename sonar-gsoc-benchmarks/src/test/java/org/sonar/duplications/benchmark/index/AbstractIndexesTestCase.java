@@ -19,7 +19,9 @@
  */
 package org.sonar.duplications.benchmark.index;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 
@@ -33,9 +35,15 @@ import org.sonar.duplications.benchmark.BenchmarksDiff;
 import org.sonar.duplications.benchmark.MemoryUtils;
 import org.sonar.duplications.benchmark.SizeOf;
 import org.sonar.duplications.benchmark.TimingProxy;
+import org.sonar.duplications.benchmark.db.HashColumn;
+import org.sonar.duplications.benchmark.db.MyBatisIndex;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.BlockChunker;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.AbstractCloneIndex;
 import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.ConcurrentCloneIndex;
+import org.sonar.duplications.index.MappedCloneIndex;
 import org.sonar.duplications.index.MemoryCloneIndex;
 import org.sonar.duplications.index.MemoryCloneIndex2;
 import org.sonar.duplications.index.PackedMemoryCloneIndex;
@@ -53,6 +61,7 @@ public abstract class AbstractIndexesTestCase {
   protected static int BENCHMARK_ROUNDS = 2;
 
   protected static List<File> files;
+  protected static String corpus;
   protected static BenchmarksDiff results = new BenchmarksDiff();
 
   protected BenchmarkResult run(IndexBenchmark benchmark) {
@@ -70,8 +79,9 @@ public abstract class AbstractIndexesTestCase {
   }
 
   @AfterClass
-  public static void after() {
+  public static void after() throws IOException {
     results.print();
+    results.record(corpus);
   }
 
   @Test
@@ -119,6 +129,103 @@ public abstract class AbstractIndexesTestCase {
     }));
   }
 
+  @Test
+  public void test4() {
+    results.add(run(new IndexBenchmark(files) {
+      @Override
+      protected CloneIndex createIndex() {
+        return new ConcurrentCloneIndex();
+      }
+
+      @Override
+      public String getName() {
+        return "Concurrent";
+      }
+    }));
+  }
+
+  @Test
+  public void test5() {
+    results.add(run(new IndexBenchmark(files) {
+      @Override
+      protected CloneIndex createIndex() {
+        // BlockChunker produces hashes of 8 bytes
+        return new MappedCloneIndex(new File(System.getProperty("java.io.tmpdir")), 8);
+      }
+
+      @Override
+      public String getName() {
+        return "Mapped";
+      }
+    }));
+  }
+
+  @Test
+  public void test6() {
+    results.add(run(new IndexBenchmark(files) {
+      @Override
+      protected CloneIndex createIndex() {
+        return new DatabaseIndex(HashColumn.HEX);
+      }
+
+      @Override
+      public String getName() {
+        return "H2 hex";
+      }
+    }));
+  }
+
+  @Test
+  public void test7() {
+    results.add(run(new IndexBenchmark(files) {
+      @Override
+      protected CloneIndex createIndex() {
+        return new DatabaseIndex(HashColumn.BIGINT);
+      }
+
+      @Override
+      public String getName() {
+        return "H2 bigint";
+      }
+    }));
+  }
+
+  /**
+   * Adapts {@link MyBatisIndex} on embedded H2 to usage in {@link IndexBenchmark}:
+   * snapshot is finalized after population and cache is prepared on each request of blocks of resource.
+   */
+  private static class DatabaseIndex extends AbstractCloneIndex implements Closeable {
+    private final MyBatisIndex index;
+    private boolean populated;
+
+    public DatabaseIndex(HashColumn hashColumn) {
+      index = new MyBatisIndex("h2", hashColumn);
+      index.removeAll();
+      index.start("benchmark");
+    }
+
+    public void insert(Block block) {
+      index.insert(block);
+    }
+
+    public Collection<Block> getByResourceId(String resourceId) {
+      if (!populated) {
+        index.done();
+        populated = true;
+      }
+      index.prepareCache(resourceId);
+      return index.getByResourceId(resourceId);
+    }
+
+    public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+      return index.getBySequenceHash(sequenceHash);
+    }
+
+    public void close() {
+      index.close();
+    }
+  }
+
   private static abstract class IndexBenchmark extends Benchmark {
     private final List<File> files;
 
@@ -154,6 +261,10 @@ public abstract class AbstractIndexesTestCase {
       if (isLastRound()) {
         System.out.println("Size of index on 32bit / 64bit : " + SizeOf.sizeOf(index) / 1024 / 1024 + " / " + SizeOf.sizeOfOn64(index) / 1024 / 1024);
       }
+
+      if (index instanceof Closeable) {
+        ((Closeable) index).close();
+      }
     }
 
     protected abstract CloneIndex createIndex();
@@ -28,6 +28,7 @@ public class IndexesOnDifferentProjectsTest extends AbstractIndexesTestCase {
 
   @BeforeClass
   public static void before() {
+    corpus = "different-projects";
     files = Utils.filesFromDifferentProjects();
   }
 
@@ -34,6 +34,7 @@ public class IndexesOnJdkTest extends AbstractIndexesTestCase {
     BENCHMARK_ROUNDS = 2;
     WARMUP_ROUNDS = 1;
 
+    corpus = "jdk16";
     files = Utils.filesFromJdk16();
     Assume.assumeThat(files.size(), greaterThan(0));
   }
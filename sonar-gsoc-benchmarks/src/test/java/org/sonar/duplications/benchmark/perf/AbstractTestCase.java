@@ -22,6 +22,7 @@ package org.sonar.duplications.benchmark.perf;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import org.junit.After;
@@ -35,6 +36,7 @@ import org.sonar.duplications.algorithm.CloneReporterAlgorithm;
 import org.sonar.duplications.benchmark.Benchmark;
 import org.sonar.duplications.benchmark.BenchmarkResult;
 import org.sonar.duplications.benchmark.BenchmarksDiff;
+import org.sonar.duplications.benchmark.IncrementalNewCpdBenchmark;
 import org.sonar.duplications.benchmark.MemoryUtils;
 import org.sonar.duplications.benchmark.NewCpdBenchmark;
 import org.sonar.duplications.benchmark.OldCpdBenchmark;
@@ -50,6 +52,7 @@ public class AbstractTestCase {
   protected static int BENCHMARK_ROUNDS = 10;
 
   protected static List<File> files;
+  protected static String corpus;
   protected static BenchmarksDiff results = new BenchmarksDiff();
 
   protected BenchmarkResult run(Benchmark benchmark) {
@@ -78,6 +81,11 @@ public class AbstractTestCase {
     results.add(run(new NewCpdBenchmark(files, BLOCK_SIZE)));
   }
 
+  @Test
+  public void newCpdGroupedWithFingerprints() {
+    results.add(run(new NewCpdBenchmark(files, BLOCK_SIZE, true)));
+  }
+
   @Ignore("Irrelevant for the moment")
   @Test
   public void newCpdPaired() {
@@ -91,6 +99,11 @@ public class AbstractTestCase {
     }));
   }
 
+  @Test
+  public void newCpdIncremental() {
+    results.add(run(new IncrementalNewCpdBenchmark(files, BLOCK_SIZE, 0.01)));
+  }
+
   @Test
   public void originalAlgorithm() {
     results.add(run(new OriginalAlgorithmBenchmark(files, BLOCK_SIZE)));
@@ -110,9 +123,39 @@ public class AbstractTestCase {
     results.add(run(new ThreadedNewCpdBenchmark(files, BLOCK_SIZE, 4)));
   }
 
+  @Ignore("Instrumented by TimingProxy, so not comparable with other benchmarks")
+  @Test
+  public void newCpdWithFourThreadsInstrumented() {
+    int availableProcessors = Runtime.getRuntime().availableProcessors();
+    Assume.assumeThat(availableProcessors, greaterThanOrEqualTo(4));
+    ThreadedNewCpdBenchmark benchmark = new ThreadedNewCpdBenchmark(files, BLOCK_SIZE, 4, false, true);
+    run(benchmark);
+    benchmark.printTimings();
+  }
+
+  @Test
+  public void newCpdWithEightThreads() {
+    int availableProcessors = Runtime.getRuntime().availableProcessors();
+    Assume.assumeThat(availableProcessors, greaterThanOrEqualTo(8));
+    results.add(run(new ThreadedNewCpdBenchmark(files, BLOCK_SIZE, 8)));
+  }
+
+  /**
+   * Four threads for tokenization and one for each of other stages of pipeline, see {@link #newCpdWithEightThreads()}.
+   */
+  @Test
+  public void newCpdPipelinedWithEightThreads() {
+    int availableProcessors = Runtime.getRuntime().availableProcessors();
+    Assume.assumeThat(availableProcessors, greaterThanOrEqualTo(8));
+    ThreadedNewCpdBenchmark benchmark = new ThreadedNewCpdBenchmark(files, BLOCK_SIZE, 8, true);
+    results.add(run(benchmark));
+    benchmark.printTimings();
+  }
+
   @AfterClass
-  public static void after() {
+  public static void after() throws IOException {
     results.print();
+    results.record(corpus);
   }
 
 }
@@ -26,6 +26,7 @@ public class DifferentProjectsTest extends AbstractTestCase {
 
   @BeforeClass
   public static void before() {
+    corpus = "different-projects";
     files = Utils.filesFromDifferentProjects();
   }
 
@@ -20,23 +20,41 @@
 package org.sonar.duplications.algorithm;
 
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
+import java.util.Set;
 
 import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.BlockFingerprints;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.block.LongBlocks;
+import org.sonar.duplications.index.BatchLookupAdapter;
+import org.sonar.duplications.index.BatchLookupCloneIndex;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.CloneIndex;
 import org.sonar.duplications.index.ClonePart;
+import org.sonar.duplications.index.LongHashCloneIndex;
+import org.sonar.duplications.utils.LongObjectHashMap;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+/**
+ * Optional {@link BlockFingerprints} allow to discard pairs of blocks, which have equal hashes only due to collision,
+ * number of such pairs available from {@link #getDiscardedCollisions()}.
+ * <p>
+ * Blocks in form of {@link LongBlocks} can be reported only if reporter created directly for {@link LongHashCloneIndex},
+ * i.e. not for index wrapped by proxy or decorator (e.g. {@link org.sonar.duplications.index.CachingCloneIndex}).
+ * </p>
+ * <p>
+ * Note that this implementation is not thread-safe, because it reuses internal structures between invocations.
+ * </p>
+ */
 public abstract class AbstractAdvancedCloneReporter implements CloneReporterAlgorithm {
 
   protected static final Comparator<ClonePair> CLONEPAIR_COMPARATOR = new Comparator<ClonePair>() {
@@ -45,100 +63,246 @@ public abstract class AbstractAdvancedCloneReporter implements CloneReporterAlgo
     }
   };
 
-  protected CloneIndex cloneIndex;
+  protected final CloneIndex cloneIndex;
 
+  private final BatchLookupCloneIndex batchIndex;
   /**
-   * TODO Godin: performs several queries using same hash, which is inefficient in terms of performance
+   * Not null only if reporter created for {@link LongHashCloneIndex}, used only by {@link #reportClones(LongBlocks, CloneConsumer)}.
    */
-  protected List<List<Block>> getIndexedBlockGroups(FileBlockGroup fileBlockGroup) {
-    List<List<Block>> result = Lists.newArrayList();
+  private final LongHashCloneIndex longHashIndex;
+  private final BlockFingerprints fingerprints;
+  private long discardedCollisions;
 
-    for (Block block : fileBlockGroup.getBlockList()) {
-      List<Block> sameHashBlockGroup = Lists.newArrayList();
-      Collection<Block> foundBlocks = cloneIndex.getBySequenceHash(block.getBlockHash());
-      for (Block shBlock : foundBlocks) {
-        if (!shBlock.getResourceId().equals(block.getResourceId()) ||
-            shBlock.getIndexInFile() > block.getIndexInFile()) {
+  /*
+   * Following structures reused between invocations of reportClonePairs in order to reduce allocations.
+   */
+  private final Map<String, Integer> resourceOrdinals = Maps.newHashMap();
+  private LongObjectHashMap<ClonePair> prevActiveChains = new LongObjectHashMap<ClonePair>();
+  private LongObjectHashMap<ClonePair> nextActiveChains = new LongObjectHashMap<ClonePair>();
+  private final LongObjectHashMap<Collection<Block>> blocksByLongHash = new LongObjectHashMap<Collection<Block>>();
 
-          sameHashBlockGroup.add(shBlock);
-        }
+  protected AbstractAdvancedCloneReporter(CloneIndex cloneIndex) {
+    this(cloneIndex, null);
+  }
+
+  /**
+   * @param fingerprints secondary fingerprints of blocks, which are used to discard collisions of hashes, or <tt>null</tt>
+   */
+  protected AbstractAdvancedCloneReporter(CloneIndex cloneIndex, BlockFingerprints fingerprints) {
+    this.cloneIndex = cloneIndex;
+    this.fingerprints = fingerprints;
+    this.batchIndex = BatchLookupAdapter.wrap(cloneIndex);
+    this.longHashIndex = cloneIndex instanceof LongHashCloneIndex ? (LongHashCloneIndex) cloneIndex : null;
+  }
+
+  /**
+   * Index queried only once for all distinct hashes of file, so files with repeated hashes don't perform several queries using same hash.
+   *
+   * @return for each block of file - blocks with same hash, or <tt>null</tt> if there are no such blocks
+   */
+  private List<Collection<Block>> getIndexedBlocks(Collection<Block> fileBlocks) {
+    Set<ByteArray> hashes = Sets.newHashSet();
+    for (Block block : fileBlocks) {
+      hashes.add(block.getBlockHash());
+    }
+    Map<ByteArray, Collection<Block>> blocksByHash = batchIndex.getBySequenceHashes(hashes);
+
+    List<Collection<Block>> result = Lists.newArrayListWithCapacity(fileBlocks.size());
+    for (Block block : fileBlocks) {
+      result.add(blocksByHash.get(block.getBlockHash()));
+    }
+    return result;
+  }
+
+  /**
+   * Same as {@link #getIndexedBlocks(Collection)}, but for hashes in form of <tt>long</tt>s,
+   * so index queried without conversion of hashes into {@link ByteArray}.
+   */
+  private List<Collection<Block>> getIndexedBlocks(LongBlocks fileBlocks) {
+    blocksByLongHash.clear();
+    List<Collection<Block>> result = Lists.newArrayListWithCapacity(fileBlocks.size());
+    for (int i = 0; i < fileBlocks.size(); i++) {
+      long hash = fileBlocks.getHash(i);
+      Collection<Block> foundBlocks = blocksByLongHash.get(hash);
+      if (foundBlocks == null) {
+        foundBlocks = longHashIndex.getBySequenceHash(hash);
+        blocksByLongHash.put(hash, foundBlocks);
       }
-      result.add(sameHashBlockGroup);
+      result.add(foundBlocks);
     }
+    blocksByLongHash.clear();
+    return result;
+  }
 
+  public List<CloneGroup> reportClones(FileBlockGroup fileBlockGroup) {
+    final List<CloneGroup> result = Lists.newArrayList();
+    reportClones(fileBlockGroup, new CloneConsumer() {
+      public void accept(CloneGroup clone) {
+        result.add(clone);
+      }
+    });
     return result;
   }
 
-  protected List<ClonePair> reportClonePairs(FileBlockGroup fileBlockGroup) {
-    SortedSet<Block> resourceBlocks = fileBlockGroup.getBlockList();
-    List<List<Block>> sameHashBlockGroups = getIndexedBlockGroups(fileBlockGroup);
-    //an empty list is needed a the end to report clone at the end of file
-    sameHashBlockGroups.add(new ArrayList<Block>());
-    Map<String, Map<CloneKey, ClonePair>> prevActiveChains = Maps.newLinkedHashMap();
-    List<ClonePair> reportedPairs = Lists.newArrayList();
+  public void reportClones(FileBlockGroup fileBlockGroup, CloneConsumer consumer) {
+    final List<Block> fileBlocks = Lists.newArrayList(fileBlockGroup.getBlockList());
+    int[] indexesInFile = new int[fileBlocks.size()];
+    for (int i = 0; i < indexesInFile.length; i++) {
+      indexesInFile[i] = fileBlocks.get(i).getIndexInFile();
+    }
+    reportClones(fileBlockGroup.getResourceId(), fileBlocks, indexesInFile, getIndexedBlocks(fileBlocks), consumer);
+  }
 
-    Iterator<Block> blockIterator = resourceBlocks.iterator();
-    for (List<Block> blockGroup : sameHashBlockGroups) {
-      Map<String, Map<CloneKey, ClonePair>> nextActiveChains = Maps.newLinkedHashMap();
+  /**
+   * Same as {@link #reportClones(FileBlockGroup, CloneConsumer)}, but for blocks in form of {@link LongBlocks}
+   * (as produced by {@link org.sonar.duplications.block.LongBlockChunker}), which are compared with blocks
+   * from {@link LongHashCloneIndex#getBySequenceHash(long)} without conversion of hashes into {@link ByteArray}.
+   * Blocks of given file are created only when they are part of clone, and at most once.
+   *
+   * @throws IllegalStateException if reporter was not created directly for {@link LongHashCloneIndex}
+   */
+  public void reportClones(final LongBlocks fileBlocks, CloneConsumer consumer) {
+    if (longHashIndex == null) {
+      throw new IllegalStateException("Blocks with hashes in form of long can be reported only by reporter created directly for "
+        + LongHashCloneIndex.class.getSimpleName() + ", but not for " + cloneIndex.getClass().getName()
+        + " (index wrapped by proxy or decorator is not supported)");
+    }
+    int[] indexesInFile = new int[fileBlocks.size()];
+    for (int i = 0; i < indexesInFile.length; i++) {
+      indexesInFile[i] = i;
+    }
+    List<Block> originBlocks = new AbstractList<Block>() {
+      private final Block[] createdBlocks = new Block[fileBlocks.size()];
 
-      Block origBlock = null;
-      if (blockIterator.hasNext()) {
-        origBlock = blockIterator.next();
-      }
-      for (Block block : blockGroup) {
-        String otherResourceId = block.getResourceId();
-        Map<CloneKey, ClonePair> nextActiveMap = nextActiveChains.get(otherResourceId);
-        if (nextActiveMap == null) {
-          nextActiveMap = Maps.newTreeMap();
-          nextActiveChains.put(otherResourceId, nextActiveMap);
-        }
-        Map<CloneKey, ClonePair> prevActiveMap = prevActiveChains.get(otherResourceId);
-        if (prevActiveMap == null) {
-          prevActiveMap = Maps.newTreeMap();
-          prevActiveChains.put(otherResourceId, prevActiveMap);
+      @Override
+      public Block get(int indexInFile) {
+        Block block = createdBlocks[indexInFile];
+        if (block == null) {
+          block = fileBlocks.toBlock(indexInFile);
+          createdBlocks[indexInFile] = block;
         }
+        return block;
+      }
 
-        processBlock(prevActiveMap, nextActiveMap, origBlock, block);
+      @Override
+      public int size() {
+        return fileBlocks.size();
       }
-      for (Map<CloneKey, ClonePair> prevActiveMap : prevActiveChains.values()) {
-        reportedPairs.addAll(prevActiveMap.values());
+    };
+    reportClones(fileBlocks.getResourceId(), originBlocks, indexesInFile, getIndexedBlocks(fileBlocks), consumer);
+  }
+
+  /**
+   * Pairs are passed to {@link #processClonePairs(List, int, CloneConsumer)} by batches - each time, when there are no active chains,
+   * so that memory consumption is bounded by number of pairs between such points instead of number of pairs in whole file.
+   *
+   * @param originBlocks blocks of file, each of them requested only if it has pair
+   * @param indexesInFile indexes in file of <tt>originBlocks</tt>
+   * @param indexedBlocks for each block of file - blocks with same hash, or <tt>null</tt>
+   */
+  private void reportClones(String resourceId, List<Block> originBlocks, int[] indexesInFile, List<Collection<Block>> indexedBlocks,
+      CloneConsumer consumer) {
+    List<ClonePair> reportedPairs = Lists.newArrayList();
+
+    resourceOrdinals.clear();
+    prevActiveChains.clear();
+    nextActiveChains.clear();
+    startFile();
+
+    // one more iteration without blocks is needed to report clone at the end of file
+    for (int i = 0; i <= indexesInFile.length; i++) {
+      if (i < indexesInFile.length && indexedBlocks.get(i) != null) {
+        Block origBlock = null;
+        for (Block block : indexedBlocks.get(i)) {
+          // pairs within same file are reported only once - for first block of pair
+          if (!block.getResourceId().equals(resourceId) || block.getIndexInFile() > indexesInFile[i]) {
+            if (origBlock == null) {
+              origBlock = originBlocks.get(i);
+            }
+            processBlock(origBlock, block);
+          }
+        }
       }
+      // sequences, which were not continued, are finished
+      for (int j = 0; j < prevActiveChains.size(); j++) {
+        ClonePair clonePair = prevActiveChains.valueAt(j);
+        if (clonePair != null) {
+          reportedPairs.add(clonePair);
+        }
+      }
+      LongObjectHashMap<ClonePair> tmp = prevActiveChains;
       prevActiveChains = nextActiveChains;
-    }
+      nextActiveChains = tmp;
+      nextActiveChains.clear();
 
-    return reportedPairs;
+      // all following pairs will start after current block, if there are no active chains
+      if (prevActiveChains.size() == 0 && !reportedPairs.isEmpty()) {
+        processClonePairs(reportedPairs, i < indexesInFile.length ? indexesInFile[i] : Integer.MAX_VALUE, consumer);
+        reportedPairs = Lists.newArrayList();
+      }
+    }
   }
 
   /**
-   * processes curren block - checks if current block continues one of block sequences
-   * or creates new block sequence. sequences (<tt>ClonePair</tt>) are put to
-   * <tt>nextActiveMap</tt>
-   *
-   * @param prevActiveMap, map with active block sequences from previous cycle iteration
-   * @param nextActiveMap, map with active block sequences after current cycle iteration
-   * @param originBlock,   ClonePart of block of original file
-   * @param otherBlock,    ClonePart of one of blocks with same hash as <tt>originBlock</tt>
+   * Invoked before processing of each file.
    */
-  protected void processBlock(Map<CloneKey, ClonePair> prevActiveMap,
-                              Map<CloneKey, ClonePair> nextActiveMap,
-                              Block originBlock, Block otherBlock) {
-    ClonePair clonePair;
-
-    String resourceId = otherBlock.getResourceId();
-    int unitStart = otherBlock.getIndexInFile();
+  protected abstract void startFile();
 
-    CloneKey curKey = new CloneKey(resourceId, unitStart);
-    CloneKey nextKey = new CloneKey(resourceId, unitStart + 1);
+  /**
+   * Receives pairs, which were finished since previous invocation. It is guaranteed that origin parts of all following pairs of same file
+   * start after <tt>lastIndexInFile</tt>, and that pairs with same origin part are passed within one invocation.
+   * <p>
+   * Note that following clone can't contain clone from this batch, because its parts in origin file start after <tt>lastIndexInFile</tt>.
+   * Whereas clone from this batch can contain following clone, if it has part in origin file, which ends after <tt>lastIndexInFile</tt>.
+   * </p>
+   *
+   * @param pairs list, which can be modified by implementation
+   * @param lastIndexInFile index of last processed block of origin file
+   */
+  protected abstract void processClonePairs(List<ClonePair> pairs, int lastIndexInFile, CloneConsumer consumer);
 
-    ClonePair prevPair = prevActiveMap.remove(curKey);
-    if (prevPair == null) {
+  /**
+   * processes current block - checks if current block continues one of block sequences
+   * or creates new block sequence. sequences (<tt>ClonePair</tt>) are put to
+   * <tt>nextActiveChains</tt>
+   *
+   * @param originBlock, block of original file
+   * @param otherBlock,  one of blocks with same hash as <tt>originBlock</tt>
+   */
+  private void processBlock(Block originBlock, Block otherBlock) {
+    long key = getChainKey(otherBlock);
+    ClonePair clonePair = prevActiveChains.remove(key);
+    if (clonePair == null) {
+      // fingerprints verified only on start of sequence to keep continuation cheap
+      if (fingerprints != null && !fingerprints.mightBeEqual(originBlock, otherBlock)) {
+        discardedCollisions++;
+        return;
+      }
       clonePair = new ClonePair(originBlock, otherBlock);
     } else {
-      clonePair = prevPair;
       clonePair.increase(originBlock, otherBlock);
     }
+    // sequence might be continued only by next block from same resource
+    nextActiveChains.put(key + 1, clonePair);
+  }
+
+  /**
+   * @return number of pairs of blocks with equal hashes, which were not reported, because of different fingerprints
+   */
+  public long getDiscardedCollisions() {
+    return discardedCollisions;
+  }
 
-    nextActiveMap.put(nextKey, clonePair);
+  /**
+   * @return ordinal of resource in high 32 bits and index of block in low 32 bits
+   */
+  private long getChainKey(Block block) {
+    Integer ordinal = resourceOrdinals.get(block.getResourceId());
+    if (ordinal == null) {
+      ordinal = resourceOrdinals.size();
+      resourceOrdinals.put(block.getResourceId(), ordinal);
+    }
+    return ((long) ordinal << 32) | (block.getIndexInFile() & 0xFFFFFFFFL);
   }
 
   /**
@@ -22,22 +22,90 @@ package org.sonar.duplications.algorithm;
 import java.util.List;
 
 import org.sonar.duplications.algorithm.filter.IntervalTreeCloneFilter;
+import org.sonar.duplications.block.BlockFingerprints;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.ClonePart;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
 public class AdvancedGroupCloneReporter extends AbstractAdvancedCloneReporter {
 
+  /**
+   * Shared between all instances, because filter is stateless.
+   */
   private static final IntervalTreeCloneFilter INTERVAL_FILTER = new IntervalTreeCloneFilter();
 
+  /**
+   * Clones from previous batches, which might contain clones from following batches.
+   */
+  private List<CloneGroup> retainedClones = Lists.newArrayList();
+
   public AdvancedGroupCloneReporter(CloneIndex cloneIndex) {
-    this.cloneIndex = cloneIndex;
+    super(cloneIndex);
+  }
+
+  /**
+   * @param fingerprints secondary fingerprints of blocks, which are used to discard collisions of hashes
+   */
+  public AdvancedGroupCloneReporter(CloneIndex cloneIndex, BlockFingerprints fingerprints) {
+    super(cloneIndex, fingerprints);
+  }
+
+  protected void startFile() {
+    retainedClones = Lists.newArrayList();
+  }
+
+  protected void processClonePairs(List<ClonePair> pairs, int lastIndexInFile, CloneConsumer consumer) {
+    List<CloneGroup> clones = groupClonePairs(pairs);
+    List<CloneGroup> filtered;
+    if (retainedClones.isEmpty()) {
+      filtered = INTERVAL_FILTER.filter(clones);
+    } else {
+      List<CloneGroup> candidates = Lists.newArrayList(retainedClones);
+      candidates.addAll(clones);
+      filtered = withoutRetained(INTERVAL_FILTER.filter(candidates), retainedClones);
+    }
+    for (CloneGroup clone : filtered) {
+      consumer.accept(clone);
+    }
+
+    List<CloneGroup> retained = Lists.newArrayList();
+    for (CloneGroup clone : Iterables.concat(retainedClones, clones)) {
+      if (endsAfter(clone, lastIndexInFile)) {
+        retained.add(clone);
+      }
+    }
+    retainedClones = retained;
+  }
+
+  /**
+   * @return true, if clone has part in origin file, which ends after given index
+   */
+  private static boolean endsAfter(CloneGroup clone, int lastIndexInFile) {
+    String originResourceId = clone.getOriginPart().getResourceId();
+    for (ClonePart part : clone.getCloneParts()) {
+      if (part.getResourceId().equals(originResourceId) && part.getUnitStart() + clone.getCloneUnitLength() - 1 > lastIndexInFile) {
+        return true;
+      }
+    }
+    return false;
   }
 
-  public List<CloneGroup> reportClones(FileBlockGroup fileBlockGroup) {
-    List<ClonePair> reportedPairs = reportClonePairs(fileBlockGroup);
-    List<CloneGroup> clones = groupClonePairs(reportedPairs);
-    clones = INTERVAL_FILTER.filter(clones);
-    return clones;
+  /**
+   * @param filtered result of filtering of list, which consists of <tt>retained</tt> followed by other elements
+   * @return elements of <tt>filtered</tt>, which are not from <tt>retained</tt>
+   */
+  private static List<CloneGroup> withoutRetained(List<CloneGroup> filtered, List<CloneGroup> retained) {
+    int i = 0;
+    for (CloneGroup element : retained) {
+      // filtering preserves order, so retained elements precede others
+      if (i < filtered.size() && filtered.get(i) == element) {
+        i++;
+      }
+    }
+    return filtered.subList(i, filtered.size());
   }
 
 }
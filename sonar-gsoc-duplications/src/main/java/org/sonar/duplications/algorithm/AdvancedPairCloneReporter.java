@@ -22,21 +22,41 @@ package org.sonar.duplications.algorithm;
 import java.util.List;
 
 import org.sonar.duplications.algorithm.filter.IntervalTreeClonePairFilter;
+import org.sonar.duplications.block.BlockFingerprints;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.CloneIndex;
 
 public class AdvancedPairCloneReporter extends AbstractAdvancedCloneReporter {
 
+  /**
+   * Thread-safe, see {@link IntervalTreeClonePairFilter}.
+   */
   private static final IntervalTreeClonePairFilter INTERVAL_PAIR_FILTER = new IntervalTreeClonePairFilter();
 
   public AdvancedPairCloneReporter(CloneIndex cloneIndex) {
-    this.cloneIndex = cloneIndex;
+    super(cloneIndex);
   }
 
-  public List<CloneGroup> reportClones(FileBlockGroup fileBlockGroup) {
-    List<ClonePair> reportedPairs = reportClonePairs(fileBlockGroup);
-    List<ClonePair> filtered = INTERVAL_PAIR_FILTER.filter(reportedPairs);
-    return groupClonePairs(filtered);
+  /**
+   * @param fingerprints secondary fingerprints of blocks, which are used to discard collisions of hashes
+   */
+  public AdvancedPairCloneReporter(CloneIndex cloneIndex, BlockFingerprints fingerprints) {
+    super(cloneIndex, fingerprints);
+  }
+
+  protected void startFile() {
+    // nothing to do
+  }
+
+  /**
+   * Pairs from previous batches are not retained: following pair might be contained only in pair, which covers both its parts,
+   * but only one part of pair from previous batch can be located after <tt>lastIndexInFile</tt>.
+   */
+  protected void processClonePairs(List<ClonePair> pairs, int lastIndexInFile, CloneConsumer consumer) {
+    List<ClonePair> filtered = INTERVAL_PAIR_FILTER.filter(pairs);
+    for (CloneGroup clone : groupClonePairs(filtered)) {
+      consumer.accept(clone);
+    }
   }
 
 }
@@ -19,38 +19,14 @@
  */
 package org.sonar.duplications.algorithm;
 
-class CloneKey implements Comparable<CloneKey> {
-  private String resourceId;
-  private int unitNum;
+import org.sonar.duplications.index.CloneGroup;
 
-  CloneKey(String resourceId, int unitNum) {
-    this.resourceId = resourceId;
-    this.unitNum = unitNum;
-  }
-
-  public int compareTo(CloneKey o) {
-    if (this.resourceId.equals(o.resourceId)) {
-      return this.unitNum - o.unitNum;
-    }
-    return this.resourceId.compareTo(o.resourceId);
-  }
+/**
+ * Receives clones from {@link CloneReporterAlgorithm#reportClones(FileBlockGroup, CloneConsumer)} as soon as they are finalized,
+ * so caller doesn't have to keep all clones of file in memory.
+ */
+public interface CloneConsumer {
 
-  @Override
-  public boolean equals(Object object) {
-    if (object instanceof CloneKey) {
-      CloneKey other = (CloneKey) object;
-      if (other.resourceId.equals(resourceId) && other.unitNum == unitNum) {
-        return true;
-      }
-    }
-    return false;
-  }
+  void accept(CloneGroup clone);
 
-  @Override
-  public int hashCode() {
-    int h = 0;
-    h = 31 * h + resourceId.hashCode();
-    h = 31 * h + unitNum;
-    return h;
-  }
 }
@@ -23,8 +23,20 @@ import java.util.List;
 
 import org.sonar.duplications.index.CloneGroup;
 
+/**
+ * Implementations are not required to be thread-safe, so one instance should not be used by several threads simultaneously.
+ * Instead each thread should use its own instance, whereas {@link org.sonar.duplications.index.CloneIndex} can be shared between them,
+ * if it is not modified during reporting.
+ *
+ * @see ParallelCloneDetector
+ */
 public interface CloneReporterAlgorithm {
 
   List<CloneGroup> reportClones(FileBlockGroup fileBlockGroup);
 
+  /**
+   * Same as {@link #reportClones(FileBlockGroup)}, but clones are passed to consumer in same order instead of being collected into list.
+   */
+  void reportClones(FileBlockGroup fileBlockGroup, CloneConsumer consumer);
+
 }
@@ -21,6 +21,16 @@ package org.sonar.duplications.algorithm;
 
 import org.sonar.duplications.index.CloneIndex;
 
+/**
+ * Creates instances of {@link CloneReporterAlgorithm}, so each thread can use its own instance.
+ *
+ * @see ParallelCloneDetector
+ */
 public interface CloneReporterAlgorithmBuilder {
-  public CloneReporterAlgorithm build(CloneIndex index);
+
+  /**
+   * @return new instance on each invocation
+   */
+  CloneReporterAlgorithm build(CloneIndex index);
+
 }
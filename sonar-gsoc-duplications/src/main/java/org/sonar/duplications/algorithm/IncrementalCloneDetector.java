@@ -0,0 +1,144 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.algorithm;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.CloneGroup;
+import org.sonar.duplications.index.MutableCloneIndex;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Keeps index up to date between analyses by processing only modified resources.
+ * <p>
+ * Each resource is identified by fingerprint of its content (e.g. checksum), which is supplied by caller.
+ * Resource considered as modified, if its fingerprint differs from fingerprint in previous analysis.
+ * Blocks of modified and deleted resources are removed from index and only modified resources are chunked again.
+ * Clones are reported only for modified resources and for resources, which share hashes with old or new blocks of modified and deleted resources,
+ * because clones of all other resources can't change.
+ * </p>
+ * <p>
+ * Note that this implementation is not thread-safe.
+ * </p>
+ */
+public class IncrementalCloneDetector {
+
+  /**
+   * Provides blocks of resource, e.g. by chunking its content.
+   */
+  public interface BlockSource {
+    List<Block> getBlocks(String resourceId);
+  }
+
+  private final MutableCloneIndex cloneIndex;
+  private final CloneReporterAlgorithm cloneReporter;
+  private final Map<String, String> fingerprints;
+
+  /**
+   * @param cloneReporter reporter, which uses given index
+   */
+  public IncrementalCloneDetector(MutableCloneIndex cloneIndex, CloneReporterAlgorithm cloneReporter) {
+    this(cloneIndex, cloneReporter, Collections.<String, String> emptyMap());
+  }
+
+  /**
+   * @param fingerprints fingerprints of resources, which are already in index (e.g. from persisted index)
+   */
+  public IncrementalCloneDetector(MutableCloneIndex cloneIndex, CloneReporterAlgorithm cloneReporter, Map<String, String> fingerprints) {
+    this.cloneIndex = cloneIndex;
+    this.cloneReporter = cloneReporter;
+    this.fingerprints = Maps.newHashMap(fingerprints);
+  }
+
+  /**
+   * @return fingerprints of resources in index, which can be persisted together with index
+   */
+  public Map<String, String> getFingerprints() {
+    return Collections.unmodifiableMap(fingerprints);
+  }
+
+  /**
+   * @param currentFingerprints fingerprints of all resources in current analysis, resources which are absent considered as deleted
+   * @param blockSource         used to obtain blocks of new and modified resources
+   * @return clones of resources, for which they might be changed since previous analysis, in order of given fingerprints
+   */
+  public Map<String, List<CloneGroup>> detect(Map<String, String> currentFingerprints, BlockSource blockSource) {
+    List<String> modified = Lists.newArrayList();
+    for (Map.Entry<String, String> entry : currentFingerprints.entrySet()) {
+      if (!entry.getValue().equals(fingerprints.get(entry.getKey()))) {
+        modified.add(entry.getKey());
+      }
+    }
+    List<String> deleted = Lists.newArrayList();
+    for (String resourceId : fingerprints.keySet()) {
+      if (!currentFingerprints.containsKey(resourceId)) {
+        deleted.add(resourceId);
+      }
+    }
+
+    Set<ByteArray> affectedHashes = Sets.newHashSet();
+    Set<String> affectedResources = Sets.newHashSet(modified);
+    for (String resourceId : deleted) {
+      removeResource(resourceId, affectedHashes);
+      fingerprints.remove(resourceId);
+    }
+    for (String resourceId : modified) {
+      removeResource(resourceId, affectedHashes);
+      for (Block block : blockSource.getBlocks(resourceId)) {
+        cloneIndex.insert(block);
+        affectedHashes.add(block.getBlockHash());
+      }
+      fingerprints.put(resourceId, currentFingerprints.get(resourceId));
+    }
+
+    // resources, which share hashes with old or new blocks, might gain or lose clones
+    for (ByteArray hash : affectedHashes) {
+      for (Block block : cloneIndex.getBySequenceHash(hash)) {
+        affectedResources.add(block.getResourceId());
+      }
+    }
+
+    Map<String, List<CloneGroup>> result = Maps.newLinkedHashMap();
+    for (String resourceId : currentFingerprints.keySet()) {
+      if (affectedResources.contains(resourceId)) {
+        Collection<Block> blocks = cloneIndex.getByResourceId(resourceId);
+        result.put(resourceId, cloneReporter.reportClones(FileBlockGroup.create(resourceId, blocks)));
+      }
+    }
+    return result;
+  }
+
+  private void removeResource(String resourceId, Set<ByteArray> affectedHashes) {
+    for (Block block : cloneIndex.getByResourceId(resourceId)) {
+      affectedHashes.add(block.getBlockHash());
+    }
+    cloneIndex.remove(resourceId);
+  }
+
+}
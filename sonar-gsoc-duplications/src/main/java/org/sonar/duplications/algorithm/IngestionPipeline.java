@@ -0,0 +1,397 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.algorithm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.BlockChunker;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.statement.Statement;
+import org.sonar.duplications.statement.StatementChunker;
+import org.sonar.duplications.token.TokenChunker;
+import org.sonar.duplications.token.TokenQueue;
+
+/**
+ * Populates index by files, which are processed by sequence of {@link Stage stages}, each stage is executed by its own threads.
+ * <p>
+ * Stages are connected by bounded queues, so fast stage blocks, when following stage can't keep up with it,
+ * and number of files, which are held in memory in intermediate form, is bounded.
+ * Costs of stages are very uneven (e.g. tokenization is much more expensive than insertion into index),
+ * so number of threads should be chosen for each stage separately, e.g. by {@link StageMetrics} of previous run.
+ * </p>
+ * <p>
+ * Chunkers are not thread-safe, so each thread uses its own instances created by {@link ChunkersFactory}.
+ * Index is shared between threads of {@link Stage#INDEX} stage, so it must be thread-safe, if this stage has more than one thread
+ * (e.g. {@link org.sonar.duplications.index.ConcurrentCloneIndex}).
+ * Resource id of blocks is an absolute path of file.
+ * </p>
+ */
+public final class IngestionPipeline {
+
+  public static enum Stage {
+    /**
+     * Reads content of file.
+     */
+    READ,
+    /**
+     * Splits content into tokens by {@link TokenChunker}.
+     */
+    TOKENS,
+    /**
+     * Groups tokens into statements by {@link StatementChunker}.
+     */
+    STATEMENTS,
+    /**
+     * Groups statements into blocks by {@link BlockChunker}.
+     */
+    BLOCKS,
+    /**
+     * Inserts blocks into index.
+     */
+    INDEX
+  }
+
+  /**
+   * Creates new instances on each invocation, so each thread can use its own instances.
+   */
+  public interface ChunkersFactory {
+    TokenChunker createTokenChunker();
+
+    StatementChunker createStatementChunker();
+
+    BlockChunker createBlockChunker();
+  }
+
+  private static final int DEFAULT_QUEUE_CAPACITY = 16;
+  private static final Stage[] STAGES = Stage.values();
+
+  private final ChunkersFactory chunkersFactory;
+  private final CloneIndex index;
+  private final String charset;
+  private final Map<Stage, Integer> threads;
+  private final Map<Stage, Integer> queueCapacities;
+  private final ThreadFactory threadFactory;
+
+  private IngestionPipeline(Builder builder) {
+    this.chunkersFactory = builder.chunkersFactory;
+    this.index = builder.index;
+    this.charset = builder.charset;
+    this.threads = new EnumMap<Stage, Integer>(builder.threads);
+    this.queueCapacities = new EnumMap<Stage, Integer>(builder.queueCapacities);
+    this.threadFactory = builder.threadFactory;
+  }
+
+  public static Builder builder(ChunkersFactory chunkersFactory, CloneIndex index) {
+    return new Builder(chunkersFactory, index);
+  }
+
+  public static final class Builder {
+
+    private final ChunkersFactory chunkersFactory;
+    private final CloneIndex index;
+    private String charset = "UTF-8";
+    private final Map<Stage, Integer> threads = new EnumMap<Stage, Integer>(Stage.class);
+    private final Map<Stage, Integer> queueCapacities = new EnumMap<Stage, Integer>(Stage.class);
+    private ThreadFactory threadFactory = new PipelineThreadFactory();
+
+    private Builder(ChunkersFactory chunkersFactory, CloneIndex index) {
+      this.chunkersFactory = chunkersFactory;
+      this.index = index;
+      for (Stage stage : STAGES) {
+        threads.put(stage, 1);
+        queueCapacities.put(stage, DEFAULT_QUEUE_CAPACITY);
+      }
+    }
+
+    public Builder setCharset(String charset) {
+      this.charset = charset;
+      return this;
+    }
+
+    /**
+     * Default is one thread for each stage.
+     */
+    public Builder setThreads(Stage stage, int count) {
+      if (count < 1) {
+        throw new IllegalArgumentException("Number of threads must be positive: " + count);
+      }
+      threads.put(stage, count);
+      return this;
+    }
+
+    /**
+     * Sets capacity of queue, from which given stage takes files. Files for {@link Stage#READ} are not queued, so its capacity ignored.
+     */
+    public Builder setQueueCapacity(Stage stage, int capacity) {
+      if (capacity < 1) {
+        throw new IllegalArgumentException("Capacity of queue must be positive: " + capacity);
+      }
+      queueCapacities.put(stage, capacity);
+      return this;
+    }
+
+    /**
+     * Default factory creates daemon threads. Threads are created on each {@link IngestionPipeline#run(List)} and terminated before its end.
+     */
+    public Builder setThreadFactory(ThreadFactory threadFactory) {
+      this.threadFactory = threadFactory;
+      return this;
+    }
+
+    public IngestionPipeline build() {
+      return new IngestionPipeline(this);
+    }
+
+  }
+
+  /**
+   * Blocks until all files are inserted into index.
+   *
+   * @return metrics of stages
+   * @throws DuplicationsException if processing of some file failed or current thread was interrupted
+   */
+  public Map<Stage, StageMetrics> run(List<File> files) {
+    Map<Stage, StageMetrics> metrics = new EnumMap<Stage, StageMetrics>(Stage.class);
+    Map<Stage, BlockingQueue<Work>> queues = new EnumMap<Stage, BlockingQueue<Work>>(Stage.class);
+    Map<Stage, AtomicInteger> running = new EnumMap<Stage, AtomicInteger>(Stage.class);
+    int totalThreads = 0;
+    for (Stage stage : STAGES) {
+      metrics.put(stage, new StageMetrics(stage.name()));
+      queues.put(stage, new ArrayBlockingQueue<Work>(queueCapacities.get(stage)));
+      running.put(stage, new AtomicInteger(threads.get(stage)));
+      totalThreads += threads.get(stage);
+    }
+    Queue<File> input = new ConcurrentLinkedQueue<File>(files);
+
+    ExecutorService executor = Executors.newFixedThreadPool(totalThreads, threadFactory);
+    CompletionService<Object> completionService = new ExecutorCompletionService<Object>(executor);
+    long start = System.nanoTime();
+    try {
+      for (Stage stage : STAGES) {
+        BlockingQueue<Work> in = queues.get(stage);
+        BlockingQueue<Work> out = stage.ordinal() + 1 < STAGES.length ? queues.get(STAGES[stage.ordinal() + 1]) : null;
+        int nextThreads = out == null ? 0 : threads.get(STAGES[stage.ordinal() + 1]);
+        for (int i = 0; i < threads.get(stage); i++) {
+          completionService.submit(new Worker(stage, input, in, out, nextThreads, running.get(stage), metrics.get(stage)));
+        }
+      }
+      // wait for completion of all workers in order of completion, so failure of any stage is detected immediately,
+      // Future.get also guarantees visibility of modifications of index
+      for (int i = 0; i < totalThreads; i++) {
+        completionService.take().get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DuplicationsException("Interrupted during population of index", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof DuplicationsException) {
+        throw (DuplicationsException) cause;
+      }
+      throw new DuplicationsException("Exception during population of index", cause);
+    } finally {
+      // interrupts workers, which are blocked on queues after failure of another stage
+      executor.shutdownNow();
+    }
+    long elapsed = System.nanoTime() - start;
+    for (StageMetrics stageMetrics : metrics.values()) {
+      stageMetrics.setElapsedTime(elapsed);
+    }
+    return Collections.unmodifiableMap(metrics);
+  }
+
+  /**
+   * File and its content in form of last completed stage, previous forms are released to reduce memory consumption.
+   */
+  private static final class Work {
+    private final File file;
+    private String source;
+    private TokenQueue tokens;
+    private List<Statement> statements;
+    private List<Block> blocks;
+
+    public Work(File file) {
+      this.file = file;
+    }
+  }
+
+  /**
+   * Marks end of input for one worker.
+   */
+  private static final Work END = new Work(null);
+
+  private final class Worker implements Callable<Object> {
+    private final Stage stage;
+    private final Queue<File> input;
+    private final BlockingQueue<Work> in;
+    private final BlockingQueue<Work> out;
+    private final int nextThreads;
+    private final AtomicInteger running;
+    private final StageMetrics metrics;
+
+    private TokenChunker tokenChunker;
+    private StatementChunker statementChunker;
+    private BlockChunker blockChunker;
+
+    public Worker(Stage stage, Queue<File> input, BlockingQueue<Work> in, BlockingQueue<Work> out, int nextThreads,
+        AtomicInteger running, StageMetrics metrics) {
+      this.stage = stage;
+      this.input = input;
+      this.in = in;
+      this.out = out;
+      this.nextThreads = nextThreads;
+      this.running = running;
+      this.metrics = metrics;
+    }
+
+    public Object call() throws InterruptedException {
+      createChunkers();
+      try {
+        Work work;
+        while ((work = next()) != END) {
+          long start = System.nanoTime();
+          try {
+            process(work);
+          } catch (RuntimeException e) {
+            throw new DuplicationsException("Exception during processing of file: " + work.file, e);
+          }
+          metrics.processed(System.nanoTime() - start);
+          if (out != null) {
+            out.put(work);
+          }
+        }
+      } finally {
+        // last worker of stage notifies all workers of next stage, even after failure, so they are not blocked forever
+        if (running.decrementAndGet() == 0 && out != null) {
+          for (int i = 0; i < nextThreads; i++) {
+            out.put(END);
+          }
+        }
+      }
+      return null;
+    }
+
+    private Work next() throws InterruptedException {
+      if (stage == Stage.READ) {
+        File file = input.poll();
+        return file == null ? END : new Work(file);
+      }
+      metrics.sampleQueueDepth(in.size());
+      return in.take();
+    }
+
+    private void createChunkers() {
+      switch (stage) {
+        case TOKENS:
+          tokenChunker = chunkersFactory.createTokenChunker();
+          break;
+        case STATEMENTS:
+          statementChunker = chunkersFactory.createStatementChunker();
+          break;
+        case BLOCKS:
+          blockChunker = chunkersFactory.createBlockChunker();
+          break;
+        default:
+          break;
+      }
+    }
+
+    private void process(Work work) {
+      switch (stage) {
+        case READ:
+          work.source = read(work.file);
+          break;
+        case TOKENS:
+          work.tokens = tokenChunker.chunk(work.source);
+          work.source = null;
+          break;
+        case STATEMENTS:
+          work.statements = statementChunker.chunk(work.tokens);
+          work.tokens = null;
+          break;
+        case BLOCKS:
+          work.blocks = blockChunker.chunk(work.file.getAbsolutePath(), work.statements);
+          work.statements = null;
+          break;
+        case INDEX:
+          for (Block block : work.blocks) {
+            index.insert(block);
+          }
+          work.blocks = null;
+          break;
+        default:
+          throw new IllegalStateException("Unknown stage: " + stage);
+      }
+    }
+  }
+
+  private String read(File file) {
+    try {
+      Reader reader = new InputStreamReader(new FileInputStream(file), charset);
+      try {
+        StringBuilder result = new StringBuilder((int) file.length());
+        char[] buffer = new char[8 * 1024];
+        int n;
+        while ((n = reader.read(buffer)) != -1) {
+          result.append(buffer, 0, n);
+        }
+        return result.toString();
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      throw new DuplicationsException("Unable to read file: " + file, e);
+    }
+  }
+
+  private static final class PipelineThreadFactory implements ThreadFactory {
+    private final AtomicLong counter = new AtomicLong();
+
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "IngestionPipeline-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+}
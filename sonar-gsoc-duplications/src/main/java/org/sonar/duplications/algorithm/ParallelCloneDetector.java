@@ -0,0 +1,168 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.algorithm;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.index.CloneGroup;
+import org.sonar.duplications.index.CloneIndex;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Reports clones for several files concurrently.
+ * <p>
+ * Each task uses its own {@link CloneReporterAlgorithm} created by {@link CloneReporterAlgorithmBuilder},
+ * so reporters are never shared between threads, whereas {@link CloneIndex} is shared and
+ * <strong>must not be modified until {@link #detect(List)} completes</strong>.
+ * </p>
+ * <p>
+ * We don't know amount of work required to process each file, so files are not split between tasks in advance,
+ * instead each task takes next unprocessed file.
+ * </p>
+ */
+public class ParallelCloneDetector {
+
+  private final CloneIndex cloneIndex;
+  private final CloneReporterAlgorithmBuilder reporterBuilder;
+  private final ExecutorService executor;
+  private final int parallelism;
+
+  /**
+   * @param executor    executor to run tasks, it is not shut down by this class
+   * @param parallelism number of tasks to submit, usually equal to number of threads of executor
+   */
+  public ParallelCloneDetector(CloneIndex cloneIndex, CloneReporterAlgorithmBuilder reporterBuilder,
+                               ExecutorService executor, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    this.cloneIndex = cloneIndex;
+    this.reporterBuilder = reporterBuilder;
+    this.executor = executor;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * @return clones by resource id, in same order as given groups
+   * @throws DuplicationsException if reporting for some file failed or current thread was interrupted
+   */
+  public Map<String, List<CloneGroup>> detect(List<FileBlockGroup> fileBlockGroups) {
+    List<List<CloneGroup>> results = Lists.newArrayListWithCapacity(fileBlockGroups.size());
+    for (int i = 0; i < fileBlockGroups.size(); i++) {
+      results.add(null);
+    }
+
+    AtomicInteger next = new AtomicInteger();
+    int tasksCount = Math.min(parallelism, fileBlockGroups.size());
+    List<Future<Object>> futures = Lists.newArrayListWithCapacity(tasksCount);
+    List<CloneReporterAlgorithm> reporters = Lists.newArrayListWithCapacity(tasksCount);
+    try {
+      for (int i = 0; i < tasksCount; i++) {
+        CloneReporterAlgorithm reporter = createReporter(reporters);
+        futures.add(executor.submit(new Task(reporter, fileBlockGroups, results, next)));
+      }
+      // wait for completion of all tasks, Future.get also guarantees visibility of results
+      for (Future<Object> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DuplicationsException("Interrupted during detection of clones", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof DuplicationsException) {
+        throw (DuplicationsException) cause;
+      }
+      if (cause instanceof InterruptedException) {
+        throw new DuplicationsException("Task was interrupted during detection of clones", cause);
+      }
+      throw new DuplicationsException("Exception during detection of clones", cause);
+    } finally {
+      for (Future<Object> future : futures) {
+        future.cancel(true);
+      }
+    }
+
+    Map<String, List<CloneGroup>> clones = Maps.newLinkedHashMap();
+    for (int i = 0; i < fileBlockGroups.size(); i++) {
+      clones.put(fileBlockGroups.get(i).getResourceId(), results.get(i));
+    }
+    return clones;
+  }
+
+  /**
+   * Ensures that builder creates new reporter for each task, because reporters are not thread-safe.
+   */
+  private CloneReporterAlgorithm createReporter(List<CloneReporterAlgorithm> created) {
+    CloneReporterAlgorithm reporter = reporterBuilder.build(cloneIndex);
+    for (CloneReporterAlgorithm other : created) {
+      if (other == reporter) {
+        throw new DuplicationsException("Builder must create new instance of reporter on each invocation");
+      }
+    }
+    created.add(reporter);
+    return reporter;
+  }
+
+  private static class Task implements Callable<Object> {
+    private final CloneReporterAlgorithm reporter;
+    private final List<FileBlockGroup> fileBlockGroups;
+    private final List<List<CloneGroup>> results;
+    private final AtomicInteger next;
+
+    public Task(CloneReporterAlgorithm reporter, List<FileBlockGroup> fileBlockGroups, List<List<CloneGroup>> results, AtomicInteger next) {
+      this.reporter = reporter;
+      this.fileBlockGroups = fileBlockGroups;
+      this.results = results;
+      this.next = next;
+    }
+
+    /**
+     * @throws InterruptedException if thread was interrupted, so that remaining files are not silently left without results
+     */
+    public Object call() throws InterruptedException {
+      int i;
+      while ((i = next.getAndIncrement()) < fileBlockGroups.size()) {
+        // flag is not cleared, so that executor also sees interruption
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedException("Interrupted before processing of resource: " + fileBlockGroups.get(i).getResourceId());
+        }
+        FileBlockGroup fileBlockGroup = fileBlockGroups.get(i);
+        try {
+          // each task writes to its own positions, so no synchronization required
+          results.set(i, reporter.reportClones(fileBlockGroup));
+        } catch (RuntimeException e) {
+          throw new DuplicationsException("Exception during processing of resource: " + fileBlockGroup.getResourceId(), e);
+        }
+      }
+      return null;
+    }
+  }
+
+}
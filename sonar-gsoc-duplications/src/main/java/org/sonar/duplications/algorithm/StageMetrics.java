@@ -0,0 +1,102 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.algorithm;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of one stage of {@link IngestionPipeline}, which are updated concurrently by threads of stage.
+ */
+public final class StageMetrics {
+
+  private final String name;
+  private final AtomicLong processed = new AtomicLong();
+  private final AtomicLong busyTime = new AtomicLong();
+  private final AtomicLong queueDepthSamples = new AtomicLong();
+  private final AtomicLong queueDepthSum = new AtomicLong();
+  private final AtomicLong maxQueueDepth = new AtomicLong();
+  private volatile long elapsedTime;
+
+  StageMetrics(String name) {
+    this.name = name;
+  }
+
+  void processed(long time) {
+    processed.incrementAndGet();
+    busyTime.addAndGet(time);
+  }
+
+  void sampleQueueDepth(int depth) {
+    queueDepthSamples.incrementAndGet();
+    queueDepthSum.addAndGet(depth);
+    long max;
+    while (depth > (max = maxQueueDepth.get()) && !maxQueueDepth.compareAndSet(max, depth)) {
+      // retry
+    }
+  }
+
+  void setElapsedTime(long elapsedTime) {
+    this.elapsedTime = elapsedTime;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return number of processed files
+   */
+  public long getProcessed() {
+    return processed.get();
+  }
+
+  /**
+   * @return total time in nanoseconds spent by all threads of stage on processing of files, i.e. without waiting on queues
+   */
+  public long getBusyTime() {
+    return busyTime.get();
+  }
+
+  /**
+   * @return number of processed files per second of run of pipeline
+   */
+  public double getThroughput() {
+    return elapsedTime == 0 ? 0.0 : getProcessed() * 1e9 / elapsedTime;
+  }
+
+  /**
+   * @return average number of files in input queue, sampled before each take from queue
+   */
+  public double getAverageQueueDepth() {
+    long samples = queueDepthSamples.get();
+    return samples == 0 ? 0.0 : (double) queueDepthSum.get() / samples;
+  }
+
+  public long getMaxQueueDepth() {
+    return maxQueueDepth.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %d files, %.1f files/s, busy %d ms, queue depth avg %.1f max %d",
+        name, getProcessed(), getThroughput(), getBusyTime() / 1000000, getAverageQueueDepth(), getMaxQueueDepth());
+  }
+
+}
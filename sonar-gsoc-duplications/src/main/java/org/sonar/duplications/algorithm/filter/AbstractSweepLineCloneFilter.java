@@ -0,0 +1,150 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.algorithm.filter;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.sonar.duplications.index.ClonePart;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Removes clones, which are contained in other clones, by single sweep over intervals of parts located in origin resource.
+ * <p>
+ * Intervals are sorted by start point in ascending order and by end point in descending order, so when sweep reaches origin part of clone,
+ * all intervals, which start not after it, are already seen. Such intervals are kept in balanced tree sorted by end point,
+ * so candidates, which cover origin part, form its tail, whereas intervals, which end before current start point, are removed from its head.
+ * Only candidates are checked by {@link #containsIn(Object, Object)}.
+ * </p>
+ * <p>
+ * Running time is O(N log N + K), where N is number of intervals and K is number of found candidates,
+ * because each interval is inserted into tree and removed from it at most once.
+ * Unlike interval tree no structure is built for each invocation, so this filter is well suited for small sets of clones.
+ * </p>
+ * <p>
+ * This class is thread-safe, because no state is kept between invocations of <tt>filter</tt>.
+ * </p>
+ *
+ * @param <T> type of clones
+ */
+public abstract class AbstractSweepLineCloneFilter<T> {
+
+  private static final Comparator<Event> EVENT_COMPARATOR = new Comparator<Event>() {
+    public int compare(Event o1, Event o2) {
+      if (o1.start != o2.start) {
+        return o1.start < o2.start ? -1 : 1;
+      }
+      if (o1.end != o2.end) {
+        return o1.end > o2.end ? -1 : 1;
+      }
+      // intervals should be seen before queries with same bounds
+      if (o1.query != o2.query) {
+        return o1.query ? 1 : -1;
+      }
+      return 0;
+    }
+  };
+
+  public List<T> filter(List<T> clones) {
+    List<Event> events = Lists.newArrayList();
+    for (int i = 0; i < clones.size(); i++) {
+      T clone = clones.get(i);
+      ClonePart originPart = getOriginPart(clone);
+      String originResourceId = originPart.getResourceId();
+      int length = getCloneUnitLength(clone);
+      for (ClonePart part : getCloneParts(clone)) {
+        if (part.getResourceId().equals(originResourceId)) {
+          events.add(new Event(part.getUnitStart(), part.getUnitStart() + length - 1, i, false));
+        }
+      }
+      events.add(new Event(originPart.getUnitStart(), originPart.getUnitStart() + length - 1, i, true));
+    }
+    Collections.sort(events, EVENT_COMPARATOR);
+
+    // end points of intervals and numbers of their clones, see activeKey
+    SortedSet<Long> active = new TreeSet<Long>();
+    boolean[] covered = new boolean[clones.size()];
+    for (Event event : events) {
+      // intervals, which end before current start point, can't cover this or following queries
+      active.headSet(activeKey(event.start, 0)).clear();
+      if (event.query) {
+        covered[event.clone] = isCovered(clones, event, active);
+      } else {
+        active.add(activeKey(event.end, event.clone));
+      }
+    }
+
+    List<T> filtered = Lists.newArrayList();
+    for (int i = 0; i < clones.size(); i++) {
+      if (!covered[i]) {
+        filtered.add(clones.get(i));
+      }
+    }
+    return filtered;
+  }
+
+  private boolean isCovered(List<T> clones, Event query, SortedSet<Long> active) {
+    T clone = clones.get(query.clone);
+    for (Long key : active.tailSet(activeKey(query.end, 0))) {
+      T candidate = clones.get((int) key.longValue());
+      if (!candidate.equals(clone) && containsIn(clone, candidate)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return key, which orders intervals by end point and then by number of clone (both are non-negative)
+   */
+  private static Long activeKey(int end, int clone) {
+    return ((long) end << 32) | clone;
+  }
+
+  protected abstract ClonePart getOriginPart(T clone);
+
+  protected abstract List<ClonePart> getCloneParts(T clone);
+
+  protected abstract int getCloneUnitLength(T clone);
+
+  /**
+   * @return true, if second clone contains first one
+   */
+  protected abstract boolean containsIn(T first, T second);
+
+  private static final class Event {
+    final int start;
+    final int end;
+    final int clone;
+    final boolean query;
+
+    Event(int start, int end, int clone, boolean query) {
+      this.start = start;
+      this.end = end;
+      this.clone = clone;
+      this.query = query;
+    }
+  }
+
+}
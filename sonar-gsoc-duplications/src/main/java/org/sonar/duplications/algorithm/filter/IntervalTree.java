@@ -19,14 +19,10 @@
  */
 package org.sonar.duplications.algorithm.filter;
 
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
-
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedMap;
-import java.util.SortedSet;
+
+import com.google.common.collect.Lists;
 
 /**
  * Interval tree data structure implementation with <tt>addInterval</tt> and
@@ -49,6 +45,10 @@ import java.util.SortedSet;
  * <p>Using the interval tree organization for ranges, ranges that cover some interval
  * can be found in O(log N + k) time, where k is the number of ranges in tree that
  * cover the given interval.
+ * <p>Nodes and intervals stored in nodes are kept in arrays of primitives: intervals of each node
+ * occupy continuous ranges in two arrays of indexes, one sorted by start points and another by end points.
+ * Median is found by selection algorithm and queries are performed without recursion into list,
+ * which is reused between queries.
  * <p><strong>Note that this implementation doesn't dynamically modify the tree.
  * On every <tt>addInterval</tt> interval is stored in list and whole tree
  * is build on next <tt>getCoveringIntervals</tt> query. The correct usage of this structure
@@ -61,28 +61,39 @@ import java.util.SortedSet;
  */
 class IntervalTree<T> {
 
-  private IntervalNode<T> head;
-  private List<Interval<T>> intervalList;
-  private boolean inSync;
+  private static final int NONE = -1;
 
-  /**
-   * Constructs a new, empty interval tree.
+  private final List<Interval<T>> intervalList = Lists.newArrayList();
+  private final List<Interval<T>> result = Lists.newArrayList();
+  private boolean inSync = true;
+
+  /*
+   * Start and end points of intervals, indexed in same way as intervalList.
    */
-  public IntervalTree() {
-    SortedMap<Interval<T>, List<Interval<T>>> left = Maps.newTreeMap();
-    SortedMap<Interval<T>, List<Interval<T>>> right = Maps.newTreeMap();
-    this.head = new IntervalNode<T>()
-        .setStartIntervals(left)
-        .setEndIntervals(right);
-    this.intervalList = Lists.newArrayList();
-    this.inSync = true;
-  }
+  private int[] starts;
+  private int[] ends;
+
+  /*
+   * Intervals stored in node are located in [nodeFrom[node]; nodeTo[node]) ranges of arrays byStart and byEnd.
+   */
+  private int root = NONE;
+  private int nodes;
+  private int[] centers;
+  private int[] lefts;
+  private int[] rights;
+  private int[] nodeFrom;
+  private int[] nodeTo;
+  private int[] byStart;
+  private int[] byEnd;
 
   /**
    * Perform a covering intervals search query on the tree.
    * Method runs in O(log N + k) time, where N is total number of
    * intervals in tree and k is the number of intervals in tree that cover
    * the given interval [start; end].
+   * <p>
+   * Note that returned list is reused, so it is valid only until next query.
+   * </p>
    *
    * @param start start point (inclusive) of interval
    * @param end   end point (inclusive) of interval
@@ -90,7 +101,36 @@ class IntervalTree<T> {
    */
   public List<Interval<T>> getCoveringIntervals(int start, int end) {
     build();
-    return queryRange(head, start, end);
+    result.clear();
+    int node = root;
+    while (node != NONE) {
+      int center = centers[node];
+      if (start < center) {
+        // go through sorted start points and stop, when start point is greater than start
+        for (int i = nodeFrom[node]; i < nodeTo[node] && starts[byStart[i]] <= start; i++) {
+          if (ends[byStart[i]] >= end) {
+            result.add(intervalList.get(byStart[i]));
+          }
+        }
+      } else {
+        // go through sorted (in descending order) end points and stop, when end point is less than end
+        for (int i = nodeFrom[node]; i < nodeTo[node] && ends[byEnd[i]] >= end; i++) {
+          if (starts[byEnd[i]] <= start) {
+            result.add(intervalList.get(byEnd[i]));
+          }
+        }
+      }
+
+      if (end < center) {
+        node = lefts[node];
+      } else if (start > center) {
+        node = rights[node];
+      } else {
+        // [start; end] contains center, so it can be covered only by intervals from current node
+        node = NONE;
+      }
+    }
+    return result;
   }
 
   /**
@@ -109,149 +149,127 @@ class IntervalTree<T> {
    * Will not run if this is currently in sync
    */
   void build() {
-    if (!inSync) {
-      head = createNode(intervalList);
-      inSync = true;
+    if (inSync) {
+      return;
+    }
+    int size = intervalList.size();
+    starts = new int[size];
+    ends = new int[size];
+    int[] indexes = new int[size];
+    for (int i = 0; i < size; i++) {
+      Interval<T> interval = intervalList.get(i);
+      starts[i] = interval.getStart();
+      ends[i] = interval.getEnd();
+      indexes[i] = i;
     }
+    // each node stores at least one interval
+    centers = new int[size];
+    lefts = new int[size];
+    rights = new int[size];
+    nodeFrom = new int[size];
+    nodeTo = new int[size];
+    byStart = new int[size];
+    byEnd = new int[size];
+    nodes = 0;
+    root = size == 0 ? NONE : createNode(indexes, 0, size, new int[2 * size], new long[size]);
+    inSync = true;
   }
 
   /**
-   * Get center/median point from all intervals start and end points
+   * Recursive create new node and its children. Intervals stored in current node are
+   * sorted by its start and end points.
    *
-   * @param intervalList list of intervals to look at
-   * @return the median of the set
+   * @param indexes   indexes of intervals, range [from; to) of which will be reordered
+   * @param endpoints buffer for endpoints of intervals
+   * @param keys      buffer for sorting
+   * @return number of created node
    */
-  private int getMedian(List<Interval<T>> intervalList) {
-    SortedSet<Integer> endpoints = Sets.newTreeSet();
-
-    for (Interval<T> interval : intervalList) {
-      endpoints.add(interval.getStart());
-      endpoints.add(interval.getEnd());
+  private int createNode(int[] indexes, int from, int to, int[] endpoints, long[] keys) {
+    int count = 0;
+    for (int i = from; i < to; i++) {
+      endpoints[count++] = starts[indexes[i]];
+      endpoints[count++] = ends[indexes[i]];
     }
+    // median is an endpoint of some interval, so this interval will be stored in current node
+    int median = select(endpoints, count, count / 2);
 
-    int i = 0;
-    int middle = endpoints.size() / 2;
-    int median = 0;
-    for (int point : endpoints) {
-      if (i == middle) {
-        median = point;
-        break;
+    // three-way partitioning: [from; lt) - to the left of median, [lt; gt) - contain median, [gt; to) - to the right of median
+    int lt = from;
+    int gt = to;
+    int i = from;
+    while (i < gt) {
+      int index = indexes[i];
+      if (ends[index] < median) {
+        swap(indexes, lt++, i++);
+      } else if (starts[index] > median) {
+        swap(indexes, i, --gt);
+      } else {
+        i++;
       }
-      i++;
     }
-    return median;
-  }
-
-  /**
-   * Searches in the tree structure all intervals that cover [start; end] interval.
-   * Search for intervals in current node:
-   * <ul>
-   * <li>If (start < node.getCenter()) then search in sorted start points of
-   * intervals (node.getStartIntervals()) and stop when start become less then next start point.</li>
-   * <li>If (start >= node.getCenter()) then search in sorted end points of
-   * intervals (node.getEndIntervals()) and stop when end become greater then next end point.</li>
-   * </ul>
-   * <p/>
-   * Conditions to search in child nodes:
-   * <ul>
-   * <li>If (end < node.getCenter()) then should also search in node.getLeft() child.</li>
-   * <li>If (start > node.getCenter()) then should also search in node.getRight() child.</li>
-   * <li>If (start < node.getCenter()) and (end > node.getCenter()) then [start; end] can only be
-   * found in current node and not its children.</li>
-   * </ul>
-   *
-   * @param node  tree node to start search query
-   * @param start start point (inclusive) of interval
-   * @param end   end point (inclusive) of interval
-   * @return list of found covering intervals for [start; end]
-   */
-  private List<Interval<T>> queryRange(IntervalNode<T> node, int start, int end) {
-    List<Interval<T>> result = Lists.newArrayList();
 
-    if (start < node.getCenter()) {
-      // go through sorted start points list
-      for (Map.Entry<Interval<T>, List<Interval<T>>> entry : node.getStartIntervals().entrySet()) {
-        if (entry.getKey().contains(start) && entry.getKey().contains(end)) {
-          for (Interval<T> interval : entry.getValue()) {
-            result.add(interval);
-          }
-        } else if (entry.getKey().getStart() > start) {
-          // as points are sorted next entries will also be (entry.getKey().getStart() > start)
-          // and (entry.getKey().contains(end)) will be false for them, so break
-          break;
-        }
-      }
-    } else { // start >= node.getCenter()
-      // go through sorted end points list
-      for (Map.Entry<Interval<T>, List<Interval<T>>> entry : node.getEndIntervals().entrySet()) {
-        if (entry.getKey().contains(start) && entry.getKey().contains(end)) {
-          for (Interval<T> interval : entry.getValue()) {
-            result.add(interval);
-          }
-        } else if (entry.getKey().getEnd() < end) {
-          // as points are sorted next entries will also be (entry.getKey().getEnd() < end)
-          // and (entry.getKey().contains(end)) will be false for them, so break
-          break;
-        }
-      }
+    int node = nodes++;
+    centers[node] = median;
+    nodeFrom[node] = lt;
+    nodeTo[node] = gt;
+    // ranges of byStart and byEnd coincide with ranges of indexes, because ranges of children don't intersect
+    for (i = lt; i < gt; i++) {
+      keys[i - lt] = ((long) starts[indexes[i]] << 32) | indexes[i];
     }
-
-    if (end < node.getCenter() && node.getLeft() != null) {
-      //add results of query for left child
-      result.addAll(queryRange(node.getLeft(), start, end));
-    } else if (start > node.getCenter() && node.getRight() != null) {
-      //add results of query for right child
-      result.addAll(queryRange(node.getRight(), start, end));
+    Arrays.sort(keys, 0, gt - lt);
+    for (i = lt; i < gt; i++) {
+      byStart[i] = (int) keys[i - lt];
     }
-    return result;
+    for (i = lt; i < gt; i++) {
+      // bitwise complement reverses order without overflow
+      keys[i - lt] = ((long) ~ends[indexes[i]] << 32) | indexes[i];
+    }
+    Arrays.sort(keys, 0, gt - lt);
+    for (i = lt; i < gt; i++) {
+      byEnd[i] = (int) keys[i - lt];
+    }
+
+    lefts[node] = lt > from ? createNode(indexes, from, lt, endpoints, keys) : NONE;
+    rights[node] = to > gt ? createNode(indexes, gt, to, endpoints, keys) : NONE;
+    return node;
   }
 
   /**
-   * Recursive create new node and its children. Intervals stored in current node are
-   * sorted by its start and end points.
-   *
-   * @param intervalList list of intervals to store in the tree
-   * @return
+   * Finds k-th smallest element by quickselect algorithm, reordering first <tt>size</tt> elements of array.
    */
-  private IntervalNode<T> createNode(List<Interval<T>> intervalList) {
-    SortedMap<Interval<T>, List<Interval<T>>> startIntervals = Maps.newTreeMap(Interval.START_COMPARATOR);
-    SortedMap<Interval<T>, List<Interval<T>>> endIntervals = Maps.newTreeMap(Interval.END_COMPARATOR);
-
-    int median = getMedian(intervalList);
-
-    List<Interval<T>> leftIntervals = Lists.newArrayList();
-    List<Interval<T>> rightIntervals = Lists.newArrayList();
-
-    for (Interval<T> interval : intervalList) {
-      if (interval.getEnd() < median) {
-        leftIntervals.add(interval);
-      } else if (interval.getStart() > median) {
-        rightIntervals.add(interval);
-      } else {
-        List<Interval<T>> current = startIntervals.get(interval);
-        if (current == null) {
-          current = Lists.newArrayList();
-          startIntervals.put(interval, current);
-          endIntervals.put(interval, current);
+  private static int select(int[] a, int size, int k) {
+    int low = 0;
+    int high = size - 1;
+    while (low < high) {
+      int pivot = a[(low + high) >>> 1];
+      int i = low;
+      int j = high;
+      while (i <= j) {
+        while (a[i] < pivot) {
+          i++;
+        }
+        while (a[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(a, i++, j--);
         }
-        current.add(interval);
+      }
+      if (k <= j) {
+        high = j;
+      } else if (k >= i) {
+        low = i;
+      } else {
+        return a[k];
       }
     }
+    return a[k];
+  }
 
-    IntervalNode<T> left = null, right = null;
-    if (!leftIntervals.isEmpty()) {
-      left = createNode(leftIntervals);
-    }
-    if (!rightIntervals.isEmpty()) {
-      right = createNode(rightIntervals);
-    }
-
-    return new IntervalNode<T>()
-        .setCenter(median)
-        .setStartIntervals(startIntervals)
-        .setEndIntervals(endIntervals)
-        .setLeft(left)
-        .setRight(right);
+  private static void swap(int[] a, int i, int j) {
+    int tmp = a[i];
+    a[i] = a[j];
+    a[j] = tmp;
   }
 
 }
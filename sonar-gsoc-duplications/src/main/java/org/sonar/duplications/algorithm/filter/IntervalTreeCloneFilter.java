@@ -27,6 +27,10 @@ import org.sonar.duplications.index.ClonePart;
 
 import com.google.common.collect.Lists;
 
+/**
+ * This class is thread-safe, because interval trees are built for each invocation of <tt>filter</tt>
+ * and no state is kept between invocations, so single instance can be shared.
+ */
 public class IntervalTreeCloneFilter extends AbstractIntervalTreeCloneFilter {
 
   private static IntervalTree buildTrees(List<CloneGroup> clones) {
@@ -28,6 +28,9 @@ import org.sonar.duplications.index.ClonePart;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+/**
+ * Thread-safe, since tree for each resource is created within invocation of <tt>filter</tt>.
+ */
 public class IntervalTreeClonePairFilter extends AbstractIntervalTreeCloneFilter {
 
   private static Map<String, IntervalTree> buildTrees(List<ClonePair> clones) {
@@ -0,0 +1,49 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.algorithm.filter;
+
+import java.util.List;
+
+import org.sonar.duplications.algorithm.FilterUtils;
+import org.sonar.duplications.index.CloneGroup;
+import org.sonar.duplications.index.ClonePart;
+
+/**
+ * Alternative to {@link IntervalTreeCloneFilter}, which doesn't build interval tree.
+ */
+public class SweepLineCloneFilter extends AbstractSweepLineCloneFilter<CloneGroup> {
+
+  protected ClonePart getOriginPart(CloneGroup clone) {
+    return clone.getOriginPart();
+  }
+
+  protected List<ClonePart> getCloneParts(CloneGroup clone) {
+    return clone.getCloneParts();
+  }
+
+  protected int getCloneUnitLength(CloneGroup clone) {
+    return clone.getCloneUnitLength();
+  }
+
+  protected boolean containsIn(CloneGroup first, CloneGroup second) {
+    return FilterUtils.containsIn(first, second);
+  }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.block;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.sonar.duplications.statement.Statement;
+import org.sonar.duplications.utils.MurmurHash3;
+
+/**
+ * Secondary fingerprints of blocks, which are computed independently of hashes of blocks,
+ * so blocks with equal hashes, but different fingerprints, are definitely different (i.e. collision of hashes).
+ * <p>
+ * Fingerprint of block is 64-bit MurmurHash3 of 64-bit MurmurHash3 hashes of its statements (with seeds different from
+ * {@link Murmur3BlockChunker}), so it can be used to verify any hash of blocks, which are built from consecutive statements
+ * and indexed from zero, e.g. produced by {@link BlockChunker}.
+ * </p>
+ * <p>
+ * Fingerprints of different resources can be added concurrently, and can be read concurrently with addition.
+ * </p>
+ */
+public final class BlockFingerprints {
+
+  private static final long STATEMENT_SEED = 0x5EC0D;
+  private static final long BLOCK_SEED = 0xF1A6;
+
+  private final int blockSize;
+  private final ConcurrentMap<String, long[]> fingerprints = new ConcurrentHashMap<String, long[]>();
+
+  public BlockFingerprints(int blockSize) {
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Computes fingerprints of all blocks of given resource, previous fingerprints of this resource are replaced.
+   */
+  public void add(String resourceId, List<Statement> statements) {
+    int size = statements.size();
+    long[] statementHashes = new long[size];
+    Iterator<Statement> iterator = statements.iterator();
+    for (int i = 0; i < size; i++) {
+      statementHashes[i] = MurmurHash3.hash64(iterator.next().getValue(), STATEMENT_SEED);
+    }
+    long[] result = new long[Math.max(0, size - blockSize + 1)];
+    long[] hash = new long[2];
+    for (int i = 0; i < result.length; i++) {
+      MurmurHash3.hash128(statementHashes, i, blockSize, BLOCK_SEED, hash);
+      result[i] = hash[0];
+    }
+    fingerprints.put(resourceId, result);
+  }
+
+  public void remove(String resourceId) {
+    fingerprints.remove(resourceId);
+  }
+
+  /**
+   * @return false only if fingerprints of both blocks are known and differ
+   */
+  public boolean mightBeEqual(Block first, Block second) {
+    long[] firstFingerprints = fingerprints.get(first.getResourceId());
+    long[] secondFingerprints = fingerprints.get(second.getResourceId());
+    if (firstFingerprints == null || secondFingerprints == null) {
+      return true;
+    }
+    int firstIndex = first.getIndexInFile();
+    int secondIndex = second.getIndexInFile();
+    if (firstIndex < 0 || firstIndex >= firstFingerprints.length || secondIndex < 0 || secondIndex >= secondFingerprints.length) {
+      return true;
+    }
+    return firstFingerprints[firstIndex] == secondFingerprints[secondIndex];
+  }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.block;
+
+import java.util.List;
+
+import org.sonar.duplications.statement.Statement;
+
+/**
+ * Computes same Rabin-Karp hashes as {@link BlockChunker}, but {@link #chunkToLongs(String, List)} stores them as primitive <tt>long</tt>s
+ * instead of creating {@link Block} and {@link ByteArray} for each block.
+ * {@link #chunk(String, List)} is kept for compatibility and creates blocks from result of {@link #chunkToLongs(String, List)}.
+ */
+public class LongBlockChunker extends BlockChunker {
+
+  private static final long PRIME_BASE = 31;
+
+  private final int blockSize;
+  private final long power;
+
+  public LongBlockChunker(int blockSize) {
+    super(blockSize);
+    this.blockSize = blockSize;
+    long power = 1;
+    for (int i = 0; i < blockSize; i++) {
+      power = power * PRIME_BASE;
+    }
+    this.power = power;
+  }
+
+  @Override
+  public List<Block> chunk(String resourceId, List<Statement> statements) {
+    return chunkToLongs(resourceId, statements).toBlocks();
+  }
+
+  public LongBlocks chunkToLongs(String resourceId, List<Statement> statements) {
+    LongBlocks result = new LongBlocks(resourceId, statements.size() - blockSize + 1);
+    long hash = 0;
+    for (int i = 0; i < statements.size(); i++) {
+      // add current statement to hash
+      Statement current = statements.get(i);
+      hash = hash * PRIME_BASE + current.getValue().hashCode();
+      // remove first statement from hash, if needed
+      int j = i - blockSize + 1;
+      if (j > 0) {
+        hash -= power * statements.get(j - 1).getValue().hashCode();
+      }
+      if (j >= 0) {
+        result.add(hash, statements.get(j).getStartLine(), current.getEndLine());
+      }
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.block;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Blocks of one resource stored in primitive arrays, i.e. without {@link Block} and {@link ByteArray} objects per block.
+ * Index of block in file is its position in this list.
+ * <p>
+ * Blocks are created only by {@link #toBlock(int)}, which is intended for interaction with API based on {@link Block}.
+ * </p>
+ * <p>
+ * Note that this implementation is not thread-safe.
+ * </p>
+ */
+public final class LongBlocks {
+
+  private final String resourceId;
+  private long[] hashes;
+  private int[] firstLines;
+  private int[] lastLines;
+  private int size;
+
+  public LongBlocks(String resourceId, int expectedSize) {
+    this.resourceId = resourceId;
+    int capacity = Math.max(expectedSize, 1);
+    hashes = new long[capacity];
+    firstLines = new int[capacity];
+    lastLines = new int[capacity];
+  }
+
+  public void add(long hash, int firstLine, int lastLine) {
+    if (size == hashes.length) {
+      int capacity = size * 2;
+      long[] newHashes = new long[capacity];
+      int[] newFirstLines = new int[capacity];
+      int[] newLastLines = new int[capacity];
+      System.arraycopy(hashes, 0, newHashes, 0, size);
+      System.arraycopy(firstLines, 0, newFirstLines, 0, size);
+      System.arraycopy(lastLines, 0, newLastLines, 0, size);
+      hashes = newHashes;
+      firstLines = newFirstLines;
+      lastLines = newLastLines;
+    }
+    hashes[size] = hash;
+    firstLines[size] = firstLine;
+    lastLines[size] = lastLine;
+    size++;
+  }
+
+  public String getResourceId() {
+    return resourceId;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long getHash(int indexInFile) {
+    return hashes[indexInFile];
+  }
+
+  public int getFirstLine(int indexInFile) {
+    return firstLines[indexInFile];
+  }
+
+  public int getLastLine(int indexInFile) {
+    return lastLines[indexInFile];
+  }
+
+  /**
+   * @return block with hash in form of 8 bytes, same as produced by {@link BlockChunker}
+   */
+  public Block toBlock(int indexInFile) {
+    return new Block(resourceId, new ByteArray(hashes[indexInFile]), indexInFile, firstLines[indexInFile], lastLines[indexInFile]);
+  }
+
+  public List<Block> toBlocks() {
+    if (size == 0) {
+      return Collections.emptyList();
+    }
+    List<Block> result = Lists.newArrayListWithCapacity(size);
+    for (int i = 0; i < size; i++) {
+      result.add(toBlock(i));
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.block;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.sonar.duplications.statement.Statement;
+import org.sonar.duplications.utils.MurmurHash3;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Chunker, which uses MurmurHash3 for hashes of blocks.
+ * <p>
+ * Value of each statement hashed only once into 64 bits, then for each block hashes of its statements
+ * are combined by MurmurHash3 x64 128-bit, which provides much lower probability of collisions than Rabin-Karp hash of 32 bits,
+ * but doesn't require to process all characters of block as {@link java.security.MessageDigest}.
+ * Hash of block consists of 8 or 16 bytes depending on {@link Width}.
+ * </p>
+ * <p>
+ * Note that this implementation is not thread-safe, because it reuses buffers for hashes and lines of statements between invocations.
+ * </p>
+ */
+public class Murmur3BlockChunker extends BlockChunker {
+
+  public static enum Width {
+    BITS_64, BITS_128;
+  }
+
+  private static final long STATEMENT_SEED = 0x1234ABCDL;
+  private static final long BLOCK_SEED = 0;
+
+  private final int blockSize;
+  private final Width width;
+
+  private final long[] blockHash = new long[2];
+  private long[] statementHashes = new long[0];
+  private int[] startLines = new int[0];
+  private int[] endLines = new int[0];
+
+  public Murmur3BlockChunker(int blockSize) {
+    this(blockSize, Width.BITS_128);
+  }
+
+  public Murmur3BlockChunker(int blockSize, Width width) {
+    super(blockSize);
+    this.blockSize = blockSize;
+    this.width = width;
+  }
+
+  /**
+   * @return hash of value of statement, which is used as input for hash of block
+   */
+  public static long hashStatement(Statement statement) {
+    return hashStatement(statement.getValue());
+  }
+
+  /**
+   * @see #hashStatement(Statement)
+   */
+  public static long hashStatement(String value) {
+    return MurmurHash3.hash64(value, STATEMENT_SEED);
+  }
+
+  @Override
+  public List<Block> chunk(String resourceId, List<Statement> statements) {
+    int size = statements.size();
+    if (size < blockSize) {
+      return Collections.emptyList();
+    }
+    if (statementHashes.length < size) {
+      int capacity = Math.max(size, statementHashes.length * 2);
+      statementHashes = new long[capacity];
+      startLines = new int[capacity];
+      endLines = new int[capacity];
+    }
+    int i = 0;
+    for (Statement statement : statements) {
+      statementHashes[i] = hashStatement(statement);
+      startLines[i] = statement.getStartLine();
+      endLines[i] = statement.getEndLine();
+      i++;
+    }
+
+    List<Block> blocks = Lists.newArrayListWithCapacity(size - blockSize + 1);
+    for (int first = 0; first + blockSize <= size; first++) {
+      MurmurHash3.hash128(statementHashes, first, blockSize, BLOCK_SEED, blockHash);
+      blocks.add(new Block(resourceId,
+          toByteArray(blockHash),
+          first,
+          startLines[first],
+          endLines[first + blockSize - 1]));
+    }
+    return blocks;
+  }
+
+  private ByteArray toByteArray(long[] hash) {
+    if (width == Width.BITS_64) {
+      return new ByteArray(hash[0]);
+    }
+    byte[] bytes = new byte[16];
+    for (int i = 0; i < 8; i++) {
+      bytes[i] = (byte) (hash[0] >>> (56 - 8 * i));
+      bytes[8 + i] = (byte) (hash[1] >>> (56 - 8 * i));
+    }
+    return new ByteArray(bytes);
+  }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.block;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.List;
+
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.statement.Statement;
+
+/**
+ * Chunker, which computes hash of each statement only once and updates hash of block in constant time per statement,
+ * so chunking takes O(n) instead of O(n * blockSize) for chunkers, which compute hash of each block from scratch.
+ * <p>
+ * Hash of block is polynomial rolling hash of hashes of its statements. Hashes of statements, which are in current block,
+ * and their first lines are kept in ring buffers of size of block, so each statement accessed only once
+ * and input list doesn't need efficient random access. {@link StatementHasher} defines only hashes of statements,
+ * e.g. {@link #JAVA_HASHER} gives same hashes as {@link BlockChunker}.
+ * </p>
+ * <p>
+ * Whatever hasher is used, hash of block remains linear Rabin-Karp combination of 64 bits, so different sequences of statements
+ * can still collide by this combination. Thus stronger hasher reduces collisions between statements, but doesn't give
+ * collision resistance of hash of whole block, as message digest of block or {@link Murmur3BlockChunker} do.
+ * </p>
+ * <p>
+ * Note that this implementation is not thread-safe, because it reuses ring buffers and hasher between invocations.
+ * </p>
+ */
+public class RollingHashBlockChunker extends LongBlockChunker {
+
+  /**
+   * Computes hash of value of statement.
+   */
+  public interface StatementHasher {
+    long hash(String value);
+  }
+
+  /**
+   * {@link String#hashCode()}, which is fast, but has only 32 bits.
+   */
+  public static final StatementHasher JAVA_HASHER = new StatementHasher() {
+    public long hash(String value) {
+      return value.hashCode();
+    }
+  };
+
+  /**
+   * {@link Murmur3BlockChunker#hashStatement(String)}.
+   */
+  public static final StatementHasher MURMUR_HASHER = new StatementHasher() {
+    public long hash(String value) {
+      return Murmur3BlockChunker.hashStatement(value);
+    }
+  };
+
+  private static final long PRIME_BASE = 31;
+
+  private final int blockSize;
+  private final long power;
+  private final StatementHasher hasher;
+
+  private final long[] statementHashes;
+  private final int[] startLines;
+
+  public RollingHashBlockChunker(int blockSize) {
+    this(blockSize, JAVA_HASHER);
+  }
+
+  public RollingHashBlockChunker(int blockSize, StatementHasher hasher) {
+    super(blockSize);
+    this.blockSize = blockSize;
+    this.hasher = hasher;
+    long power = 1;
+    for (int i = 0; i < blockSize; i++) {
+      power = power * PRIME_BASE;
+    }
+    this.power = power;
+    statementHashes = new long[blockSize];
+    startLines = new int[blockSize];
+  }
+
+  /**
+   * @return hasher, which uses first 8 bytes of given message digest of UTF-8 representation of statement,
+   *         note that hashes of blocks are still combined as described in class documentation
+   */
+  public static StatementHasher digestHasher(String algorithm) {
+    try {
+      final MessageDigest digest = MessageDigest.getInstance(algorithm);
+      return new StatementHasher() {
+        public long hash(String value) {
+          byte[] bytes = digest.digest(getBytes(value));
+          long result = 0;
+          for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (bytes[i] & 0xff);
+          }
+          return result;
+        }
+      };
+    } catch (NoSuchAlgorithmException e) {
+      throw new DuplicationsException("Unable to create a digest generator", e);
+    }
+  }
+
+  @Override
+  public LongBlocks chunkToLongs(String resourceId, List<Statement> statements) {
+    LongBlocks result = new LongBlocks(resourceId, statements.size() - blockSize + 1);
+    if (statements.size() < blockSize) {
+      return result;
+    }
+    long hash = 0;
+    // position in ring buffers, which contains oldest statement of current block
+    int oldest = 0;
+    int count = 0;
+    Iterator<Statement> iterator = statements.iterator();
+    while (iterator.hasNext()) {
+      Statement current = iterator.next();
+      long statementHash = hasher.hash(current.getValue());
+      // add current statement to hash and remove oldest statement, if block is full
+      hash = hash * PRIME_BASE + statementHash;
+      if (count == blockSize) {
+        hash -= power * statementHashes[oldest];
+      } else {
+        count++;
+      }
+      statementHashes[oldest] = statementHash;
+      startLines[oldest] = current.getStartLine();
+      oldest = oldest + 1 == blockSize ? 0 : oldest + 1;
+      if (count == blockSize) {
+        result.add(hash, startLines[oldest], current.getEndLine());
+      }
+    }
+    return result;
+  }
+
+  private static byte[] getBytes(String value) {
+    try {
+      return value.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new DuplicationsException(e.getMessage(), e);
+    }
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Provides {@link BatchLookupCloneIndex} on top of plain {@link CloneIndex} by performing one query per hash.
+ */
+public final class BatchLookupAdapter extends AbstractCloneIndex implements BatchLookupCloneIndex {
+
+  private final CloneIndex delegate;
+
+  private BatchLookupAdapter(CloneIndex delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * @return given index, if it already supports batch lookup, otherwise adapter for it
+   */
+  public static BatchLookupCloneIndex wrap(CloneIndex index) {
+    if (index instanceof BatchLookupCloneIndex) {
+      return (BatchLookupCloneIndex) index;
+    }
+    return new BatchLookupAdapter(index);
+  }
+
+  public Map<ByteArray, Collection<Block>> getBySequenceHashes(Collection<ByteArray> sequenceHashes) {
+    Map<ByteArray, Collection<Block>> result = Maps.newHashMapWithExpectedSize(sequenceHashes.size());
+    for (ByteArray sequenceHash : sequenceHashes) {
+      Collection<Block> blocks = delegate.getBySequenceHash(sequenceHash);
+      if (!blocks.isEmpty()) {
+        result.put(sequenceHash, blocks);
+      }
+    }
+    return result;
+  }
+
+  public Collection<Block> getByResourceId(String resourceId) {
+    return delegate.getByResourceId(resourceId);
+  }
+
+  public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+    return delegate.getBySequenceHash(sequenceHash);
+  }
+
+  public void insert(Block block) {
+    delegate.insert(block);
+  }
+
+}
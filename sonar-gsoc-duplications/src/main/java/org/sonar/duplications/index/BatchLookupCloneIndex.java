@@ -0,0 +1,42 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+/**
+ * Index, which is able to perform lookup of several hashes at once.
+ * For indexes backed by remote storage (e.g. database) this allows to perform one round-trip per file instead of one per block.
+ *
+ * @see BatchLookupAdapter
+ */
+public interface BatchLookupCloneIndex extends CloneIndex {
+
+  /**
+   * @param sequenceHashes hashes to search for, expected to be distinct
+   * @return blocks grouped by hash, hashes without blocks may be absent from result
+   */
+  Map<ByteArray, Collection<Block>> getBySequenceHashes(Collection<ByteArray> sequenceHashes);
+
+}
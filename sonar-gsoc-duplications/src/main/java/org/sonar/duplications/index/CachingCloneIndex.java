@@ -0,0 +1,195 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Read-through cache of results of {@link #getBySequenceHash(ByteArray)} for slow (e.g. remote) index.
+ * <p>
+ * Size of cache is bounded by total number of cached blocks, so few popular hashes with many blocks
+ * can't be cached at the cost of many other hashes. Hashes without blocks are cached too and weighted as one block.
+ * Least recently used hashes are evicted first.
+ * </p>
+ * <p>
+ * {@link #insert(Block)} invalidates cached result for hash of given block, so cache stays consistent, when blocks are inserted through it,
+ * e.g. when it used as an index of previous analyses in combination with index of current analysis.
+ * Changes made into underlying index bypassing this cache are not visible until {@link #invalidateAll()}.
+ * Results of {@link #getByResourceId(String)} are not cached.
+ * </p>
+ * <p>
+ * Note that this implementation is not thread-safe.
+ * </p>
+ */
+public class CachingCloneIndex extends AbstractCloneIndex implements BatchLookupCloneIndex {
+
+  private final BatchLookupCloneIndex delegate;
+  private final int maxWeight;
+  private final LinkedHashMap<ByteArray, Collection<Block>> cache = new LinkedHashMap<ByteArray, Collection<Block>>(16, 0.75f, true);
+
+  private int weight;
+  private long hitCount;
+  private long missCount;
+  private long evictionCount;
+
+  /**
+   * @param maxWeight maximal number of blocks in cache
+   */
+  public CachingCloneIndex(CloneIndex delegate, int maxWeight) {
+    if (maxWeight <= 0) {
+      throw new IllegalArgumentException("Maximal weight must be positive: " + maxWeight);
+    }
+    this.delegate = BatchLookupAdapter.wrap(delegate);
+    this.maxWeight = maxWeight;
+  }
+
+  public Collection<Block> getByResourceId(String resourceId) {
+    return delegate.getByResourceId(resourceId);
+  }
+
+  public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+    Collection<Block> blocks = cache.get(sequenceHash);
+    if (blocks != null) {
+      hitCount++;
+      return blocks;
+    }
+    missCount++;
+    blocks = put(sequenceHash, delegate.getBySequenceHash(sequenceHash));
+    evict();
+    return blocks;
+  }
+
+  public Map<ByteArray, Collection<Block>> getBySequenceHashes(Collection<ByteArray> sequenceHashes) {
+    Map<ByteArray, Collection<Block>> result = Maps.newHashMapWithExpectedSize(sequenceHashes.size());
+    List<ByteArray> missed = Lists.newArrayList();
+    for (ByteArray sequenceHash : sequenceHashes) {
+      Collection<Block> blocks = cache.get(sequenceHash);
+      if (blocks == null) {
+        missed.add(sequenceHash);
+      } else if (!blocks.isEmpty()) {
+        result.put(sequenceHash, blocks);
+      }
+    }
+    hitCount += sequenceHashes.size() - missed.size();
+    missCount += missed.size();
+    if (!missed.isEmpty()) {
+      Map<ByteArray, Collection<Block>> loaded = delegate.getBySequenceHashes(missed);
+      for (ByteArray sequenceHash : missed) {
+        Collection<Block> blocks = loaded.get(sequenceHash);
+        blocks = put(sequenceHash, blocks == null ? Collections.<Block> emptyList() : blocks);
+        if (!blocks.isEmpty()) {
+          result.put(sequenceHash, blocks);
+        }
+      }
+      // eviction after all puts, so blocks of this batch are not evicted before returning, even if cache is smaller than batch
+      evict();
+    }
+    return result;
+  }
+
+  public void insert(Block block) {
+    invalidate(block.getBlockHash());
+    delegate.insert(block);
+  }
+
+  /**
+   * Removes cached result for given hash.
+   */
+  public void invalidate(ByteArray sequenceHash) {
+    Collection<Block> blocks = cache.remove(sequenceHash);
+    if (blocks != null) {
+      weight -= weigh(blocks);
+    }
+  }
+
+  /**
+   * Removes all cached results, e.g. when underlying index was modified directly.
+   */
+  public void invalidateAll() {
+    cache.clear();
+    weight = 0;
+  }
+
+  private Collection<Block> put(ByteArray sequenceHash, Collection<Block> blocks) {
+    Collection<Block> copy = blocks.isEmpty() ? Collections.<Block> emptyList() : Collections.unmodifiableList(Lists.newArrayList(blocks));
+    Collection<Block> previous = cache.put(sequenceHash, copy);
+    if (previous != null) {
+      weight -= weigh(previous);
+    }
+    weight += weigh(copy);
+    return copy;
+  }
+
+  private void evict() {
+    Iterator<Collection<Block>> iterator = cache.values().iterator();
+    while (weight > maxWeight && iterator.hasNext()) {
+      weight -= weigh(iterator.next());
+      iterator.remove();
+      evictionCount++;
+    }
+  }
+
+  private static int weigh(Collection<Block> blocks) {
+    return Math.max(1, blocks.size());
+  }
+
+  /**
+   * @return number of cached blocks, taking into account that hash without blocks weighted as one block
+   */
+  public int getWeight() {
+    return weight;
+  }
+
+  public int getCachedHashes() {
+    return cache.size();
+  }
+
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  public long getMissCount() {
+    return missCount;
+  }
+
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * @return ratio of lookups, which were served from cache, or 0 if there was no lookups
+   */
+  public double getHitRate() {
+    long requests = hitCount + missCount;
+    return requests == 0 ? 0.0 : (double) hitCount / requests;
+  }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Index, which allows to perform {@link #insert(Block)} from several threads without external synchronization.
+ * <p>
+ * Maps are split into independently locked segments and blocks are appended to lock-free queues and concurrent sets,
+ * so threads, which insert blocks with different hashes and from different resources, don't contend with each other.
+ * </p>
+ * <p>
+ * Blocks of resource can be removed by {@link #remove(String)}. Blocks with same hash are kept in concurrent set,
+ * so removal costs constant time per block even for popular hashes (e.g. boilerplate code),
+ * but equal blocks (see {@link Block#equals(Object)}) are stored only once for each hash.
+ * Queues and sets consume more memory and slower for iteration than lists, so after population index should be converted
+ * into read-only form by {@link #freeze()}.
+ * </p>
+ */
+public class ConcurrentCloneIndex extends AbstractCloneIndex implements MutableCloneIndex {
+
+  private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+  /**
+   * Inner maps are used as concurrent sets of blocks, values are ignored.
+   */
+  private final ConcurrentMap<ByteArray, ConcurrentMap<Block, Boolean>> byHash;
+  private final ConcurrentMap<String, Queue<Block>> byResourceId;
+
+  public ConcurrentCloneIndex() {
+    this(DEFAULT_CONCURRENCY_LEVEL);
+  }
+
+  /**
+   * @param concurrencyLevel estimated number of concurrently inserting threads
+   */
+  public ConcurrentCloneIndex(int concurrencyLevel) {
+    byHash = new ConcurrentHashMap<ByteArray, ConcurrentMap<Block, Boolean>>(16, 0.75f, concurrencyLevel);
+    byResourceId = new ConcurrentHashMap<String, Queue<Block>>(16, 0.75f, concurrencyLevel);
+  }
+
+  public Collection<Block> getByResourceId(String resourceId) {
+    Queue<Block> blocks = byResourceId.get(resourceId);
+    if (blocks == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableCollection(blocks);
+  }
+
+  public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+    ConcurrentMap<Block, Boolean> blocks = byHash.get(sequenceHash);
+    if (blocks == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableCollection(blocks.keySet());
+  }
+
+  public void insert(Block block) {
+    ConcurrentMap<Block, Boolean> sameHash = byHash.get(block.getBlockHash());
+    if (sameHash == null) {
+      // most hashes have few blocks and rarely updated concurrently, so one segment is enough and keeps memory footprint small
+      ConcurrentMap<Block, Boolean> newSameHash = new ConcurrentHashMap<Block, Boolean>(4, 0.75f, 1);
+      sameHash = byHash.putIfAbsent(block.getBlockHash(), newSameHash);
+      if (sameHash == null) {
+        sameHash = newSameHash;
+      }
+    }
+    sameHash.put(block, Boolean.TRUE);
+
+    Queue<Block> sameResource = byResourceId.get(block.getResourceId());
+    if (sameResource == null) {
+      Queue<Block> newSameResource = new ConcurrentLinkedQueue<Block>();
+      sameResource = byResourceId.putIfAbsent(block.getResourceId(), newSameResource);
+      if (sameResource == null) {
+        sameResource = newSameResource;
+      }
+    }
+    sameResource.add(block);
+  }
+
+  /**
+   * Note that this method should not be invoked concurrently with {@link #insert(Block)} of blocks with same hashes,
+   * because empty queues are removed from index.
+   */
+  public void remove(String resourceId) {
+    Queue<Block> blocks = byResourceId.remove(resourceId);
+    if (blocks == null) {
+      return;
+    }
+    for (Block block : blocks) {
+      ConcurrentMap<Block, Boolean> sameHash = byHash.get(block.getBlockHash());
+      if (sameHash != null) {
+        sameHash.remove(block);
+        if (sameHash.isEmpty()) {
+          byHash.remove(block.getBlockHash(), sameHash);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates read-only copy of this index, which doesn't require synchronization and can be shared between threads.
+   * Should be invoked after completion of all {@link #insert(Block)} calls, otherwise copy might not contain some blocks.
+   */
+  public CloneIndex freeze() {
+    Map<ByteArray, List<Block>> frozenByHash = Maps.newHashMapWithExpectedSize(byHash.size());
+    for (Map.Entry<ByteArray, ConcurrentMap<Block, Boolean>> entry : byHash.entrySet()) {
+      frozenByHash.put(entry.getKey(), copy(entry.getValue().keySet()));
+    }
+    Map<String, List<Block>> frozenByResourceId = Maps.newHashMapWithExpectedSize(byResourceId.size());
+    for (Map.Entry<String, Queue<Block>> entry : byResourceId.entrySet()) {
+      frozenByResourceId.put(entry.getKey(), copy(entry.getValue()));
+    }
+    return new FrozenCloneIndex(frozenByHash, frozenByResourceId);
+  }
+
+  private static List<Block> copy(Collection<Block> blocks) {
+    return Collections.unmodifiableList(Lists.newArrayList(blocks));
+  }
+
+  /**
+   * Note that this class is thread-safe, because it is not modified after construction.
+   */
+  private static final class FrozenCloneIndex extends AbstractCloneIndex {
+
+    private final Map<ByteArray, List<Block>> byHash;
+    private final Map<String, List<Block>> byResourceId;
+
+    public FrozenCloneIndex(Map<ByteArray, List<Block>> byHash, Map<String, List<Block>> byResourceId) {
+      this.byHash = byHash;
+      this.byResourceId = byResourceId;
+    }
+
+    public Collection<Block> getByResourceId(String resourceId) {
+      return get(byResourceId, resourceId);
+    }
+
+    public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+      return get(byHash, sequenceHash);
+    }
+
+    public void insert(Block block) {
+      throw new UnsupportedOperationException("Index is frozen");
+    }
+
+    private static <K> Collection<Block> get(Map<K, List<Block>> map, K key) {
+      List<Block> blocks = map.get(key);
+      return blocks == null ? Collections.<Block> emptyList() : blocks;
+    }
+
+  }
+
+}
@@ -0,0 +1,328 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.utils.ByteArrayUtils;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Read-only index, which is loaded from file written by {@link MappedCloneIndex#writeTo(File)}.
+ * <p>
+ * File is mapped into memory, so opening doesn't depend on number of blocks, except of verification of checksum,
+ * which requires one sequential read of file. Blocks are created only on query.
+ * </p>
+ * <p>
+ * Format of file (all numbers are big-endian):
+ * <pre>
+ * header:
+ *   int  magic number
+ *   int  version of format
+ *   int  length of hashes in bytes (H)
+ *   int  number of resources (R)
+ *   int  number of blocks (B)
+ *   int  CRC32 of all bytes after header
+ * resource table, sorted by resource id:
+ *   int[R + 1]  offsets of resource ids
+ *   byte[]      resource ids in UTF-8
+ *   int[R + 1]  offsets of resources in following array
+ * int[B]  numbers of block records, sorted by resource and index in file
+ * block records, sorted by hash:
+ *   int      number of resource
+ *   int      index in file
+ *   int      first line
+ *   int      last line
+ *   byte[H]  hash
+ * </pre>
+ * </p>
+ * <p>
+ * Note that this implementation is not thread-safe, because it caches resource ids.
+ * </p>
+ */
+public final class FileCloneIndex extends AbstractCloneIndex implements Closeable {
+
+  static final int MAGIC = 0x44555049;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 24;
+  static final String CHARSET = "UTF-8";
+
+  /**
+   * Limit of size of mapped segment.
+   */
+  private static final int SEGMENT_SIZE = 1 << 30;
+
+  private static final int INT_SIZE = 4;
+
+  private final RandomAccessFile randomAccessFile;
+  private final int hashSize;
+  private final int resources;
+  private final int blocks;
+
+  private final MappedRecords nameOffsets;
+  private final MappedRecords names;
+  private final MappedRecords resourceOffsets;
+  private final MappedRecords byResource;
+  private final MappedRecords records;
+
+  private final String[] resourceIds;
+
+  /**
+   * @throws DuplicationsException if file has unsupported version or corrupted
+   */
+  public static FileCloneIndex open(File file) {
+    RandomAccessFile randomAccessFile = null;
+    try {
+      randomAccessFile = new RandomAccessFile(file, "r");
+      FileCloneIndex index = new FileCloneIndex(file, randomAccessFile);
+      randomAccessFile = null;
+      return index;
+    } catch (IOException e) {
+      throw new DuplicationsException("Unable to read index from " + file, e);
+    } finally {
+      closeQuietly(randomAccessFile);
+    }
+  }
+
+  private FileCloneIndex(File file, RandomAccessFile randomAccessFile) throws IOException {
+    this.randomAccessFile = randomAccessFile;
+    if (randomAccessFile.length() < HEADER_SIZE || randomAccessFile.readInt() != MAGIC) {
+      throw new DuplicationsException("Not an index file: " + file);
+    }
+    int version = randomAccessFile.readInt();
+    if (version != VERSION) {
+      throw new DuplicationsException("Unsupported version of index file " + file + ": " + version);
+    }
+    hashSize = randomAccessFile.readInt();
+    resources = randomAccessFile.readInt();
+    blocks = randomAccessFile.readInt();
+    int checksum = randomAccessFile.readInt();
+    if (hashSize < 0 || resources < 0 || blocks < 0) {
+      throw new DuplicationsException("Corrupted index file: " + file);
+    }
+
+    long namesOffset = HEADER_SIZE + (long) INT_SIZE * (resources + 1);
+    randomAccessFile.seek(namesOffset - INT_SIZE);
+    int namesSize = randomAccessFile.readInt();
+    long resourceOffsetsOffset = namesOffset + namesSize;
+    long byResourceOffset = resourceOffsetsOffset + (long) INT_SIZE * (resources + 1);
+    long recordsOffset = byResourceOffset + (long) INT_SIZE * blocks;
+    int recordSize = MappedCloneIndex.HASH + hashSize;
+    if (namesSize < 0 || randomAccessFile.length() != recordsOffset + (long) recordSize * blocks) {
+      throw new DuplicationsException("Corrupted index file: " + file);
+    }
+    if (computeChecksum(file) != checksum) {
+      throw new DuplicationsException("Checksum mismatch for index file: " + file);
+    }
+
+    nameOffsets = map(HEADER_SIZE, INT_SIZE, resources + 1);
+    names = map(namesOffset, 1, namesSize);
+    resourceOffsets = map(resourceOffsetsOffset, INT_SIZE, resources + 1);
+    byResource = map(byResourceOffset, INT_SIZE, blocks);
+    records = map(recordsOffset, recordSize, blocks);
+    resourceIds = new String[resources];
+  }
+
+  private MappedRecords map(long offset, int recordSize, int count) {
+    MappedRecords result = new MappedRecords(randomAccessFile.getChannel(), offset, MapMode.READ_ONLY, recordSize, SEGMENT_SIZE / recordSize);
+    result.ensureCapacity(count);
+    return result;
+  }
+
+  private static int computeChecksum(File file) throws IOException {
+    InputStream fileIn = new BufferedInputStream(new FileInputStream(file));
+    try {
+      // header should be skipped before wrapping, because CheckedInputStream takes into account skipped bytes
+      skipFully(fileIn, HEADER_SIZE);
+      CheckedInputStream in = new CheckedInputStream(fileIn, new CRC32());
+      byte[] buffer = new byte[64 * 1024];
+      while (in.read(buffer) != -1) {
+        // continue
+      }
+      return (int) in.getChecksum().getValue();
+    } finally {
+      fileIn.close();
+    }
+  }
+
+  private static void skipFully(InputStream in, long n) throws IOException {
+    while (n > 0) {
+      long skipped = in.skip(n);
+      if (skipped <= 0) {
+        throw new IOException("Unexpected end of file");
+      }
+      n -= skipped;
+    }
+  }
+
+  public int getHashSize() {
+    return hashSize;
+  }
+
+  public int size() {
+    return blocks;
+  }
+
+  public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+    byte[] hash = ByteArrayUtils.toBytes(sequenceHash);
+    if (hash.length != hashSize) {
+      return Collections.emptyList();
+    }
+    // binary search of first record with given hash
+    int low = 0;
+    int high = blocks;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compareHash(mid, hash) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    List<Block> result = Lists.newArrayList();
+    for (int record = low; record < blocks && compareHash(record, hash) == 0; record++) {
+      result.add(createBlock(record, sequenceHash));
+    }
+    return result;
+  }
+
+  public Collection<Block> getByResourceId(String resourceId) {
+    int low = 0;
+    int high = resources - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = getResourceId(mid).compareTo(resourceId);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        int start = resourceOffsets.getInt(mid, 0);
+        int end = resourceOffsets.getInt(mid + 1, 0);
+        List<Block> result = Lists.newArrayListWithCapacity(end - start);
+        for (int i = start; i < end; i++) {
+          int record = byResource.getInt(i, 0);
+          result.add(createBlock(record, new ByteArray(getHash(record))));
+        }
+        return result;
+      }
+    }
+    return Collections.emptyList();
+  }
+
+  public void insert(Block block) {
+    throw new UnsupportedOperationException("Index is read-only");
+  }
+
+  private String getResourceId(int number) {
+    String resourceId = resourceIds[number];
+    if (resourceId == null) {
+      int start = nameOffsets.getInt(number, 0);
+      byte[] bytes = new byte[nameOffsets.getInt(number + 1, 0) - start];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = names.getByte(start + i, 0);
+      }
+      resourceId = decode(bytes);
+      resourceIds[number] = resourceId;
+    }
+    return resourceId;
+  }
+
+  private Block createBlock(int record, ByteArray hash) {
+    return new Block(
+        getResourceId(records.getInt(record, MappedCloneIndex.RESOURCE)),
+        hash,
+        records.getInt(record, MappedCloneIndex.INDEX_IN_FILE),
+        records.getInt(record, MappedCloneIndex.FIRST_LINE),
+        records.getInt(record, MappedCloneIndex.LAST_LINE));
+  }
+
+  private byte[] getHash(int record) {
+    byte[] hash = new byte[hashSize];
+    for (int i = 0; i < hashSize; i++) {
+      hash[i] = records.getByte(record, MappedCloneIndex.HASH + i);
+    }
+    return hash;
+  }
+
+  private int compareHash(int record, byte[] hash) {
+    for (int i = 0; i < hashSize; i++) {
+      int d = (records.getByte(record, MappedCloneIndex.HASH + i) & 0xff) - (hash[i] & 0xff);
+      if (d != 0) {
+        return d;
+      }
+    }
+    return 0;
+  }
+
+  static byte[] encode(String resourceId) {
+    try {
+      return resourceId.getBytes(CHARSET);
+    } catch (UnsupportedEncodingException e) {
+      throw new DuplicationsException(e.getMessage(), e);
+    }
+  }
+
+  private static String decode(byte[] bytes) {
+    try {
+      return new String(bytes, CHARSET);
+    } catch (UnsupportedEncodingException e) {
+      throw new DuplicationsException(e.getMessage(), e);
+    }
+  }
+
+  public void close() throws IOException {
+    nameOffsets.release();
+    names.release();
+    resourceOffsets.release();
+    byResource.release();
+    records.release();
+    randomAccessFile.close();
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    if (closeable != null) {
+      try {
+        closeable.close();
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+}
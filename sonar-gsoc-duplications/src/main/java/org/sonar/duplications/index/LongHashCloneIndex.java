@@ -0,0 +1,312 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.block.LongBlocks;
+import org.sonar.duplications.utils.ByteArrayUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Index of blocks with hashes of 8 bytes (as produced by {@link org.sonar.duplications.block.BlockChunker}), which stores
+ * blocks in primitive arrays, so doesn't hold {@link Block} and {@link ByteArray} objects per inserted block.
+ * <p>
+ * Blocks with same hash and blocks of same resource are linked into chains in order of insertion,
+ * heads of hash chains are kept in open-addressing table with <tt>long</tt> keys.
+ * Blocks are created on first query and cached, blocks with same hash share one instance of {@link ByteArray},
+ * and unmodifiable result of query by hash is cached until insertion of block with this hash,
+ * so that repeated queries return same instances without allocations.
+ * {@link #insert(LongBlocks)} and {@link #getBySequenceHash(long)} allow to avoid conversions between {@link ByteArray} and <tt>long</tt>,
+ * which are performed by methods of {@link CloneIndex}.
+ * </p>
+ * <p>
+ * Note that this implementation is not thread-safe.
+ * </p>
+ */
+public class LongHashCloneIndex extends AbstractCloneIndex {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /*
+   * Blocks, chains contain number of next block plus one, zero denotes end of chain.
+   */
+  private long[] hashes;
+  private int[] resources;
+  private int[] indexes;
+  private int[] firstLines;
+  private int[] lastLines;
+  private int[] nextSameHash;
+  private int[] nextSameResource;
+  private Block[] createdBlocks;
+  private int size;
+
+  /*
+   * Table of hash chains, heads and tails contain number of block plus one, zero denotes free slot.
+   */
+  private long[] tableKeys;
+  private int[] tableHeads;
+  private int[] tableTails;
+  private Object[] tableResults;
+  private int mask;
+  private int distinctHashes;
+
+  /*
+   * Resource chains, indexed by ordinal of resource.
+   */
+  private final List<String> resourceIds = Lists.newArrayList();
+  private final Map<String, Integer> resourceOrdinals = Maps.newHashMap();
+  private int[] resourceHeads;
+  private int[] resourceTails;
+
+  public LongHashCloneIndex() {
+    hashes = new long[INITIAL_CAPACITY];
+    resources = new int[INITIAL_CAPACITY];
+    indexes = new int[INITIAL_CAPACITY];
+    firstLines = new int[INITIAL_CAPACITY];
+    lastLines = new int[INITIAL_CAPACITY];
+    nextSameHash = new int[INITIAL_CAPACITY];
+    nextSameResource = new int[INITIAL_CAPACITY];
+    createdBlocks = new Block[INITIAL_CAPACITY];
+    resourceHeads = new int[INITIAL_CAPACITY];
+    resourceTails = new int[INITIAL_CAPACITY];
+    tableKeys = new long[INITIAL_CAPACITY * 2];
+    tableHeads = new int[INITIAL_CAPACITY * 2];
+    tableTails = new int[INITIAL_CAPACITY * 2];
+    tableResults = new Object[INITIAL_CAPACITY * 2];
+    mask = tableKeys.length - 1;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @throws DuplicationsException if hash of block doesn't consist of 8 bytes
+   */
+  public void insert(Block block) {
+    insert(block.getResourceId(), ByteArrayUtils.toLong(block), block.getIndexInFile(), block.getFirstLineNumber(), block.getLastLineNumber());
+  }
+
+  public void insert(LongBlocks blocks) {
+    for (int i = 0; i < blocks.size(); i++) {
+      insert(blocks.getResourceId(), blocks.getHash(i), i, blocks.getFirstLine(i), blocks.getLastLine(i));
+    }
+  }
+
+  public void insert(String resourceId, long hash, int indexInFile, int firstLine, int lastLine) {
+    if (size == Integer.MAX_VALUE - 1) {
+      throw new DuplicationsException("Too many blocks");
+    }
+    if (size == hashes.length) {
+      growBlocks();
+    }
+    int resource = getResourceOrdinal(resourceId);
+    hashes[size] = hash;
+    resources[size] = resource;
+    indexes[size] = indexInFile;
+    firstLines[size] = firstLine;
+    lastLines[size] = lastLine;
+    nextSameHash[size] = 0;
+    nextSameResource[size] = 0;
+    size++;
+
+    if (resourceTails[resource] == 0) {
+      resourceHeads[resource] = size;
+    } else {
+      nextSameResource[resourceTails[resource] - 1] = size;
+    }
+    resourceTails[resource] = size;
+
+    int slot = findSlot(hash);
+    if (tableHeads[slot] == 0) {
+      tableKeys[slot] = hash;
+      tableHeads[slot] = size;
+      distinctHashes++;
+    } else {
+      nextSameHash[tableTails[slot] - 1] = size;
+    }
+    tableTails[slot] = size;
+    tableResults[slot] = null;
+    if (distinctHashes * 2 > tableKeys.length) {
+      growTable();
+    }
+  }
+
+  /**
+   * @return blocks with given hash, or empty collection if hash doesn't consist of 8 bytes
+   */
+  public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+    byte[] hash = ByteArrayUtils.toBytes(sequenceHash);
+    if (hash.length != 8) {
+      return Collections.emptyList();
+    }
+    return getBySequenceHash(sequenceHash, toLong(hash));
+  }
+
+  public Collection<Block> getBySequenceHash(long sequenceHash) {
+    return getBySequenceHash(null, sequenceHash);
+  }
+
+  @SuppressWarnings("unchecked")
+  private Collection<Block> getBySequenceHash(ByteArray byteArray, long sequenceHash) {
+    int slot = findSlot(sequenceHash);
+    if (tableHeads[slot] == 0) {
+      return Collections.emptyList();
+    }
+    Collection<Block> result = (Collection<Block>) tableResults[slot];
+    if (result == null) {
+      Block head = createdBlocks[tableHeads[slot] - 1];
+      ByteArray hash = head != null ? head.getBlockHash() : byteArray != null ? byteArray : new ByteArray(sequenceHash);
+      List<Block> blocks = Lists.newArrayList();
+      for (int block = tableHeads[slot]; block != 0; block = nextSameHash[block - 1]) {
+        blocks.add(getBlock(block - 1, hash));
+      }
+      result = Collections.unmodifiableList(blocks);
+      tableResults[slot] = result;
+    }
+    return result;
+  }
+
+  public Collection<Block> getByResourceId(String resourceId) {
+    Integer resource = resourceOrdinals.get(resourceId);
+    if (resource == null) {
+      return Collections.emptyList();
+    }
+    List<Block> result = Lists.newArrayList();
+    for (int block = resourceHeads[resource]; block != 0; block = nextSameResource[block - 1]) {
+      result.add(getBlock(block - 1, null));
+    }
+    return result;
+  }
+
+  /**
+   * @param hash instance of hash to share with other blocks, or <tt>null</tt> to take it from head of hash chain
+   */
+  private Block getBlock(int block, ByteArray hash) {
+    Block result = createdBlocks[block];
+    if (result == null) {
+      if (hash == null) {
+        Block head = createdBlocks[tableHeads[findSlot(hashes[block])] - 1];
+        hash = head != null ? head.getBlockHash() : new ByteArray(hashes[block]);
+      }
+      result = new Block(resourceIds.get(resources[block]), hash, indexes[block], firstLines[block], lastLines[block]);
+      createdBlocks[block] = result;
+    }
+    return result;
+  }
+
+  private int getResourceOrdinal(String resourceId) {
+    Integer ordinal = resourceOrdinals.get(resourceId);
+    if (ordinal == null) {
+      ordinal = resourceIds.size();
+      resourceIds.add(resourceId);
+      resourceOrdinals.put(resourceId, ordinal);
+      if (ordinal == resourceHeads.length) {
+        resourceHeads = grow(resourceHeads, ordinal * 2);
+        resourceTails = grow(resourceTails, ordinal * 2);
+      }
+    }
+    return ordinal;
+  }
+
+  /**
+   * @return slot, which contains given hash, or free slot, where it should be placed
+   */
+  private int findSlot(long hash) {
+    int slot = mix(hash) & mask;
+    while (tableHeads[slot] != 0 && tableKeys[slot] != hash) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void growBlocks() {
+    int capacity = size > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE - 1 : size * 2;
+    long[] newHashes = new long[capacity];
+    System.arraycopy(hashes, 0, newHashes, 0, size);
+    hashes = newHashes;
+    resources = grow(resources, capacity);
+    indexes = grow(indexes, capacity);
+    firstLines = grow(firstLines, capacity);
+    lastLines = grow(lastLines, capacity);
+    nextSameHash = grow(nextSameHash, capacity);
+    nextSameResource = grow(nextSameResource, capacity);
+    Block[] newCreatedBlocks = new Block[capacity];
+    System.arraycopy(createdBlocks, 0, newCreatedBlocks, 0, size);
+    createdBlocks = newCreatedBlocks;
+  }
+
+  private void growTable() {
+    long[] oldKeys = tableKeys;
+    int[] oldHeads = tableHeads;
+    int[] oldTails = tableTails;
+    Object[] oldResults = tableResults;
+    tableKeys = new long[oldKeys.length * 2];
+    tableHeads = new int[oldKeys.length * 2];
+    tableTails = new int[oldKeys.length * 2];
+    tableResults = new Object[oldKeys.length * 2];
+    mask = tableKeys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldHeads[i] != 0) {
+        int slot = findSlot(oldKeys[i]);
+        tableKeys[slot] = oldKeys[i];
+        tableHeads[slot] = oldHeads[i];
+        tableTails[slot] = oldTails[i];
+        tableResults[slot] = oldResults[i];
+      }
+    }
+  }
+
+  private static int[] grow(int[] array, int capacity) {
+    int[] result = new int[capacity];
+    System.arraycopy(array, 0, result, 0, array.length);
+    return result;
+  }
+
+  private static long toLong(byte[] bytes) {
+    long result = 0;
+    for (byte b : bytes) {
+      result = (result << 8) | (b & 0xff);
+    }
+    return result;
+  }
+
+  /**
+   * Finalization step of MurmurHash3, same as in {@link org.sonar.duplications.utils.LongObjectHashMap}.
+   */
+  private static int mix(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+}
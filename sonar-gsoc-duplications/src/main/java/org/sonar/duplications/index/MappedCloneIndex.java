@@ -0,0 +1,480 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.utils.ByteArrayUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Index, which stores blocks outside of Java heap in memory-mapped temporary files,
+ * so it can hold more blocks than available heap, and doesn't increase work for garbage collector.
+ * Only resource ids are kept in heap.
+ * <p>
+ * Each block stored as fixed-width record, which consists of resource ordinal, index in file, first and last lines,
+ * followed by bytes of hash. Thus all hashes must have same length, which is specified during construction
+ * (e.g. 8 bytes for {@link org.sonar.duplications.block.BlockChunker}).
+ * Two additional files contain numbers of records sorted by hash and by resource,
+ * which are used for binary search.
+ * </p>
+ * <p>
+ * <strong>Note that sorted files are not updated on every {@link #insert(Block)}.
+ * Instead they are rebuilt on next query, so correct usage of this index is: firstly insert all blocks and then query.</strong>
+ * </p>
+ * <p>
+ * Blocks are created on each query, so returned collections are not backed by index.
+ * Content of index can be saved by {@link #writeTo(File)} and loaded on next analysis by {@link FileCloneIndex}.
+ * Note that this implementation is not thread-safe.
+ * </p>
+ */
+public class MappedCloneIndex extends AbstractCloneIndex implements Closeable {
+
+  private static final int DEFAULT_RECORDS_PER_SEGMENT = 1 << 20;
+
+  /*
+   * Layout of record, also used by FileCloneIndex.
+   */
+  static final int RESOURCE = 0;
+  static final int INDEX_IN_FILE = 4;
+  static final int FIRST_LINE = 8;
+  static final int LAST_LINE = 12;
+  static final int HASH = 16;
+
+  private static final int RECORD_NUMBER = 0;
+  private static final int RECORD_NUMBER_SIZE = 4;
+
+  private final File directory;
+  private final int hashSize;
+  private final int recordsPerSegment;
+
+  private final TempFile recordsFile;
+  private final TempFile byHashFile;
+  private final TempFile byResourceFile;
+
+  private final MappedRecords records;
+  private final MappedRecords byHash;
+  private final MappedRecords byResource;
+
+  private final List<String> resourceIds = Lists.newArrayList();
+  private final Map<String, Integer> resourceOrdinals = Maps.newHashMap();
+
+  private int size;
+  private boolean inSync = true;
+
+  /**
+   * @param directory directory for temporary files, which will be deleted on {@link #close()}
+   * @param hashSize  length of hashes in bytes
+   */
+  public MappedCloneIndex(File directory, int hashSize) {
+    this(directory, hashSize, DEFAULT_RECORDS_PER_SEGMENT);
+  }
+
+  MappedCloneIndex(File directory, int hashSize, int recordsPerSegment) {
+    this.directory = directory;
+    this.hashSize = hashSize;
+    this.recordsPerSegment = recordsPerSegment;
+    recordsFile = new TempFile(directory, "blocks");
+    byHashFile = new TempFile(directory, "hashes");
+    byResourceFile = new TempFile(directory, "resources");
+    records = recordsFile.map(HASH + hashSize, recordsPerSegment);
+    byHash = byHashFile.map(RECORD_NUMBER_SIZE, recordsPerSegment);
+    byResource = byResourceFile.map(RECORD_NUMBER_SIZE, recordsPerSegment);
+  }
+
+  public void insert(Block block) {
+    byte[] hash = ByteArrayUtils.toBytes(block);
+    if (hash.length != hashSize) {
+      throw new DuplicationsException("Expected hash of " + hashSize + " bytes, but got " + hash.length);
+    }
+    if (size == Integer.MAX_VALUE) {
+      throw new DuplicationsException("Too many blocks");
+    }
+    records.ensureCapacity(size + 1);
+    records.putInt(size, RESOURCE, getResourceOrdinal(block.getResourceId()));
+    records.putInt(size, INDEX_IN_FILE, block.getIndexInFile());
+    records.putInt(size, FIRST_LINE, block.getFirstLineNumber());
+    records.putInt(size, LAST_LINE, block.getLastLineNumber());
+    for (int i = 0; i < hashSize; i++) {
+      records.putByte(size, HASH + i, hash[i]);
+    }
+    size++;
+    inSync = false;
+  }
+
+  private int getResourceOrdinal(String resourceId) {
+    Integer ordinal = resourceOrdinals.get(resourceId);
+    if (ordinal == null) {
+      ordinal = resourceIds.size();
+      resourceIds.add(resourceId);
+      resourceOrdinals.put(resourceId, ordinal);
+    }
+    return ordinal;
+  }
+
+  public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+    byte[] hash = ByteArrayUtils.toBytes(sequenceHash);
+    if (hash.length != hashSize) {
+      return Collections.emptyList();
+    }
+    build();
+
+    // binary search of first record with given hash
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compareHash(byHash.getInt(mid, RECORD_NUMBER), hash) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    List<Block> result = Lists.newArrayList();
+    for (int i = low; i < size; i++) {
+      int record = byHash.getInt(i, RECORD_NUMBER);
+      if (compareHash(record, hash) != 0) {
+        break;
+      }
+      result.add(createBlock(record, sequenceHash));
+    }
+    return result;
+  }
+
+  public Collection<Block> getByResourceId(String resourceId) {
+    Integer ordinal = resourceOrdinals.get(resourceId);
+    if (ordinal == null) {
+      return Collections.emptyList();
+    }
+    build();
+
+    // binary search of first record from given resource
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (records.getInt(byResource.getInt(mid, RECORD_NUMBER), RESOURCE) < ordinal) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    List<Block> result = Lists.newArrayList();
+    for (int i = low; i < size; i++) {
+      int record = byResource.getInt(i, RECORD_NUMBER);
+      if (records.getInt(record, RESOURCE) != ordinal) {
+        break;
+      }
+      result.add(createBlock(record, new ByteArray(getHash(record))));
+    }
+    return result;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Writes index into file, which can be loaded by {@link FileCloneIndex#open(File)}.
+   */
+  public void writeTo(File file) throws IOException {
+    build();
+
+    // number of resource in file is its position in list sorted by id
+    final int resources = resourceIds.size();
+    List<Integer> ordinals = Lists.newArrayListWithCapacity(resources);
+    for (int i = 0; i < resources; i++) {
+      ordinals.add(i);
+    }
+    Collections.sort(ordinals, new Comparator<Integer>() {
+      public int compare(Integer o1, Integer o2) {
+        return resourceIds.get(o1).compareTo(resourceIds.get(o2));
+      }
+    });
+    int[] numbers = new int[resources];
+    for (int i = 0; i < resources; i++) {
+      numbers[ordinals.get(i)] = i;
+    }
+
+    // blocks of each resource are stored consecutively in byResource, but in order of ordinals
+    int[] counts = new int[resources];
+    for (int i = 0; i < size; i++) {
+      counts[records.getInt(i, RESOURCE)]++;
+    }
+    int[] starts = new int[resources];
+    for (int ordinal = 1; ordinal < resources; ordinal++) {
+      starts[ordinal] = starts[ordinal - 1] + counts[ordinal - 1];
+    }
+
+    // records are written in order of hashes, so their numbers change
+    TempFile positionsFile = new TempFile(directory, "positions");
+    try {
+      MappedRecords positions = positionsFile.map(RECORD_NUMBER_SIZE, recordsPerSegment);
+      positions.ensureCapacity(size);
+      for (int i = 0; i < size; i++) {
+        positions.putInt(byHash.getInt(i, RECORD_NUMBER), RECORD_NUMBER, i);
+      }
+      write(file, ordinals, numbers, counts, starts, positions);
+      positions.release();
+    } finally {
+      positionsFile.close();
+    }
+  }
+
+  private void write(File file, List<Integer> ordinals, int[] numbers, int[] counts, int[] starts, MappedRecords positions) throws IOException {
+    CRC32 checksum = new CRC32();
+    OutputStream fileOut = new BufferedOutputStream(new FileOutputStream(file));
+    try {
+      fileOut.write(new byte[FileCloneIndex.HEADER_SIZE]);
+      DataOutputStream out = new DataOutputStream(new CheckedOutputStream(fileOut, checksum));
+
+      List<byte[]> names = Lists.newArrayListWithCapacity(ordinals.size());
+      int offset = 0;
+      out.writeInt(offset);
+      for (Integer ordinal : ordinals) {
+        byte[] name = FileCloneIndex.encode(resourceIds.get(ordinal));
+        names.add(name);
+        offset += name.length;
+        out.writeInt(offset);
+      }
+      for (byte[] name : names) {
+        out.write(name);
+      }
+
+      offset = 0;
+      out.writeInt(offset);
+      for (Integer ordinal : ordinals) {
+        offset += counts[ordinal];
+        out.writeInt(offset);
+      }
+      for (Integer ordinal : ordinals) {
+        for (int i = starts[ordinal]; i < starts[ordinal] + counts[ordinal]; i++) {
+          out.writeInt(positions.getInt(byResource.getInt(i, RECORD_NUMBER), RECORD_NUMBER));
+        }
+      }
+
+      for (int i = 0; i < size; i++) {
+        int record = byHash.getInt(i, RECORD_NUMBER);
+        out.writeInt(numbers[records.getInt(record, RESOURCE)]);
+        out.writeInt(records.getInt(record, INDEX_IN_FILE));
+        out.writeInt(records.getInt(record, FIRST_LINE));
+        out.writeInt(records.getInt(record, LAST_LINE));
+        for (int j = 0; j < hashSize; j++) {
+          out.write(records.getByte(record, HASH + j));
+        }
+      }
+      out.flush();
+    } finally {
+      fileOut.close();
+    }
+
+    RandomAccessFile header = new RandomAccessFile(file, "rw");
+    try {
+      header.writeInt(FileCloneIndex.MAGIC);
+      header.writeInt(FileCloneIndex.VERSION);
+      header.writeInt(hashSize);
+      header.writeInt(ordinals.size());
+      header.writeInt(size);
+      header.writeInt((int) checksum.getValue());
+    } finally {
+      header.close();
+    }
+  }
+
+  private Block createBlock(int record, ByteArray hash) {
+    return new Block(
+        resourceIds.get(records.getInt(record, RESOURCE)),
+        hash,
+        records.getInt(record, INDEX_IN_FILE),
+        records.getInt(record, FIRST_LINE),
+        records.getInt(record, LAST_LINE));
+  }
+
+  private byte[] getHash(int record) {
+    byte[] hash = new byte[hashSize];
+    for (int i = 0; i < hashSize; i++) {
+      hash[i] = records.getByte(record, HASH + i);
+    }
+    return hash;
+  }
+
+  private int compareHash(int record, byte[] hash) {
+    for (int i = 0; i < hashSize; i++) {
+      int d = (records.getByte(record, HASH + i) & 0xff) - (hash[i] & 0xff);
+      if (d != 0) {
+        return d;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Rebuilds sorted files, if some blocks were inserted since last build.
+   */
+  private void build() {
+    if (inSync) {
+      return;
+    }
+    byHash.ensureCapacity(size);
+    byResource.ensureCapacity(size);
+    for (int i = 0; i < size; i++) {
+      byHash.putInt(i, RECORD_NUMBER, i);
+      byResource.putInt(i, RECORD_NUMBER, i);
+    }
+    sort(byHash, size, new RecordComparator() {
+      public int compare(int record1, int record2) {
+        for (int i = 0; i < hashSize; i++) {
+          int d = (records.getByte(record1, HASH + i) & 0xff) - (records.getByte(record2, HASH + i) & 0xff);
+          if (d != 0) {
+            return d;
+          }
+        }
+        return record1 - record2;
+      }
+    });
+    sort(byResource, size, new RecordComparator() {
+      public int compare(int record1, int record2) {
+        int d = records.getInt(record1, RESOURCE) - records.getInt(record2, RESOURCE);
+        if (d != 0) {
+          return d;
+        }
+        d = records.getInt(record1, INDEX_IN_FILE) - records.getInt(record2, INDEX_IN_FILE);
+        if (d != 0) {
+          return d;
+        }
+        return record1 - record2;
+      }
+    });
+    inSync = true;
+  }
+
+  private interface RecordComparator {
+    int compare(int record1, int record2);
+  }
+
+  /**
+   * Heapsort, which doesn't require additional memory, so can be used for sorting of arrays larger than heap.
+   */
+  private static void sort(MappedRecords column, int n, RecordComparator comparator) {
+    for (int i = n / 2 - 1; i >= 0; i--) {
+      siftDown(column, i, n, comparator);
+    }
+    for (int end = n - 1; end > 0; end--) {
+      int tmp = column.getInt(0, RECORD_NUMBER);
+      column.putInt(0, RECORD_NUMBER, column.getInt(end, RECORD_NUMBER));
+      column.putInt(end, RECORD_NUMBER, tmp);
+      siftDown(column, 0, end, comparator);
+    }
+  }
+
+  private static void siftDown(MappedRecords column, int i, int n, RecordComparator comparator) {
+    int value = column.getInt(i, RECORD_NUMBER);
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= n) {
+        break;
+      }
+      int childValue = column.getInt(child, RECORD_NUMBER);
+      if (child + 1 < n) {
+        int rightValue = column.getInt(child + 1, RECORD_NUMBER);
+        if (comparator.compare(rightValue, childValue) > 0) {
+          child++;
+          childValue = rightValue;
+        }
+      }
+      if (comparator.compare(value, childValue) >= 0) {
+        break;
+      }
+      column.putInt(i, RECORD_NUMBER, childValue);
+      i = child;
+    }
+    column.putInt(i, RECORD_NUMBER, value);
+  }
+
+  public void close() throws IOException {
+    records.release();
+    byHash.release();
+    byResource.release();
+    try {
+      recordsFile.close();
+    } finally {
+      try {
+        byHashFile.close();
+      } finally {
+        byResourceFile.close();
+      }
+    }
+  }
+
+  private static final class TempFile implements Closeable {
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+
+    public TempFile(File directory, String prefix) {
+      try {
+        file = File.createTempFile(prefix, ".idx", directory);
+        randomAccessFile = new RandomAccessFile(file, "rw");
+      } catch (IOException e) {
+        throw new DuplicationsException("Unable to create file in " + directory, e);
+      }
+    }
+
+    public MappedRecords map(int recordSize, int recordsPerSegment) {
+      return new MappedRecords(randomAccessFile.getChannel(), 0, MapMode.READ_WRITE, recordSize, recordsPerSegment);
+    }
+
+    /**
+     * Note that file might not be deleted on some platforms, until mapped segments are garbage collected,
+     * so it also marked for deletion on exit.
+     */
+    public void close() throws IOException {
+      try {
+        randomAccessFile.close();
+      } finally {
+        if (!file.delete()) {
+          file.deleteOnExit();
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.List;
+
+import org.sonar.duplications.DuplicationsException;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Array of fixed-width records stored in region of file, which is mapped into memory by segments,
+ * because single {@link MappedByteBuffer} can't be larger than 2Gb.
+ * Record never crosses boundary of segment.
+ * <p>
+ * In {@link MapMode#READ_WRITE} mode file is extended by whole segments.
+ * In {@link MapMode#READ_ONLY} mode file can't be extended, so capacity should be ensured only once with exact number of records.
+ * </p>
+ * <p>
+ * Note that this implementation is not thread-safe.
+ * </p>
+ */
+final class MappedRecords {
+
+  private final FileChannel channel;
+  private final long offset;
+  private final MapMode mode;
+  private final int recordSize;
+  private final int recordsPerSegment;
+  private final List<MappedByteBuffer> segments = Lists.newArrayList();
+
+  /**
+   * @param offset position of first record in file
+   */
+  public MappedRecords(FileChannel channel, long offset, MapMode mode, int recordSize, int recordsPerSegment) {
+    this.channel = channel;
+    this.offset = offset;
+    this.mode = mode;
+    this.recordSize = recordSize;
+    this.recordsPerSegment = recordsPerSegment;
+  }
+
+  /**
+   * Maps new segments, so that records from 0 to given number (exclusive) can be accessed.
+   */
+  public void ensureCapacity(int records) {
+    try {
+      while ((long) segments.size() * recordsPerSegment < records) {
+        long first = (long) segments.size() * recordsPerSegment;
+        long count = mode == MapMode.READ_ONLY ? Math.min(recordsPerSegment, records - first) : recordsPerSegment;
+        segments.add(channel.map(mode, offset + first * recordSize, count * recordSize));
+      }
+    } catch (IOException e) {
+      throw new DuplicationsException("Unable to map file", e);
+    }
+  }
+
+  public int getInt(int record, int field) {
+    return segment(record).getInt(offset(record, field));
+  }
+
+  public void putInt(int record, int field, int value) {
+    segment(record).putInt(offset(record, field), value);
+  }
+
+  public byte getByte(int record, int field) {
+    return segment(record).get(offset(record, field));
+  }
+
+  public void putByte(int record, int field, byte value) {
+    segment(record).put(offset(record, field), value);
+  }
+
+  private MappedByteBuffer segment(int record) {
+    return segments.get(record / recordsPerSegment);
+  }
+
+  private int offset(int record, int field) {
+    return (record % recordsPerSegment) * recordSize + field;
+  }
+
+  /**
+   * Drops references to mapped segments, so they can be garbage collected.
+   * Note that channel is not closed.
+   */
+  public void release() {
+    segments.clear();
+  }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.utils;
+
+import org.sonar.duplications.block.ByteArray;
+
+/**
+ * Compact probabilistic set of hashes, which allows to check that hash is definitely absent without access to index.
+ * <p>
+ * {@link #mightContain(ByteArray)} never returns <tt>false</tt> for added hash,
+ * but might return <tt>true</tt> for absent hash with probability, which was specified at creation.
+ * Positions of bits are derived by double hashing from MurmurHash3 x64 128-bit of all bytes of hash, so hashes,
+ * which differ only in some bytes, are distinguished as well as by full hash, and not only as well as by 32 bits of {@link ByteArray#hashCode()}.
+ * {@link ByteArray} doesn't provide access to its content, so bytes are obtained by {@link ByteArrayUtils#toBytes(ByteArray)}.
+ * </p>
+ * <p>
+ * Note that this implementation is not thread-safe for {@link #add(ByteArray)},
+ * but can be shared between threads after population.
+ * </p>
+ */
+public final class ByteArrayBloomFilter {
+
+  private static final double LN2 = Math.log(2);
+  private static final long SEED = 0xB10033L;
+
+  private final long[] bits;
+  private final long numberOfBits;
+  private final int numberOfHashes;
+
+  private ByteArrayBloomFilter(long numberOfBits, int numberOfHashes) {
+    this.bits = new long[(int) ((numberOfBits + 63) >>> 6)];
+    this.numberOfBits = numberOfBits;
+    this.numberOfHashes = numberOfHashes;
+  }
+
+  /**
+   * @param expectedInsertions        expected number of distinct hashes
+   * @param falsePositiveProbability  desired probability of false positive, when number of hashes doesn't exceed expected
+   */
+  public static ByteArrayBloomFilter create(int expectedInsertions, double falsePositiveProbability) {
+    if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+      throw new IllegalArgumentException("False positive probability must be between 0 and 1: " + falsePositiveProbability);
+    }
+    int n = Math.max(1, expectedInsertions);
+    long numberOfBits = Math.max(64, (long) Math.ceil(-n * Math.log(falsePositiveProbability) / (LN2 * LN2)));
+    int numberOfHashes = Math.max(1, (int) Math.round((double) numberOfBits / n * LN2));
+    return new ByteArrayBloomFilter(numberOfBits, numberOfHashes);
+  }
+
+  public void add(ByteArray hash) {
+    long[] h = hash(hash);
+    for (int i = 0; i < numberOfHashes; i++) {
+      long bit = position(h[0] + i * h[1]);
+      bits[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  public boolean mightContain(ByteArray hash) {
+    long[] h = hash(hash);
+    for (int i = 0; i < numberOfHashes; i++) {
+      long bit = position(h[0] + i * h[1]);
+      if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public long getNumberOfBits() {
+    return numberOfBits;
+  }
+
+  public int getNumberOfHashes() {
+    return numberOfHashes;
+  }
+
+  private long position(long combinedHash) {
+    return (combinedHash & Long.MAX_VALUE) % numberOfBits;
+  }
+
+  /**
+   * @return two independent 64-bit hashes of all bytes of given hash
+   */
+  private static long[] hash(ByteArray hash) {
+    byte[] bytes = ByteArrayUtils.toBytes(hash);
+    long[] result = new long[2];
+    MurmurHash3.hash128(bytes, 0, bytes.length, SEED, result);
+    return result;
+  }
+
+}
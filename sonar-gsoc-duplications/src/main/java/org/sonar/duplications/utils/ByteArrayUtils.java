@@ -0,0 +1,100 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.utils;
+
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+/**
+ * Conversions of hashes into raw bytes.
+ * <p>
+ * {@link ByteArray} doesn't provide access to its content, so conversion is performed through hexadecimal representation,
+ * which is available from {@link Block#getHashHex()} and {@link ByteArray#toString()}.
+ * </p>
+ */
+public final class ByteArrayUtils {
+
+  private static final int LONG_SIZE = 8;
+
+  private ByteArrayUtils() {
+  }
+
+  public static byte[] toBytes(Block block) {
+    return fromHex(block.getHashHex());
+  }
+
+  public static byte[] toBytes(ByteArray hash) {
+    return fromHex(hash.toString());
+  }
+
+  /**
+   * @return same as {@link Block#getHashHex()} for block with given hash
+   */
+  public static String toHex(ByteArray hash) {
+    return hash.toString();
+  }
+
+  /**
+   * @return hash of 8 bytes as big-endian <tt>long</tt>, i.e. reverse of {@link ByteArray#ByteArray(long)}
+   * @throws DuplicationsException if hash doesn't consist of 8 bytes
+   */
+  public static long toLong(Block block) {
+    return toLong(block.getHashHex());
+  }
+
+  /**
+   * @see #toLong(Block)
+   */
+  public static long toLong(ByteArray hash) {
+    return toLong(hash.toString());
+  }
+
+  private static long toLong(String hex) {
+    if (hex.length() != 2 * LONG_SIZE) {
+      throw new DuplicationsException("Expected hash of " + LONG_SIZE + " bytes, but got " + hex);
+    }
+    long result = 0;
+    for (int i = 0; i < hex.length(); i++) {
+      result = (result << 4) | digit(hex.charAt(i));
+    }
+    return result;
+  }
+
+  public static byte[] fromHex(String hex) {
+    if (hex.length() % 2 != 0) {
+      throw new DuplicationsException("Odd length of hexadecimal string: " + hex);
+    }
+    byte[] result = new byte[hex.length() / 2];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = (byte) ((digit(hex.charAt(2 * i)) << 4) | digit(hex.charAt(2 * i + 1)));
+    }
+    return result;
+  }
+
+  private static int digit(char c) {
+    int digit = Character.digit(c, 16);
+    if (digit < 0) {
+      throw new DuplicationsException("Not a hexadecimal digit: " + c);
+    }
+    return digit;
+  }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.utils;
+
+/**
+ * Map from primitive <tt>long</tt> keys to objects, which doesn't allocate objects on lookup and insertion.
+ * <p>
+ * Entries are stored densely in order of insertion and referenced from open-addressing table with linear probing.
+ * This allows to iterate and clear map in time proportional to number of entries and not to capacity,
+ * so same instance can be cheaply reused.
+ * </p>
+ * <p>
+ * <strong>Note that {@link #remove(long)} only drops value, whereas entry stays in map until {@link #clear()},
+ * thus {@link #valueAt(int)} returns <tt>null</tt> for removed entries.</strong>
+ * </p>
+ * <p>
+ * Note that this implementation is not thread-safe.
+ * </p>
+ *
+ * @param <V> the type of values
+ */
+public final class LongObjectHashMap<V> {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * Contains index of entry plus one, zero denotes free slot.
+   */
+  private int[] table;
+  private int mask;
+
+  private long[] keys;
+  private Object[] values;
+  private int[] slots;
+  private int size;
+
+  public LongObjectHashMap() {
+    table = new int[INITIAL_CAPACITY * 2];
+    mask = table.length - 1;
+    keys = new long[INITIAL_CAPACITY];
+    values = new Object[INITIAL_CAPACITY];
+    slots = new int[INITIAL_CAPACITY];
+  }
+
+  /**
+   * @return value for given key or <tt>null</tt>
+   */
+  public V get(long key) {
+    int entry = findEntry(key);
+    return entry < 0 ? null : valueAt(entry);
+  }
+
+  /**
+   * Associates value with key, previous value replaced.
+   */
+  public void put(long key, V value) {
+    int slot = mix(key) & mask;
+    int entry;
+    while ((entry = table[slot]) != 0) {
+      if (keys[entry - 1] == key) {
+        values[entry - 1] = value;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    if (size == keys.length) {
+      grow();
+      put(key, value);
+      return;
+    }
+    keys[size] = key;
+    values[size] = value;
+    slots[size] = slot;
+    size++;
+    table[slot] = size;
+  }
+
+  /**
+   * @return previous value for given key or <tt>null</tt>
+   */
+  public V remove(long key) {
+    int entry = findEntry(key);
+    if (entry < 0) {
+      return null;
+    }
+    V value = valueAt(entry);
+    values[entry] = null;
+    return value;
+  }
+
+  /**
+   * @return number of entries, including removed
+   */
+  public int size() {
+    return size;
+  }
+
+  public long keyAt(int entry) {
+    return keys[entry];
+  }
+
+  /**
+   * @return value of entry in order of insertion, or <tt>null</tt> if entry was removed
+   */
+  @SuppressWarnings("unchecked")
+  public V valueAt(int entry) {
+    return (V) values[entry];
+  }
+
+  /**
+   * Removes all entries, capacity is preserved.
+   */
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      table[slots[i]] = 0;
+      values[i] = null;
+    }
+    size = 0;
+  }
+
+  private int findEntry(long key) {
+    int slot = mix(key) & mask;
+    int entry;
+    while ((entry = table[slot]) != 0) {
+      if (keys[entry - 1] == key) {
+        return entry - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void grow() {
+    int capacity = keys.length * 2;
+    long[] newKeys = new long[capacity];
+    Object[] newValues = new Object[capacity];
+    System.arraycopy(keys, 0, newKeys, 0, size);
+    System.arraycopy(values, 0, newValues, 0, size);
+    keys = newKeys;
+    values = newValues;
+    slots = new int[capacity];
+
+    // load factor is kept at most 0.5
+    table = new int[capacity * 2];
+    mask = table.length - 1;
+    for (int i = 0; i < size; i++) {
+      int slot = mix(keys[i]) & mask;
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = i + 1;
+      slots[i] = slot;
+    }
+  }
+
+  /**
+   * Finalization step of MurmurHash3, which provides good distribution of bits for sequential keys.
+   */
+  private static int mix(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.utils;
+
+/**
+ * MurmurHash3 x64 128-bit variant by Austin Appleby.
+ * <p>
+ * In addition to hashing of bytes, provides hashing of sequences of <tt>long</tt>s and of characters without conversion into bytes,
+ * results are same as for bytes in little-endian order (UTF-16LE for characters).
+ * </p>
+ */
+public final class MurmurHash3 {
+
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  private MurmurHash3() {
+  }
+
+  /**
+   * @param result array of two elements, which receives first and second halves of hash
+   */
+  public static void hash128(byte[] data, int offset, int length, long seed, long[] result) {
+    long h1 = seed;
+    long h2 = seed;
+    int blocks = length / 16;
+    for (int i = 0; i < blocks; i++) {
+      int p = offset + i * 16;
+      long k1 = getLong(data, p, 8);
+      long k2 = getLong(data, p + 8, 8);
+      h1 ^= mixK1(k1);
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+      h2 ^= mixK2(k2);
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+    int tail = offset + blocks * 16;
+    int remaining = length & 15;
+    if (remaining > 8) {
+      h2 ^= mixK2(getLong(data, tail + 8, remaining - 8));
+    }
+    if (remaining > 0) {
+      h1 ^= mixK1(getLong(data, tail, Math.min(remaining, 8)));
+    }
+    finish(h1, h2, length, result);
+  }
+
+  /**
+   * Same as {@link #hash128(byte[], int, int, long, long[])} for <tt>8 * length</tt> bytes, which represent given <tt>long</tt>s in little-endian order.
+   */
+  public static void hash128(long[] data, int offset, int length, long seed, long[] result) {
+    long h1 = seed;
+    long h2 = seed;
+    int i = 0;
+    for (; i + 2 <= length; i += 2) {
+      h1 ^= mixK1(data[offset + i]);
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+      h2 ^= mixK2(data[offset + i + 1]);
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+    if (i < length) {
+      h1 ^= mixK1(data[offset + i]);
+    }
+    finish(h1, h2, length * 8L, result);
+  }
+
+  /**
+   * @return first half of hash of characters in UTF-16LE, i.e. without encoding into bytes
+   */
+  public static long hash64(CharSequence value, long seed) {
+    long h1 = seed;
+    long h2 = seed;
+    int length = value.length();
+    int i = 0;
+    for (; i + 8 <= length; i += 8) {
+      h1 ^= mixK1(getLong(value, i, 4));
+      h1 = Long.rotateLeft(h1, 27);
+      h1 += h2;
+      h1 = h1 * 5 + 0x52dce729;
+      h2 ^= mixK2(getLong(value, i + 4, 4));
+      h2 = Long.rotateLeft(h2, 31);
+      h2 += h1;
+      h2 = h2 * 5 + 0x38495ab5;
+    }
+    int remaining = length - i;
+    if (remaining > 4) {
+      h2 ^= mixK2(getLong(value, i + 4, remaining - 4));
+    }
+    if (remaining > 0) {
+      h1 ^= mixK1(getLong(value, i, Math.min(remaining, 4)));
+    }
+    h1 ^= length * 2L;
+    h2 ^= length * 2L;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmix64(h1);
+    h2 = fmix64(h2);
+    return h1 + h2;
+  }
+
+  /**
+   * Finalization mix, which forces all bits of hash to avalanche.
+   */
+  public static long fmix64(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  private static void finish(long h1, long h2, long length, long[] result) {
+    h1 ^= length;
+    h2 ^= length;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmix64(h1);
+    h2 = fmix64(h2);
+    h1 += h2;
+    h2 += h1;
+    result[0] = h1;
+    result[1] = h2;
+  }
+
+  private static long mixK1(long k1) {
+    k1 *= C1;
+    k1 = Long.rotateLeft(k1, 31);
+    k1 *= C2;
+    return k1;
+  }
+
+  private static long mixK2(long k2) {
+    k2 *= C2;
+    k2 = Long.rotateLeft(k2, 33);
+    k2 *= C1;
+    return k2;
+  }
+
+  /**
+   * @return little-endian value of given number of bytes
+   */
+  private static long getLong(byte[] data, int offset, int bytes) {
+    long result = 0;
+    for (int i = bytes - 1; i >= 0; i--) {
+      result = (result << 8) | (data[offset + i] & 0xff);
+    }
+    return result;
+  }
+
+  /**
+   * @return little-endian value of given number of characters
+   */
+  private static long getLong(CharSequence value, int offset, int chars) {
+    long result = 0;
+    for (int i = chars - 1; i >= 0; i--) {
+      result = (result << 16) | value.charAt(offset + i);
+    }
+    return result;
+  }
+
+}
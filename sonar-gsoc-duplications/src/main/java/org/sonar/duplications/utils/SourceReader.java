@@ -0,0 +1,210 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonar.duplications.DuplicationsException;
+
+/**
+ * Reads and decodes source files through NIO without intermediate streams and strings.
+ * <p>
+ * Files are read in chunks into per-thread reusable byte buffer of fixed size, and each chunk is decoded
+ * by per-thread reusable {@link CharsetDecoder} directly into {@link CharBuffer} from pool,
+ * which should be returned into pool by {@link #release(CharBuffer)} after usage, e.g. after tokenization through {@link #asReader(CharBuffer)}.
+ * Malformed and unmappable input is replaced, same as by {@link java.io.InputStreamReader}.
+ * </p>
+ * <p>
+ * Files are not mapped into memory: content is copied into character buffer by decoding anyway, so mapping would save only
+ * copying of bytes through small buffer, whereas mapped buffer can't be released explicitly and holds address space
+ * and mapping of file (which also locks file on Windows) until garbage collection.
+ * </p>
+ * <p>
+ * This class is thread-safe, but each buffer should be used only by one thread at a time.
+ * </p>
+ */
+public final class SourceReader {
+
+  private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+  private static final int DEFAULT_POOL_SIZE = 16;
+  private static final int MIN_BUFFER_CAPACITY = 8 * 1024;
+  private static final int MIN_CHUNK_SIZE = 16;
+
+  private final Charset charset;
+  private final int chunkSize;
+  private final int poolSize;
+
+  private final Queue<CharBuffer> pool = new ConcurrentLinkedQueue<CharBuffer>();
+  private final AtomicInteger pooled = new AtomicInteger();
+
+  private final ThreadLocal<CharsetDecoder> decoders = new ThreadLocal<CharsetDecoder>() {
+    @Override
+    protected CharsetDecoder initialValue() {
+      return charset.newDecoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+  };
+
+  private final ThreadLocal<ByteBuffer> byteBuffers = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocate(chunkSize);
+    }
+  };
+
+  public SourceReader(String charset) {
+    this(charset, DEFAULT_CHUNK_SIZE, DEFAULT_POOL_SIZE);
+  }
+
+  /**
+   * @param chunkSize size in bytes of per-thread buffer, into which files are read, larger files are read by several chunks
+   * @param poolSize  maximal number of buffers in pool, usually equal to number of concurrently processed files
+   */
+  public SourceReader(String charset, int chunkSize, int poolSize) {
+    if (chunkSize < MIN_CHUNK_SIZE) {
+      // buffer must have room for bytes of incomplete character from previous chunk
+      throw new IllegalArgumentException("Size of chunk must be at least " + MIN_CHUNK_SIZE + ": " + chunkSize);
+    }
+    this.charset = Charset.forName(charset);
+    this.chunkSize = chunkSize;
+    this.poolSize = poolSize;
+  }
+
+  /**
+   * @return buffer from pool, which contains content of file between position and limit
+   * @throws DuplicationsException if file can't be read
+   */
+  public CharBuffer read(File file) {
+    try {
+      FileInputStream in = new FileInputStream(file);
+      try {
+        return decode(in.getChannel());
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      throw new DuplicationsException("Unable to read file: " + file, e);
+    }
+  }
+
+  /**
+   * Returns buffer into pool, so it must not be used after invocation of this method.
+   */
+  public void release(CharBuffer buffer) {
+    if (pooled.incrementAndGet() <= poolSize) {
+      buffer.clear();
+      pool.add(buffer);
+    } else {
+      pooled.decrementAndGet();
+    }
+  }
+
+  /**
+   * @return reader of remaining characters of given buffer, which doesn't copy them
+   */
+  public static Reader asReader(CharBuffer buffer) {
+    return new CharBufferReader(buffer);
+  }
+
+  private CharBuffer decode(FileChannel channel) throws IOException {
+    long size = channel.size();
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("File is too large: " + size + " bytes");
+    }
+    CharsetDecoder decoder = decoders.get().reset();
+    CharBuffer chars = obtain((int) (size * (double) decoder.maxCharsPerByte()) + 1);
+    ByteBuffer bytes = byteBuffers.get();
+    bytes.clear();
+    boolean endOfInput = false;
+    while (!endOfInput) {
+      endOfInput = channel.read(bytes) == -1;
+      bytes.flip();
+      CoderResult result = decoder.decode(bytes, chars, endOfInput);
+      if (!result.isUnderflow()) {
+        result.throwException();
+      }
+      // keeps bytes of incomplete character for next chunk
+      bytes.compact();
+    }
+    CoderResult result = decoder.flush(chars);
+    if (!result.isUnderflow()) {
+      result.throwException();
+    }
+    chars.flip();
+    return chars;
+  }
+
+  private CharBuffer obtain(int capacity) {
+    CharBuffer buffer = pool.poll();
+    if (buffer != null) {
+      pooled.decrementAndGet();
+      if (buffer.capacity() >= capacity) {
+        return buffer;
+      }
+    }
+    return CharBuffer.allocate(Math.max(capacity, MIN_BUFFER_CAPACITY));
+  }
+
+  private static final class CharBufferReader extends Reader {
+    private final CharBuffer buffer;
+
+    public CharBufferReader(CharBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(cbuf, off, n);
+      return n;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() : -1;
+    }
+
+    @Override
+    public void close() {
+      // nothing to do
+    }
+  }
+
+}
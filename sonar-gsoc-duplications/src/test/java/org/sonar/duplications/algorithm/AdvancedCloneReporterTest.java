@@ -22,6 +22,9 @@ package org.sonar.duplications.algorithm;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -198,6 +201,42 @@ public class AdvancedCloneReporterTest extends BaseCloneReporterTest {
     assertThat(items, hasItem(expected));
   }
 
+  @Test
+  public void shouldQueryIndexOncePerDistinctHash() {
+    cloneIndex.insert(new Block("a", new ByteArray(0), 0, 0, 5));
+    cloneIndex.insert(new Block("a", new ByteArray(1), 1, 1, 6));
+    cloneIndex.insert(new Block("a", new ByteArray(1), 2, 2, 7));
+    cloneIndex.insert(new Block("a", new ByteArray(1), 3, 3, 8));
+
+    CloneIndex spiedIndex = spy(cloneIndex);
+    List<Block> blocks = new ArrayList<Block>(cloneIndex.getByResourceId("a"));
+    cloneReporterBuilder.build(spiedIndex).reportClones(FileBlockGroup.create("a", blocks));
+
+    verify(spiedIndex, times(1)).getBySequenceHash(new ByteArray(0));
+    verify(spiedIndex, times(1)).getBySequenceHash(new ByteArray(1));
+  }
+
+  @Test
+  public void shouldPassSameClonesToConsumer() {
+    int[] hashes = { 0, 1, 2, 3, 9, 1, 2, 8, 2, 3, 7, 1, 2, 3 };
+    for (int i = 0; i < hashes.length; i++) {
+      cloneIndex.insert(new Block("a", new ByteArray(hashes[i]), i, i, i + 5));
+    }
+    cloneIndex.insert(new Block("b", new ByteArray(1), 0, 0, 5));
+    cloneIndex.insert(new Block("b", new ByteArray(2), 1, 1, 6));
+    cloneIndex.insert(new Block("b", new ByteArray(3), 2, 2, 7));
+
+    FileBlockGroup blockGroup = FileBlockGroup.create("a", new ArrayList<Block>(cloneIndex.getByResourceId("a")));
+    final List<CloneGroup> consumed = new ArrayList<CloneGroup>();
+    cloneReporter.reportClones(blockGroup, new CloneConsumer() {
+      public void accept(CloneGroup clone) {
+        consumed.add(clone);
+      }
+    });
+    assertThat(consumed.size() > 1, is(true));
+    assertThat(consumed, is(cloneReporter.reportClones(blockGroup)));
+  }
+
   @Ignore("TODO fix situation with duplicated clone with Paired and Grouped variants of algorithm")
   @Test
   public void testDuplicatesSameFileTriangle() {
@@ -0,0 +1,163 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.algorithm;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.BlockFingerprints;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.block.LongBlocks;
+import org.sonar.duplications.index.CachingCloneIndex;
+import org.sonar.duplications.index.CloneGroup;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.ClonePart;
+import org.sonar.duplications.index.LongHashCloneIndex;
+import org.sonar.duplications.index.MemoryCloneIndex;
+import org.sonar.duplications.statement.Statement;
+
+public class AdvancedGroupCloneReporterTest {
+
+  /**
+   * Clone "a" 5-7 is reported after all chains of first clone are finished,
+   * but should be filtered, because it is contained in first clone.
+   */
+  @Test
+  public void shouldFilterCloneContainedInPreviouslyReportedClone() {
+    CloneIndex cloneIndex = new MemoryCloneIndex();
+    int[] hashes = { 1, 2, 3, 7, 8, 1, 2, 3 };
+    for (int i = 0; i < hashes.length; i++) {
+      cloneIndex.insert(new Block("a", new ByteArray(hashes[i]), i, i, i + 5));
+    }
+    cloneIndex.insert(new Block("b", new ByteArray(1), 0, 0, 5));
+    cloneIndex.insert(new Block("b", new ByteArray(2), 1, 1, 6));
+    cloneIndex.insert(new Block("b", new ByteArray(3), 2, 2, 7));
+
+    FileBlockGroup blockGroup = FileBlockGroup.create("a", new ArrayList<Block>(cloneIndex.getByResourceId("a")));
+    List<CloneGroup> items = new AdvancedGroupCloneReporter(cloneIndex).reportClones(blockGroup);
+
+    ClonePart origin = new ClonePart("a", 0, 0, 7);
+    CloneGroup expected = new CloneGroup(3, origin, Arrays.asList(origin, new ClonePart("a", 5, 5, 12), new ClonePart("b", 0, 0, 7)));
+    assertThat(items, is(Arrays.asList(expected)));
+  }
+
+  @Test
+  public void shouldDiscardCollisionsByFingerprints() {
+    BlockFingerprints fingerprints = new BlockFingerprints(2);
+    fingerprints.add("a", Arrays.asList(new Statement(0, 0, "x"), new Statement(1, 1, "y"), new Statement(2, 2, "z")));
+    fingerprints.add("b", Arrays.asList(new Statement(0, 0, "x"), new Statement(1, 1, "y"), new Statement(2, 2, "w")));
+    // second block of "b" has same hash as second block of "a" due to collision
+    CloneIndex cloneIndex = new MemoryCloneIndex();
+    cloneIndex.insert(new Block("a", new ByteArray(1L), 0, 0, 1));
+    cloneIndex.insert(new Block("a", new ByteArray(2L), 1, 1, 2));
+    cloneIndex.insert(new Block("b", new ByteArray(1L), 0, 0, 1));
+    cloneIndex.insert(new Block("b", new ByteArray(2L), 1, 1, 2));
+    FileBlockGroup blockGroup = FileBlockGroup.create("a", new ArrayList<Block>(cloneIndex.getByResourceId("a")));
+
+    assertThat(new AdvancedGroupCloneReporter(cloneIndex).reportClones(blockGroup).get(0).getCloneUnitLength(), is(2));
+
+    AdvancedGroupCloneReporter reporter = new AdvancedGroupCloneReporter(cloneIndex, fingerprints);
+    // collision at start of sequence is discarded
+    FileBlockGroup secondBlock = FileBlockGroup.create("a", Arrays.asList(cloneIndex.getByResourceId("a").toArray(new Block[2])[1]));
+    assertThat(reporter.reportClones(secondBlock).size(), is(0));
+    assertThat(reporter.getDiscardedCollisions(), is(1L));
+    // continuation of sequence is not verified
+    assertThat(reporter.reportClones(blockGroup).get(0).getCloneUnitLength(), is(2));
+    assertThat(reporter.getDiscardedCollisions(), is(1L));
+  }
+
+  @Test
+  public void shouldReportSameClonesUsingLongHashIndex() {
+    CloneIndex memoryIndex = new MemoryCloneIndex();
+    CloneIndex longHashIndex = new LongHashCloneIndex();
+    long[] hashes = { 1, 2, 3, 7, 8, 1, 2, 3 };
+    List<Block> blocks = new ArrayList<Block>();
+    for (int i = 0; i < hashes.length; i++) {
+      blocks.add(new Block("a", new ByteArray(hashes[i]), i, i, i + 5));
+    }
+    blocks.add(new Block("b", new ByteArray(1L), 0, 0, 5));
+    blocks.add(new Block("b", new ByteArray(2L), 1, 1, 6));
+    blocks.add(new Block("b", new ByteArray(3L), 2, 2, 7));
+    for (Block block : blocks) {
+      memoryIndex.insert(block);
+      longHashIndex.insert(block);
+    }
+
+    FileBlockGroup blockGroup = FileBlockGroup.create("a", new ArrayList<Block>(longHashIndex.getByResourceId("a")));
+    List<CloneGroup> expected = new AdvancedGroupCloneReporter(memoryIndex).reportClones(blockGroup);
+    assertThat(expected.size(), is(1));
+    assertThat(new AdvancedGroupCloneReporter(longHashIndex).reportClones(blockGroup), is(expected));
+  }
+
+  @Test
+  public void shouldReportSameClonesForLongBlocks() {
+    CloneIndex memoryIndex = new MemoryCloneIndex();
+    LongHashCloneIndex longHashIndex = new LongHashCloneIndex();
+    LongBlocks a = new LongBlocks("a", 1);
+    long[] hashes = { 1, 2, 3, 7, 8, 1, 2, 3 };
+    for (int i = 0; i < hashes.length; i++) {
+      a.add(hashes[i], i, i + 5);
+    }
+    LongBlocks b = new LongBlocks("b", 1);
+    b.add(1L, 0, 5);
+    b.add(2L, 1, 6);
+    b.add(3L, 2, 7);
+    for (LongBlocks blocks : Arrays.asList(a, b)) {
+      longHashIndex.insert(blocks);
+      for (Block block : blocks.toBlocks()) {
+        memoryIndex.insert(block);
+      }
+    }
+
+    List<CloneGroup> expected = new AdvancedGroupCloneReporter(memoryIndex).reportClones(FileBlockGroup.create("a", a.toBlocks()));
+    final List<CloneGroup> actual = new ArrayList<CloneGroup>();
+    new AdvancedGroupCloneReporter(longHashIndex).reportClones(a, new CloneConsumer() {
+      public void accept(CloneGroup clone) {
+        actual.add(clone);
+      }
+    });
+    assertThat(expected.size(), is(1));
+    assertThat(actual, is(expected));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotReportLongBlocksUsingWrappedLongHashIndex() {
+    CloneIndex wrapped = new CachingCloneIndex(new LongHashCloneIndex(), 100);
+    new AdvancedGroupCloneReporter(wrapped).reportClones(new LongBlocks("a", 1), new CloneConsumer() {
+      public void accept(CloneGroup clone) {
+      }
+    });
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotReportLongBlocksWithoutLongHashIndex() {
+    new AdvancedGroupCloneReporter(new MemoryCloneIndex()).reportClones(new LongBlocks("a", 1), new CloneConsumer() {
+      public void accept(CloneGroup clone) {
+      }
+    });
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.algorithm;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.CloneGroup;
+import org.sonar.duplications.index.ConcurrentCloneIndex;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+public class IncrementalCloneDetectorTest {
+
+  private Map<String, int[]> contents;
+  private Map<String, String> fingerprints;
+  private IncrementalCloneDetector detector;
+  private int blockSourceInvocations;
+
+  private IncrementalCloneDetector.BlockSource blockSource = new IncrementalCloneDetector.BlockSource() {
+    public List<Block> getBlocks(String resourceId) {
+      blockSourceInvocations++;
+      int[] hashes = contents.get(resourceId);
+      List<Block> blocks = Lists.newArrayList();
+      for (int i = 0; i < hashes.length; i++) {
+        blocks.add(new Block(resourceId, new ByteArray(hashes[i]), i, i, i + 5));
+      }
+      return blocks;
+    }
+  };
+
+  @Before
+  public void setUp() {
+    ConcurrentCloneIndex index = new ConcurrentCloneIndex();
+    detector = new IncrementalCloneDetector(index, new AdvancedGroupCloneReporter(index));
+    contents = Maps.newLinkedHashMap();
+    fingerprints = Maps.newLinkedHashMap();
+    setContent("a", 1, 2, 3, 4);
+    setContent("b", 0, 2, 3, 4, 5);
+    setContent("c", 10, 11, 12);
+  }
+
+  @Test
+  public void shouldReportAllResourcesOnFirstAnalysis() {
+    Map<String, List<CloneGroup>> result = detector.detect(fingerprints, blockSource);
+    assertThat(Lists.newArrayList(result.keySet()), is((List<String>) Lists.newArrayList("a", "b", "c")));
+    assertThat(result.get("a").size(), is(1));
+    assertThat(result.get("c").size(), is(0));
+    assertThat(blockSourceInvocations, is(3));
+  }
+
+  @Test
+  public void shouldNotReportUnchangedResources() {
+    detector.detect(fingerprints, blockSource);
+    blockSourceInvocations = 0;
+
+    assertThat(detector.detect(fingerprints, blockSource).size(), is(0));
+    assertThat(blockSourceInvocations, is(0));
+  }
+
+  @Test
+  public void shouldReportOnlyModifiedResourceWithoutSharedHashes() {
+    detector.detect(fingerprints, blockSource);
+    blockSourceInvocations = 0;
+
+    setContent("c", 10, 11, 13);
+    Map<String, List<CloneGroup>> result = detector.detect(fingerprints, blockSource);
+    assertThat(Lists.newArrayList(result.keySet()), is((List<String>) Lists.newArrayList("c")));
+    assertThat(blockSourceInvocations, is(1));
+  }
+
+  @Test
+  public void shouldReportResourcesWhichLostClones() {
+    detector.detect(fingerprints, blockSource);
+
+    setContent("b", 0, 6, 7, 8, 5);
+    Map<String, List<CloneGroup>> result = detector.detect(fingerprints, blockSource);
+    assertThat(Lists.newArrayList(result.keySet()), is((List<String>) Lists.newArrayList("a", "b")));
+    assertThat(result.get("a").size(), is(0));
+    assertThat(result.get("b").size(), is(0));
+  }
+
+  @Test
+  public void shouldReportResourcesWhichGainedClones() {
+    detector.detect(fingerprints, blockSource);
+
+    setContent("c", 10, 2, 3);
+    Map<String, List<CloneGroup>> result = detector.detect(fingerprints, blockSource);
+    assertThat(Lists.newArrayList(result.keySet()), is((List<String>) Lists.newArrayList("a", "b", "c")));
+    assertThat(result.get("c").size(), is(1));
+  }
+
+  @Test
+  public void shouldRemoveDeletedResources() {
+    detector.detect(fingerprints, blockSource);
+
+    fingerprints.remove("a");
+    Map<String, List<CloneGroup>> result = detector.detect(fingerprints, blockSource);
+    assertThat(Lists.newArrayList(result.keySet()), is((List<String>) Lists.newArrayList("b")));
+    assertThat(result.get("b").size(), is(0));
+    assertThat(detector.getFingerprints().containsKey("a"), is(false));
+  }
+
+  private void setContent(String resourceId, int... hashes) {
+    contents.put(resourceId, hashes);
+    StringBuilder fingerprint = new StringBuilder();
+    for (int hash : hashes) {
+      fingerprint.append(hash).append(',');
+    }
+    fingerprints.put(resourceId, fingerprint.toString());
+  }
+
+}
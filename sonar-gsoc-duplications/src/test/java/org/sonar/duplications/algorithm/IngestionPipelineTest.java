@@ -0,0 +1,128 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.algorithm;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.BlockChunker;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.MemoryCloneIndex;
+import org.sonar.duplications.java.JavaStatementBuilder;
+import org.sonar.duplications.java.JavaTokenProducer;
+import org.sonar.duplications.statement.StatementChunker;
+import org.sonar.duplications.token.TokenChunker;
+
+import com.google.common.collect.Lists;
+
+public class IngestionPipelineTest {
+
+  private static final IngestionPipeline.ChunkersFactory CHUNKERS_FACTORY = new IngestionPipeline.ChunkersFactory() {
+    public TokenChunker createTokenChunker() {
+      return JavaTokenProducer.build();
+    }
+
+    public StatementChunker createStatementChunker() {
+      return JavaStatementBuilder.build();
+    }
+
+    public BlockChunker createBlockChunker() {
+      return new BlockChunker(2);
+    }
+  };
+
+  private List<File> files = Lists.newArrayList();
+
+  @Before
+  public void setUp() throws IOException {
+    for (int i = 0; i < 20; i++) {
+      File file = File.createTempFile("Source", ".java");
+      Writer writer = new FileWriter(file);
+      try {
+        writer.write("class Source" + i + " {\n  void method() {\n    int a = " + (i % 3) + ";\n    a++;\n    a--;\n  }\n}\n");
+      } finally {
+        writer.close();
+      }
+      files.add(file);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : files) {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void shouldPopulateIndexSameAsSequentialProcessing() {
+    CloneIndex index = new MemoryCloneIndex();
+    Map<IngestionPipeline.Stage, StageMetrics> metrics = IngestionPipeline.builder(CHUNKERS_FACTORY, index)
+        .setThreads(IngestionPipeline.Stage.TOKENS, 3)
+        .setThreads(IngestionPipeline.Stage.STATEMENTS, 2)
+        .setQueueCapacity(IngestionPipeline.Stage.STATEMENTS, 1)
+        .build()
+        .run(files);
+
+    TokenChunker tokenChunker = CHUNKERS_FACTORY.createTokenChunker();
+    StatementChunker statementChunker = CHUNKERS_FACTORY.createStatementChunker();
+    BlockChunker blockChunker = CHUNKERS_FACTORY.createBlockChunker();
+    for (File file : files) {
+      String resourceId = file.getAbsolutePath();
+      List<Block> expected = blockChunker.chunk(resourceId, statementChunker.chunk(tokenChunker.chunk(file)));
+      assertThat(expected.size() > 0, is(true));
+      assertThat(toStrings(index.getByResourceId(resourceId)), is(toStrings(expected)));
+    }
+    for (IngestionPipeline.Stage stage : IngestionPipeline.Stage.values()) {
+      assertThat(metrics.get(stage).getProcessed(), is((long) files.size()));
+    }
+    assertThat(metrics.get(IngestionPipeline.Stage.STATEMENTS).getMaxQueueDepth() <= 1, is(true));
+  }
+
+  @Test(expected = DuplicationsException.class)
+  public void shouldFailWhenFileCanNotBeRead() {
+    files.add(10, new File("does-not-exist.java"));
+    IngestionPipeline.builder(CHUNKERS_FACTORY, new MemoryCloneIndex())
+        .setQueueCapacity(IngestionPipeline.Stage.TOKENS, 1)
+        .build()
+        .run(files);
+  }
+
+  private static List<String> toStrings(Iterable<Block> blocks) {
+    List<String> result = Lists.newArrayList();
+    for (Block block : blocks) {
+      result.add(block.getIndexInFile() + ":" + block.getFirstLineNumber() + ":" + block.getLastLineNumber() + ":" + block.getHashHex());
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.algorithm;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.CloneGroup;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.MemoryCloneIndex;
+
+import com.google.common.collect.Lists;
+
+public class ParallelCloneDetectorTest extends BaseCloneReporterTest {
+
+  private static final int THREADS = 4;
+
+  private ExecutorService executor;
+  private CloneIndex cloneIndex;
+  private List<FileBlockGroup> fileBlockGroups;
+
+  public ParallelCloneDetectorTest(CloneReporterAlgorithmBuilder builder) {
+    super(builder);
+  }
+
+  @Before
+  public void initialize() {
+    executor = Executors.newFixedThreadPool(THREADS);
+    cloneIndex = new MemoryCloneIndex();
+    fileBlockGroups = Lists.newArrayList();
+
+    // small number of distinct hashes in order to get a lot of clones
+    Random random = new Random(1);
+    for (int file = 0; file < 50; file++) {
+      String resourceId = "file" + file;
+      for (int i = 0; i < 40; i++) {
+        cloneIndex.insert(new Block(resourceId, new ByteArray(random.nextInt(8)), i, i, i + 5));
+      }
+      fileBlockGroups.add(FileBlockGroup.create(resourceId, new ArrayList<Block>(cloneIndex.getByResourceId(resourceId))));
+    }
+  }
+
+  @After
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void shouldReportSameClonesAsSerial() {
+    ParallelCloneDetector detector = new ParallelCloneDetector(cloneIndex, cloneReporterBuilder, executor, THREADS);
+    Map<String, List<CloneGroup>> result = detector.detect(fileBlockGroups);
+
+    assertThat(result.size(), is(fileBlockGroups.size()));
+    List<String> resourceIds = Lists.newArrayList(result.keySet());
+    CloneReporterAlgorithm serialReporter = cloneReporterBuilder.build(cloneIndex);
+    for (int i = 0; i < fileBlockGroups.size(); i++) {
+      FileBlockGroup fileBlockGroup = fileBlockGroups.get(i);
+      assertThat(resourceIds.get(i), is(fileBlockGroup.getResourceId()));
+      assertThat(result.get(fileBlockGroup.getResourceId()), is(serialReporter.reportClones(fileBlockGroup)));
+    }
+  }
+
+  @Test(expected = DuplicationsException.class)
+  public void shouldNotAllowSharedReporter() {
+    final CloneReporterAlgorithm reporter = cloneReporterBuilder.build(cloneIndex);
+    CloneReporterAlgorithmBuilder sharedBuilder = new CloneReporterAlgorithmBuilder() {
+      public CloneReporterAlgorithm build(CloneIndex index) {
+        return reporter;
+      }
+    };
+    new ParallelCloneDetector(cloneIndex, sharedBuilder, executor, THREADS).detect(fileBlockGroups);
+  }
+
+  @Test(expected = DuplicationsException.class)
+  public void shouldPropagateFailure() {
+    CloneReporterAlgorithmBuilder failingBuilder = new CloneReporterAlgorithmBuilder() {
+      public CloneReporterAlgorithm build(CloneIndex index) {
+        return new CloneReporterAlgorithm() {
+          public List<CloneGroup> reportClones(FileBlockGroup fileBlockGroup) {
+            throw new IllegalStateException();
+          }
+
+          public void reportClones(FileBlockGroup fileBlockGroup, CloneConsumer consumer) {
+            throw new IllegalStateException();
+          }
+        };
+      }
+    };
+    new ParallelCloneDetector(cloneIndex, failingBuilder, executor, THREADS).detect(fileBlockGroups);
+  }
+
+  /**
+   * Worker, which was interrupted, doesn't process remaining files, so result would be incomplete.
+   */
+  @Test(expected = DuplicationsException.class)
+  public void shouldFailWhenTaskInterrupted() {
+    CloneReporterAlgorithmBuilder interruptingBuilder = new CloneReporterAlgorithmBuilder() {
+      public CloneReporterAlgorithm build(CloneIndex index) {
+        final CloneReporterAlgorithm reporter = cloneReporterBuilder.build(index);
+        return new CloneReporterAlgorithm() {
+          public List<CloneGroup> reportClones(FileBlockGroup fileBlockGroup) {
+            Thread.currentThread().interrupt();
+            return reporter.reportClones(fileBlockGroup);
+          }
+
+          public void reportClones(FileBlockGroup fileBlockGroup, CloneConsumer consumer) {
+            Thread.currentThread().interrupt();
+            reporter.reportClones(fileBlockGroup, consumer);
+          }
+        };
+      }
+    };
+    new ParallelCloneDetector(cloneIndex, interruptingBuilder, executor, THREADS).detect(fileBlockGroups);
+  }
+
+}
@@ -25,6 +25,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
@@ -171,4 +172,31 @@ public class IntervalTreeTest {
     assertThat(searchAllIntervals(0, bignumber / 3), is(expected));
   }
 
+  @Test
+  public void shouldFindSameIntervalsAsBruteForce() {
+    Random random = new Random(1);
+    List<Interval> all = new ArrayList<Interval>();
+    for (int i = 0; i < 500; i++) {
+      int start = random.nextInt(200) - 100;
+      Interval interval = new Interval(start, start + random.nextInt(30), i);
+      tree.addInterval(interval);
+      all.add(interval);
+    }
+    for (int i = 0; i < 1000; i++) {
+      int start = random.nextInt(220) - 110;
+      int end = start + random.nextInt(20);
+      int expected = 0;
+      for (Interval interval : all) {
+        if (interval.getStart() <= start && interval.getEnd() >= end) {
+          expected++;
+        }
+      }
+      List<Interval> intervals = tree.getCoveringIntervals(start, end);
+      assertThat(intervals.size(), is(expected));
+      for (Interval interval : intervals) {
+        assertThat(interval.getStart() <= start && interval.getEnd() >= end, is(true));
+      }
+    }
+  }
+
 }
@@ -0,0 +1,121 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.algorithm.filter;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.sonar.duplications.algorithm.ClonePair;
+import org.sonar.duplications.algorithm.FilterUtils;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.index.CloneGroup;
+import org.sonar.duplications.index.ClonePart;
+
+import com.google.common.collect.Lists;
+
+public class SweepLineCloneFilterTest {
+
+  private static final String[] RESOURCES = { "a", "b", "c" };
+
+  private final Random random = new Random(1);
+
+  @Test
+  public void shouldFilterSameClonesAsBruteForce() {
+    SweepLineCloneFilter sweepLineFilter = new SweepLineCloneFilter();
+    BruteForceCloneFilter bruteForceFilter = new BruteForceCloneFilter();
+    for (int i = 0; i < 500; i++) {
+      List<CloneGroup> clones = randomCloneGroups(1 + random.nextInt(30));
+      assertThat(sweepLineFilter.filter(clones), is(bruteForceFilter.filter(clones)));
+    }
+  }
+
+  @Test
+  public void shouldFilterSamePairsAsIntervalTree() {
+    SweepLineClonePairFilter sweepLineFilter = new SweepLineClonePairFilter();
+    IntervalTreeClonePairFilter intervalTreeFilter = new IntervalTreeClonePairFilter();
+    for (int i = 0; i < 500; i++) {
+      List<ClonePair> pairs = randomClonePairs(1 + random.nextInt(30));
+      assertThat(sweepLineFilter.filter(pairs), is(intervalTreeFilter.filter(pairs)));
+    }
+  }
+
+  @Test
+  public void shouldFilterEmptyList() {
+    assertThat(new SweepLineCloneFilter().filter(Collections.<CloneGroup> emptyList()).size(), is(0));
+  }
+
+  /**
+   * Clones are small and located in short files, so many of them contain each other.
+   */
+  private List<CloneGroup> randomCloneGroups(int count) {
+    List<CloneGroup> clones = Lists.newArrayList();
+    while (clones.size() < count) {
+      int length = 1 + random.nextInt(5);
+      ClonePart origin = randomPart("a", length);
+      List<ClonePart> parts = Lists.newArrayList(origin);
+      int others = 1 + random.nextInt(3);
+      for (int i = 0; i < others; i++) {
+        parts.add(randomPart(RESOURCES[random.nextInt(RESOURCES.length)], length));
+      }
+      Collections.sort(parts, FilterUtils.CLONEPART_COMPARATOR);
+      CloneGroup clone = new CloneGroup(length, origin, parts);
+      // brute force filter removes both equal clones
+      if (!clones.contains(clone)) {
+        clones.add(clone);
+      }
+    }
+    return clones;
+  }
+
+  private ClonePart randomPart(String resourceId, int length) {
+    int start = random.nextInt(15);
+    return new ClonePart(resourceId, start, start, start + length + 4);
+  }
+
+  private List<ClonePair> randomClonePairs(int count) {
+    List<ClonePair> pairs = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      int length = 1 + random.nextInt(5);
+      int originStart = random.nextInt(15);
+      String otherResourceId = RESOURCES[random.nextInt(RESOURCES.length)];
+      int otherStart = random.nextInt(15);
+      ClonePair pair = null;
+      for (int j = 0; j < length; j++) {
+        Block originBlock = new Block("a", new ByteArray(j), originStart + j, originStart + j, originStart + j + 5);
+        Block otherBlock = new Block(otherResourceId, new ByteArray(j), otherStart + j, otherStart + j, otherStart + j + 5);
+        if (pair == null) {
+          pair = new ClonePair(originBlock, otherBlock);
+        } else {
+          pair.increase(originBlock, otherBlock);
+        }
+      }
+      pair.finishConstruction();
+      pairs.add(pair);
+    }
+    return pairs;
+  }
+
+}
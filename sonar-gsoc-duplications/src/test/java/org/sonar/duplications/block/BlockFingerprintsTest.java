@@ -0,0 +1,63 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.block;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.sonar.duplications.statement.Statement;
+
+public class BlockFingerprintsTest {
+
+  private static final List<Statement> STATEMENTS = Arrays.asList(
+      new Statement(0, 0, "a"), new Statement(1, 1, "b"), new Statement(2, 2, "a"), new Statement(3, 3, "b"), new Statement(4, 4, "c"));
+
+  @Test
+  public void shouldCompareFingerprintsOfBlocks() {
+    BlockFingerprints fingerprints = new BlockFingerprints(2);
+    fingerprints.add("x", STATEMENTS);
+    fingerprints.add("y", STATEMENTS.subList(2, 5));
+
+    assertThat(fingerprints.mightBeEqual(block("x", 0), block("x", 2)), is(true));
+    assertThat(fingerprints.mightBeEqual(block("x", 0), block("y", 0)), is(true));
+    assertThat(fingerprints.mightBeEqual(block("x", 0), block("x", 1)), is(false));
+    assertThat(fingerprints.mightBeEqual(block("x", 3), block("y", 0)), is(false));
+  }
+
+  @Test
+  public void shouldAssumeEqualityOfUnknownBlocks() {
+    BlockFingerprints fingerprints = new BlockFingerprints(2);
+    fingerprints.add("x", STATEMENTS);
+    fingerprints.add("y", STATEMENTS);
+    fingerprints.remove("y");
+
+    assertThat(fingerprints.mightBeEqual(block("x", 0), block("y", 1)), is(true));
+    assertThat(fingerprints.mightBeEqual(block("x", 0), block("x", 4)), is(true));
+  }
+
+  private static Block block(String resourceId, int indexInFile) {
+    return new Block(resourceId, new ByteArray(1L), indexInFile, indexInFile, indexInFile + 1);
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.block;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.sonar.duplications.statement.Statement;
+
+import com.google.common.collect.Lists;
+
+public class LongBlockChunkerTest {
+
+  @Test
+  public void shouldProduceSameBlocksAsBlockChunker() {
+    List<Statement> statements = Lists.newArrayList();
+    for (int i = 0; i < 20; i++) {
+      statements.add(new Statement(i, i + 1, "statement" + (i % 7)));
+    }
+    List<Block> expected = new BlockChunker(5).chunk("a", statements);
+    List<Block> actual = new LongBlockChunker(5).chunk("a", statements);
+
+    assertThat(actual.size(), is(16));
+    for (int i = 0; i < expected.size(); i++) {
+      assertThat(actual.get(i).getBlockHash(), is(expected.get(i).getBlockHash()));
+      assertThat(actual.get(i).getIndexInFile(), is(expected.get(i).getIndexInFile()));
+      assertThat(actual.get(i).getFirstLineNumber(), is(expected.get(i).getFirstLineNumber()));
+      assertThat(actual.get(i).getLastLineNumber(), is(expected.get(i).getLastLineNumber()));
+    }
+  }
+
+  @Test
+  public void shouldNotProduceBlocksForShortResource() {
+    List<Statement> statements = Lists.newArrayList(new Statement(0, 1, "a"), new Statement(1, 2, "b"));
+    assertThat(new LongBlockChunker(5).chunkToLongs("a", statements).size(), is(0));
+  }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.block;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+import org.sonar.duplications.statement.Statement;
+
+public class Murmur3BlockChunkerTest {
+
+  @Test
+  public void shouldProduceEqualHashesForEqualBlocks() {
+    checkEqualHashesForEqualBlocks(Murmur3BlockChunker.Width.BITS_64, 16);
+    checkEqualHashesForEqualBlocks(Murmur3BlockChunker.Width.BITS_128, 32);
+  }
+
+  private void checkEqualHashesForEqualBlocks(Murmur3BlockChunker.Width width, int hexLength) {
+    Murmur3BlockChunker chunker = new Murmur3BlockChunker(5, width);
+    // second invocation with longer list grows buffers
+    chunker.chunk("a", createStatements(10));
+    List<Block> blocks = chunker.chunk("a", createStatements(30));
+
+    assertThat(blocks.size(), is(26));
+    for (int i = 0; i < blocks.size(); i++) {
+      Block block = blocks.get(i);
+      assertThat(block.getHashHex().length(), is(hexLength));
+      assertThat(block.getIndexInFile(), is(i));
+      assertThat(block.getFirstLineNumber(), is(i));
+      assertThat(block.getLastLineNumber(), is(i + 5));
+      if (i + 7 < blocks.size()) {
+        assertThat(block.getBlockHash(), is(blocks.get(i + 7).getBlockHash()));
+        assertThat(block.getBlockHash(), not(is(blocks.get(i + 1).getBlockHash())));
+      }
+    }
+  }
+
+  @Test
+  public void shouldNotProduceBlocksForShortResource() {
+    assertThat(new Murmur3BlockChunker(5).chunk("a", createStatements(4)).size(), is(0));
+  }
+
+  private static List<Statement> createStatements(int count) {
+    // statements repeat with period 7
+    List<Statement> statements = new LinkedList<Statement>();
+    for (int i = 0; i < count; i++) {
+      statements.add(new Statement(i, i + 1, "statement" + (i % 7)));
+    }
+    return statements;
+  }
+
+}
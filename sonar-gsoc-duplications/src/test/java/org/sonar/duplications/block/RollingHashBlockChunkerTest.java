@@ -0,0 +1,87 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.block;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+import org.sonar.duplications.statement.Statement;
+
+public class RollingHashBlockChunkerTest {
+
+  @Test
+  public void shouldProduceSameBlocksAsBlockChunker() {
+    List<Statement> statements = createStatements(30);
+    List<Block> expected = new BlockChunker(5).chunk("a", statements);
+    RollingHashBlockChunker chunker = new RollingHashBlockChunker(5);
+    // second invocation reuses ring buffers
+    chunker.chunk("a", statements);
+    List<Block> actual = chunker.chunk("a", statements);
+
+    assertThat(actual.size(), is(26));
+    for (int i = 0; i < expected.size(); i++) {
+      assertThat(actual.get(i).getBlockHash(), is(expected.get(i).getBlockHash()));
+      assertThat(actual.get(i).getIndexInFile(), is(i));
+      assertThat(actual.get(i).getFirstLineNumber(), is(expected.get(i).getFirstLineNumber()));
+      assertThat(actual.get(i).getLastLineNumber(), is(expected.get(i).getLastLineNumber()));
+    }
+  }
+
+  @Test
+  public void shouldProduceEqualHashesForEqualBlocks() {
+    checkEqualHashesForEqualBlocks(RollingHashBlockChunker.MURMUR_HASHER);
+    checkEqualHashesForEqualBlocks(RollingHashBlockChunker.digestHasher("MD5"));
+  }
+
+  private void checkEqualHashesForEqualBlocks(RollingHashBlockChunker.StatementHasher hasher) {
+    // statements repeat with period 7
+    LongBlocks blocks = new RollingHashBlockChunker(5, hasher).chunkToLongs("a", createStatements(30));
+    assertThat(blocks.size(), is(26));
+    for (int i = 0; i + 7 < blocks.size(); i++) {
+      assertThat(blocks.getHash(i), is(blocks.getHash(i + 7)));
+      assertThat(blocks.getHash(i), not(is(blocks.getHash(i + 1))));
+    }
+  }
+
+  @Test
+  public void shouldHashStatementsSameAsMurmur3BlockChunker() {
+    Statement statement = new Statement(1, 2, "statement");
+    assertThat(RollingHashBlockChunker.MURMUR_HASHER.hash(statement.getValue()), is(Murmur3BlockChunker.hashStatement(statement)));
+  }
+
+  @Test
+  public void shouldNotProduceBlocksForShortResource() {
+    assertThat(new RollingHashBlockChunker(5).chunkToLongs("a", createStatements(4)).size(), is(0));
+  }
+
+  private static List<Statement> createStatements(int count) {
+    List<Statement> statements = new LinkedList<Statement>();
+    for (int i = 0; i < count; i++) {
+      statements.add(new Statement(i, i + 1, "statement" + (i % 7)));
+    }
+    return statements;
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.junit.Test;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+public class BatchLookupAdapterTest {
+
+  @Test
+  public void shouldNotWrapBatchIndex() {
+    BatchLookupCloneIndex index = BatchLookupAdapter.wrap(new MemoryCloneIndex());
+    assertThat(BatchLookupAdapter.wrap(index), sameInstance(index));
+  }
+
+  @Test
+  public void shouldGroupBlocksByHash() {
+    CloneIndex index = new MemoryCloneIndex();
+    index.insert(new Block("a", new ByteArray(1), 0, 0, 5));
+    index.insert(new Block("b", new ByteArray(1), 3, 3, 8));
+    index.insert(new Block("b", new ByteArray(2), 4, 4, 9));
+
+    Map<ByteArray, Collection<Block>> result = BatchLookupAdapter.wrap(index)
+        .getBySequenceHashes(Arrays.asList(new ByteArray(1), new ByteArray(2), new ByteArray(3)));
+
+    assertThat(result.size(), is(2));
+    assertThat(result.get(new ByteArray(1)).size(), is(2));
+    assertThat(result.get(new ByteArray(2)).size(), is(1));
+    assertThat(result.containsKey(new ByteArray(3)), is(false));
+  }
+
+}
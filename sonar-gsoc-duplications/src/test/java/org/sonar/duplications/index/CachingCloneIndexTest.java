@@ -0,0 +1,123 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+public class CachingCloneIndexTest {
+
+  private CloneIndex index;
+  private int lookups;
+  private CachingCloneIndex cache;
+
+  @Before
+  public void setUp() {
+    final CloneIndex memoryIndex = new MemoryCloneIndex();
+    index = new AbstractCloneIndex() {
+      public Collection<Block> getByResourceId(String resourceId) {
+        return memoryIndex.getByResourceId(resourceId);
+      }
+
+      public Collection<Block> getBySequenceHash(ByteArray sequenceHash) {
+        lookups++;
+        return memoryIndex.getBySequenceHash(sequenceHash);
+      }
+
+      public void insert(Block block) {
+        memoryIndex.insert(block);
+      }
+    };
+    index.insert(new Block("a", new ByteArray(1), 0, 0, 5));
+    index.insert(new Block("b", new ByteArray(1), 3, 3, 8));
+    index.insert(new Block("b", new ByteArray(2), 4, 4, 9));
+    index.insert(new Block("c", new ByteArray(3), 0, 0, 5));
+    cache = new CachingCloneIndex(index, 3);
+  }
+
+  @Test
+  public void shouldServeRepeatedLookupsFromCache() {
+    assertThat(cache.getBySequenceHash(new ByteArray(1)).size(), is(2));
+    assertThat(cache.getBySequenceHash(new ByteArray(1)).size(), is(2));
+    assertThat(cache.getBySequenceHash(new ByteArray(4)).size(), is(0));
+    assertThat(cache.getBySequenceHash(new ByteArray(4)).size(), is(0));
+
+    assertThat(lookups, is(2));
+    assertThat(cache.getHitCount(), is(2L));
+    assertThat(cache.getMissCount(), is(2L));
+    assertThat(cache.getHitRate(), is(0.5));
+    assertThat(cache.getWeight(), is(3));
+  }
+
+  @Test
+  public void shouldEvictLeastRecentlyUsedByWeight() {
+    cache.getBySequenceHash(new ByteArray(1));
+    cache.getBySequenceHash(new ByteArray(2));
+    cache.getBySequenceHash(new ByteArray(1));
+    // weight of hash 1 is 2, so one of others should be evicted - least recently used is 2
+    cache.getBySequenceHash(new ByteArray(3));
+
+    assertThat(cache.getEvictionCount(), is(1L));
+    assertThat(cache.getWeight(), is(3));
+    lookups = 0;
+    cache.getBySequenceHash(new ByteArray(1));
+    cache.getBySequenceHash(new ByteArray(3));
+    assertThat(lookups, is(0));
+    cache.getBySequenceHash(new ByteArray(2));
+    assertThat(lookups, is(1));
+  }
+
+  @Test
+  public void shouldInvalidateOnInsert() {
+    assertThat(cache.getBySequenceHash(new ByteArray(2)).size(), is(1));
+    cache.insert(new Block("d", new ByteArray(2), 0, 0, 5));
+    assertThat(cache.getBySequenceHash(new ByteArray(2)).size(), is(2));
+    assertThat(lookups, is(2));
+  }
+
+  @Test
+  public void shouldLoadOnlyMissedHashesInBatch() {
+    cache.getBySequenceHash(new ByteArray(1));
+    lookups = 0;
+
+    Map<ByteArray, Collection<Block>> result = cache.getBySequenceHashes(Arrays.asList(new ByteArray(1), new ByteArray(2), new ByteArray(4)));
+    assertThat(result.size(), is(2));
+    assertThat(result.get(new ByteArray(1)).size(), is(2));
+    assertThat(result.get(new ByteArray(2)).size(), is(1));
+    assertThat(lookups, is(2));
+    assertThat(cache.getHitCount(), is(1L));
+    assertThat(cache.getMissCount(), is(3L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectNonPositiveWeight() {
+    new CachingCloneIndex(index, 0);
+  }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import com.google.common.collect.Lists;
+
+public class ConcurrentCloneIndexTest {
+
+  private static final int THREADS = 8;
+  private static final int RESOURCES_PER_THREAD = 20;
+  private static final int BLOCKS_PER_RESOURCE = 100;
+  private static final int HASHES = 10;
+
+  @Test
+  public void shouldNotLoseBlocksInsertedConcurrently() throws Exception {
+    final ConcurrentCloneIndex index = new ConcurrentCloneIndex(THREADS);
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      List<Future<Object>> futures = Lists.newArrayList();
+      for (int i = 0; i < THREADS; i++) {
+        final int thread = i;
+        futures.add(executor.submit(new Callable<Object>() {
+          public Object call() {
+            for (int r = 0; r < RESOURCES_PER_THREAD; r++) {
+              String resourceId = thread + "-" + r;
+              for (int b = 0; b < BLOCKS_PER_RESOURCE; b++) {
+                index.insert(new Block(resourceId, new ByteArray(b % HASHES), b, b, b + 5));
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Object> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    CloneIndex frozen = index.freeze();
+    int expectedPerHash = THREADS * RESOURCES_PER_THREAD * BLOCKS_PER_RESOURCE / HASHES;
+    for (int h = 0; h < HASHES; h++) {
+      assertThat(index.getBySequenceHash(new ByteArray(h)).size(), is(expectedPerHash));
+      assertThat(frozen.getBySequenceHash(new ByteArray(h)).size(), is(expectedPerHash));
+    }
+    assertThat(frozen.getByResourceId("0-0").size(), is(BLOCKS_PER_RESOURCE));
+    assertThat(frozen.getByResourceId("unknown").size(), is(0));
+  }
+
+  @Test
+  public void shouldRemoveBlocksOfResource() {
+    ConcurrentCloneIndex index = new ConcurrentCloneIndex();
+    index.insert(new Block("a", new ByteArray(1), 0, 0, 5));
+    index.insert(new Block("a", new ByteArray(2), 1, 1, 6));
+    index.insert(new Block("b", new ByteArray(1), 0, 0, 5));
+
+    index.remove("a");
+    index.remove("unknown");
+
+    assertThat(index.getByResourceId("a").size(), is(0));
+    assertThat(index.getBySequenceHash(new ByteArray(1)).size(), is(1));
+    assertThat(index.getBySequenceHash(new ByteArray(2)).size(), is(0));
+    assertThat(index.getByResourceId("b").size(), is(1));
+  }
+
+  @Test
+  public void shouldRemoveResourcesWithPopularHash() {
+    ConcurrentCloneIndex index = new ConcurrentCloneIndex();
+    for (int r = 0; r < RESOURCES_PER_THREAD; r++) {
+      for (int b = 0; b < BLOCKS_PER_RESOURCE; b++) {
+        index.insert(new Block("r" + r, new ByteArray(0), b, b, b + 5));
+      }
+    }
+
+    index.remove("r0");
+    assertThat(index.getBySequenceHash(new ByteArray(0)).size(), is((RESOURCES_PER_THREAD - 1) * BLOCKS_PER_RESOURCE));
+    for (Block block : index.getBySequenceHash(new ByteArray(0))) {
+      assertThat(block.getResourceId().equals("r0"), is(false));
+    }
+    for (int r = 1; r < RESOURCES_PER_THREAD; r++) {
+      index.remove("r" + r);
+    }
+    assertThat(index.getBySequenceHash(new ByteArray(0)).size(), is(0));
+    assertThat(index.freeze().getBySequenceHash(new ByteArray(0)).size(), is(0));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void shouldNotAllowInsertIntoFrozenIndex() {
+    ConcurrentCloneIndex index = new ConcurrentCloneIndex();
+    index.insert(new Block("a", new ByteArray(1), 0, 0, 5));
+    index.freeze().insert(new Block("b", new ByteArray(1), 0, 0, 5));
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import com.google.common.collect.Lists;
+
+public class FileCloneIndexTest {
+
+  private MappedCloneIndex mappedIndex;
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    File directory = new File(System.getProperty("java.io.tmpdir"));
+    mappedIndex = new MappedCloneIndex(directory, 8, 7);
+    file = File.createTempFile("index", ".dat", directory);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    mappedIndex.close();
+    file.delete();
+  }
+
+  @Test
+  public void shouldFindSameBlocksAfterReload() throws IOException {
+    Random random = new Random(1);
+    // resources are inserted not in alphabetical order
+    for (int i = 0; i < 30; i++) {
+      for (int file = 19; file >= 0; file--) {
+        mappedIndex.insert(new Block("file" + file, new ByteArray((long) random.nextInt(50) - 25), i, i, i + 5));
+      }
+    }
+    mappedIndex.writeTo(file);
+
+    FileCloneIndex index = FileCloneIndex.open(file);
+    try {
+      assertThat(index.size(), is(600));
+      assertThat(index.getHashSize(), is(8));
+      for (int hash = -30; hash < 30; hash++) {
+        ByteArray sequenceHash = new ByteArray((long) hash);
+        assertThat(toStrings(index.getBySequenceHash(sequenceHash)), is(toStrings(mappedIndex.getBySequenceHash(sequenceHash))));
+      }
+      for (int file = 0; file < 20; file++) {
+        List<String> blocks = toStrings(index.getByResourceId("file" + file));
+        assertThat(blocks, is(toStrings(mappedIndex.getByResourceId("file" + file))));
+        assertThat(blocks.size(), is(30));
+      }
+      assertThat(index.getByResourceId("unknown").size(), is(0));
+    } finally {
+      index.close();
+    }
+  }
+
+  @Test
+  public void shouldReloadEmptyIndex() throws IOException {
+    mappedIndex.writeTo(file);
+    FileCloneIndex index = FileCloneIndex.open(file);
+    try {
+      assertThat(index.size(), is(0));
+      assertThat(index.getByResourceId("a").size(), is(0));
+      assertThat(index.getBySequenceHash(new ByteArray(1L)).size(), is(0));
+    } finally {
+      index.close();
+    }
+  }
+
+  @Test(expected = DuplicationsException.class)
+  public void shouldDetectCorruption() throws IOException {
+    mappedIndex.insert(new Block("a", new ByteArray(1L), 0, 0, 5));
+    mappedIndex.writeTo(file);
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.seek(randomAccessFile.length() - 1);
+      randomAccessFile.write(0xFF);
+    } finally {
+      randomAccessFile.close();
+    }
+    FileCloneIndex.open(file);
+  }
+
+  @Test(expected = DuplicationsException.class)
+  public void shouldRejectUnsupportedVersion() throws IOException {
+    mappedIndex.writeTo(file);
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.seek(4);
+      randomAccessFile.writeInt(FileCloneIndex.VERSION + 1);
+    } finally {
+      randomAccessFile.close();
+    }
+    FileCloneIndex.open(file);
+  }
+
+  private static List<String> toStrings(Collection<Block> blocks) {
+    List<String> result = Lists.newArrayList();
+    for (Block block : blocks) {
+      result.add(block.getResourceId() + ":" + block.getIndexInFile() + ":" + block.getFirstLineNumber() + ":" + block.getLastLineNumber()
+          + ":" + block.getHashHex());
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+import org.sonar.duplications.block.LongBlocks;
+
+import com.google.common.collect.Lists;
+
+public class LongHashCloneIndexTest {
+
+  @Test
+  public void shouldFindSameBlocksAsMemoryIndex() {
+    CloneIndex memoryIndex = new MemoryCloneIndex();
+    LongHashCloneIndex index = new LongHashCloneIndex();
+    Random random = new Random(1);
+    // enough blocks and resources to grow all arrays
+    for (int i = 0; i < 3000; i++) {
+      Block block = new Block("file" + (i % 1500), new ByteArray(random.nextLong() % 1000), i, i, i + 5);
+      memoryIndex.insert(block);
+      index.insert(block);
+    }
+
+    assertThat(index.size(), is(3000));
+    for (int hash = -1000; hash < 1000; hash++) {
+      ByteArray sequenceHash = new ByteArray((long) hash);
+      List<String> expected = toStrings(memoryIndex.getBySequenceHash(sequenceHash));
+      assertThat(toStrings(index.getBySequenceHash(sequenceHash)), is(expected));
+      assertThat(toStrings(index.getBySequenceHash((long) hash)), is(expected));
+    }
+    for (int file = 0; file < 1500; file++) {
+      assertThat(toStrings(index.getByResourceId("file" + file)), is(toStrings(memoryIndex.getByResourceId("file" + file))));
+    }
+    assertThat(index.getByResourceId("unknown").size(), is(0));
+  }
+
+  @Test
+  public void shouldInsertLongBlocks() {
+    LongBlocks blocks = new LongBlocks("a", 1);
+    blocks.add(-1L, 1, 6);
+    blocks.add(Long.MAX_VALUE, 2, 7);
+    LongHashCloneIndex index = new LongHashCloneIndex();
+    index.insert(blocks);
+
+    assertThat(toStrings(index.getByResourceId("a")), is(toStrings(blocks.toBlocks())));
+    assertThat(index.getBySequenceHash(new ByteArray(-1L)).size(), is(1));
+    assertThat(index.getBySequenceHash(Long.MAX_VALUE).iterator().next().getIndexInFile(), is(1));
+  }
+
+  @Test
+  public void shouldReturnSameInstancesOnRepeatedQueries() {
+    LongHashCloneIndex index = new LongHashCloneIndex();
+    index.insert(new Block("a", new ByteArray(1L), 0, 0, 5));
+    index.insert(new Block("b", new ByteArray(1L), 0, 0, 5));
+
+    Block a = index.getByResourceId("a").iterator().next();
+    Collection<Block> found = index.getBySequenceHash(1L);
+    assertThat(found.iterator().next(), sameInstance(a));
+    assertThat(index.getBySequenceHash(new ByteArray(1L)), sameInstance(found));
+    Block b = index.getByResourceId("b").iterator().next();
+    assertThat(b.getBlockHash(), sameInstance(a.getBlockHash()));
+
+    // insertion of block with same hash invalidates cached result
+    index.insert(new Block("c", new ByteArray(1L), 0, 0, 5));
+    assertThat(index.getBySequenceHash(1L).size(), is(3));
+    assertThat(index.getBySequenceHash(1L).iterator().next(), sameInstance(a));
+  }
+
+  @Test
+  public void shouldNotFindHashesOfOtherLength() {
+    LongHashCloneIndex index = new LongHashCloneIndex();
+    index.insert(new Block("a", new ByteArray(1L), 0, 0, 5));
+    assertThat(index.getBySequenceHash(new ByteArray(1)).size(), is(0));
+  }
+
+  @Test(expected = DuplicationsException.class)
+  public void shouldRejectHashesOfOtherLength() {
+    new LongHashCloneIndex().insert(new Block("a", new ByteArray(1), 0, 0, 5));
+  }
+
+  private static List<String> toStrings(Collection<Block> blocks) {
+    List<String> result = Lists.newArrayList();
+    for (Block block : blocks) {
+      result.add(block.getResourceId() + ":" + block.getIndexInFile() + ":" + block.getFirstLineNumber() + ":" + block.getLastLineNumber()
+          + ":" + block.getHashHex());
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.index;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import com.google.common.collect.Sets;
+
+public class MappedCloneIndexTest {
+
+  private MappedCloneIndex index;
+
+  @Before
+  public void setUp() {
+    // small segments in order to check crossing of their boundaries
+    index = new MappedCloneIndex(new File(System.getProperty("java.io.tmpdir")), 8, 7);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    index.close();
+  }
+
+  @Test
+  public void shouldFindSameBlocksAsMemoryIndex() {
+    CloneIndex expected = new MemoryCloneIndex();
+    Random random = new Random(1);
+    for (int file = 0; file < 20; file++) {
+      for (int i = 0; i < 30; i++) {
+        // negative values check unsigned comparison of bytes
+        Block block = new Block("file" + file, new ByteArray((long) random.nextInt(50) - 25), i, i, i + 5);
+        expected.insert(block);
+        index.insert(block);
+      }
+    }
+    assertThat(index.size(), is(600));
+
+    for (int hash = -30; hash < 30; hash++) {
+      ByteArray sequenceHash = new ByteArray((long) hash);
+      assertSame(index.getBySequenceHash(sequenceHash), expected.getBySequenceHash(sequenceHash));
+    }
+    for (int file = 0; file < 20; file++) {
+      assertSame(index.getByResourceId("file" + file), expected.getByResourceId("file" + file));
+    }
+    assertThat(index.getByResourceId("unknown").size(), is(0));
+  }
+
+  @Test
+  public void shouldRebuildAfterInsert() {
+    index.insert(new Block("a", new ByteArray(1L), 0, 0, 5));
+    assertThat(index.getBySequenceHash(new ByteArray(1L)).size(), is(1));
+    index.insert(new Block("b", new ByteArray(1L), 0, 0, 5));
+    assertThat(index.getBySequenceHash(new ByteArray(1L)).size(), is(2));
+    assertThat(index.getByResourceId("b").size(), is(1));
+  }
+
+  @Test
+  public void shouldNotFindHashOfDifferentLength() {
+    index.insert(new Block("a", new ByteArray(1L), 0, 0, 5));
+    assertThat(index.getBySequenceHash(new ByteArray(1)).size(), is(0));
+  }
+
+  @Test(expected = DuplicationsException.class)
+  public void shouldNotAcceptHashOfDifferentLength() {
+    index.insert(new Block("a", new ByteArray(1), 0, 0, 5));
+  }
+
+  private static void assertSame(Collection<Block> actual, Collection<Block> expected) {
+    assertThat(actual.size(), is(expected.size()));
+    assertThat(toStrings(actual), is(toStrings(expected)));
+  }
+
+  private static Set<String> toStrings(Collection<Block> blocks) {
+    Set<String> result = Sets.newHashSet();
+    for (Block block : blocks) {
+      result.add(block.getResourceId() + ":" + block.getIndexInFile() + ":" + block.getFirstLineNumber() + ":" + block.getLastLineNumber()
+          + ":" + block.getHashHex());
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.utils;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.sonar.duplications.block.ByteArray;
+
+import com.google.common.collect.Lists;
+
+public class ByteArrayBloomFilterTest {
+
+  @Test
+  public void shouldNotHaveFalseNegatives() {
+    ByteArrayBloomFilter filter = ByteArrayBloomFilter.create(10000, 0.01);
+    for (long i = 0; i < 10000; i++) {
+      filter.add(new ByteArray(i * 31));
+    }
+    for (long i = 0; i < 10000; i++) {
+      assertThat(filter.mightContain(new ByteArray(i * 31)), is(true));
+    }
+  }
+
+  @Test
+  public void shouldRespectFalsePositiveProbability() {
+    ByteArrayBloomFilter filter = ByteArrayBloomFilter.create(10000, 0.01);
+    Random random = new Random(1);
+    for (int i = 0; i < 10000; i++) {
+      filter.add(new ByteArray(random.nextLong()));
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 100000; i++) {
+      if (filter.mightContain(new ByteArray(random.nextLong()))) {
+        falsePositives++;
+      }
+    }
+    // expected about 1000 out of 100000
+    assertThat(falsePositives, lessThan(2000));
+  }
+
+  /**
+   * Hashes with equal {@link ByteArray#hashCode()} should not be indistinguishable for filter.
+   */
+  @Test
+  public void shouldDistinguishHashesWithSameHashCode() {
+    // about 10 pairs with same hash code are expected among 300000 random hashes
+    Random random = new Random(1);
+    long[] values = new long[300000];
+    long[] hashCodes = new long[values.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextLong();
+      hashCodes[i] = ((long) new ByteArray(values[i]).hashCode() << 32) | i;
+    }
+    Arrays.sort(hashCodes);
+    ByteArrayBloomFilter filter = ByteArrayBloomFilter.create(1000, 0.001);
+    List<ByteArray> others = Lists.newArrayList();
+    for (int i = 1; i < hashCodes.length; i++) {
+      if (hashCodes[i] >>> 32 == hashCodes[i - 1] >>> 32 && values[(int) hashCodes[i]] != values[(int) hashCodes[i - 1]]) {
+        filter.add(new ByteArray(values[(int) hashCodes[i - 1]]));
+        others.add(new ByteArray(values[(int) hashCodes[i]]));
+      }
+    }
+    assertThat(others.size(), greaterThan(0));
+    int falsePositives = 0;
+    for (ByteArray other : others) {
+      if (filter.mightContain(other)) {
+        falsePositives++;
+      }
+    }
+    assertThat(falsePositives, is(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectIncorrectProbability() {
+    ByteArrayBloomFilter.create(10, 1);
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.utils;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class LongObjectHashMapTest {
+
+  private LongObjectHashMap<String> map = new LongObjectHashMap<String>();
+
+  @Test
+  public void shouldPutAndGet() {
+    map.put(0L, "zero");
+    map.put(1L << 32, "high");
+    map.put(-1L, "negative");
+    assertThat(map.get(0L), is("zero"));
+    assertThat(map.get(1L << 32), is("high"));
+    assertThat(map.get(-1L), is("negative"));
+    assertThat(map.get(1L), nullValue());
+    assertThat(map.size(), is(3));
+  }
+
+  @Test
+  public void shouldReplaceValue() {
+    map.put(42L, "first");
+    map.put(42L, "second");
+    assertThat(map.get(42L), is("second"));
+    assertThat(map.size(), is(1));
+  }
+
+  @Test
+  public void shouldKeepEntryAfterRemove() {
+    map.put(1L, "one");
+    map.put(2L, "two");
+    assertThat(map.remove(1L), is("one"));
+    assertThat(map.remove(1L), nullValue());
+    assertThat(map.get(1L), nullValue());
+    assertThat(map.size(), is(2));
+    assertThat(map.valueAt(0), nullValue());
+    assertThat(map.valueAt(1), is("two"));
+
+    map.put(1L, "again");
+    assertThat(map.get(1L), is("again"));
+    assertThat(map.size(), is(2));
+  }
+
+  @Test
+  public void shouldGrowAndClear() {
+    int count = 10000;
+    for (int i = 0; i < count; i++) {
+      map.put((long) i << 32 | i, Integer.toString(i));
+    }
+    assertThat(map.size(), is(count));
+    for (int i = 0; i < count; i++) {
+      assertThat(map.get((long) i << 32 | i), is(Integer.toString(i)));
+      assertThat(map.keyAt(i), is((long) i << 32 | i));
+    }
+
+    map.clear();
+    assertThat(map.size(), is(0));
+    for (int i = 0; i < count; i++) {
+      assertThat(map.get((long) i << 32 | i), nullValue());
+    }
+  }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.utils;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MurmurHash3Test {
+
+  private final long[] result = new long[2];
+
+  /**
+   * Values from reference implementation.
+   */
+  @Test
+  public void shouldHashBytes() throws UnsupportedEncodingException {
+    checkHash("hell", 0, 0x629942693e10f867L, 0x92db0b82baeb5347L);
+    checkHash("hello", 1, 0xa78ddff5adae8d10L, 0x128900ef20900135L);
+    checkHash("The quick brown fox jumps over the lazy dog", 0, 0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L);
+  }
+
+  private void checkHash(String value, long seed, long h1, long h2) throws UnsupportedEncodingException {
+    byte[] bytes = value.getBytes("US-ASCII");
+    MurmurHash3.hash128(bytes, 0, bytes.length, seed, result);
+    assertThat(result[0], is(h1));
+    assertThat(result[1], is(h2));
+  }
+
+  @Test
+  public void shouldHashLongsAsLittleEndianBytes() {
+    Random random = new Random(1);
+    for (int length = 0; length < 6; length++) {
+      long[] longs = new long[length + 1];
+      byte[] bytes = new byte[length * 8];
+      for (int i = 0; i < length; i++) {
+        longs[i + 1] = random.nextLong();
+        for (int j = 0; j < 8; j++) {
+          bytes[i * 8 + j] = (byte) (longs[i + 1] >>> (8 * j));
+        }
+      }
+      MurmurHash3.hash128(bytes, 0, bytes.length, 42, result);
+      long[] expected = result.clone();
+      MurmurHash3.hash128(longs, 1, length, 42, result);
+      assertThat(result[0], is(expected[0]));
+      assertThat(result[1], is(expected[1]));
+    }
+  }
+
+  @Test
+  public void shouldHashCharactersAsUtf16() throws UnsupportedEncodingException {
+    String value = "";
+    for (int length = 0; length < 20; length++) {
+      byte[] bytes = value.getBytes("UTF-16LE");
+      MurmurHash3.hash128(bytes, 0, bytes.length, 7, result);
+      assertThat(MurmurHash3.hash64(value, 7), is(result[0]));
+      value += (char) ('a' + length * 1000);
+    }
+  }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.utils;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.duplications.DuplicationsException;
+
+public class SourceReaderTest {
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("source", ".java");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void shouldReadSmallFile() throws IOException {
+    write("class A {\n  int x = 1; // \u00e9\u4e2d\n}\n", "UTF-8");
+    SourceReader sourceReader = new SourceReader("UTF-8");
+    CharBuffer buffer = sourceReader.read(file);
+    assertThat(buffer.toString(), is("class A {\n  int x = 1; // \u00e9\u4e2d\n}\n"));
+  }
+
+  @Test
+  public void shouldReadLargeFileInChunks() throws IOException {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      content.append("int x").append(i).append(" = ").append(i).append("; // \u00fc\n");
+    }
+    write(content.toString(), "ISO-8859-1");
+    SourceReader sourceReader = new SourceReader("ISO-8859-1", 1024, 1);
+    assertThat(sourceReader.read(file).toString(), is(content.toString()));
+  }
+
+  /**
+   * Size of chunk is odd, so multi-byte characters are split between chunks.
+   */
+  @Test
+  public void shouldDecodeCharactersSplitBetweenChunks() throws IOException {
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      content.append("\u00e9\u4e2d").append(i).append('\n');
+    }
+    write(content.toString(), "UTF-8");
+    SourceReader sourceReader = new SourceReader("UTF-8", 17, 1);
+    assertThat(sourceReader.read(file).toString(), is(content.toString()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotAllowTooSmallChunk() {
+    new SourceReader("UTF-8", 1, 1);
+  }
+
+  @Test
+  public void shouldReuseReleasedBuffer() throws IOException {
+    write("first", "UTF-8");
+    SourceReader sourceReader = new SourceReader("UTF-8");
+    CharBuffer first = sourceReader.read(file);
+    sourceReader.release(first);
+
+    write("second", "UTF-8");
+    CharBuffer second = sourceReader.read(file);
+    assertThat(second, sameInstance(first));
+    assertThat(second.toString(), is("second"));
+  }
+
+  @Test
+  public void shouldProvideReaderWithoutCopy() throws IOException {
+    Reader reader = SourceReader.asReader(CharBuffer.wrap("abcdef"));
+    char[] chars = new char[4];
+    assertThat(reader.read(chars, 0, 4), is(4));
+    assertThat(new String(chars), is("abcd"));
+    assertThat(reader.read(), is((int) 'e'));
+    assertThat(reader.read(chars, 0, 4), is(1));
+    assertThat(reader.read(chars, 0, 4), is(-1));
+  }
+
+  @Test(expected = DuplicationsException.class)
+  public void shouldFailOnMissingFile() {
+    file.delete();
+    new SourceReader("UTF-8").read(file);
+  }
+
+  private void write(String content, String charset) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes(charset));
+    } finally {
+      out.close();
+    }
+  }
+
+}
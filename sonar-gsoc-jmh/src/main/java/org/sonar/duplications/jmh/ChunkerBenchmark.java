@@ -0,0 +1,101 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.duplications.benchmark.hash.DigestHashBlockChunker;
+import org.sonar.duplications.benchmark.hash.IntRabinKarpBlockChunker;
+import org.sonar.duplications.block.BlockChunker;
+import org.sonar.duplications.block.LongBlockChunker;
+import org.sonar.duplications.block.Murmur3BlockChunker;
+import org.sonar.duplications.block.RollingHashBlockChunker;
+
+/**
+ * Chunking of statements of all input files into blocks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(3)
+@State(Scope.Benchmark)
+public class ChunkerBenchmark {
+
+  @Param({ "BlockChunker", "IntRabinKarpBlockChunker", "DigestHashBlockChunker", "LongBlockChunker",
+      "RollingHashBlockChunker", "RollingMurmurHashBlockChunker", "RollingDigestHashBlockChunker",
+      "Murmur3BlockChunker64", "Murmur3BlockChunker128" })
+  public String chunker;
+
+  private Inputs inputs;
+  private BlockChunker blockChunker;
+
+  @Setup
+  public void setUp() {
+    inputs = Inputs.get();
+    blockChunker = createChunker(chunker);
+  }
+
+  static BlockChunker createChunker(String chunker) {
+    if ("BlockChunker".equals(chunker)) {
+      return new BlockChunker(Inputs.BLOCK_SIZE);
+    } else if ("IntRabinKarpBlockChunker".equals(chunker)) {
+      return new IntRabinKarpBlockChunker(Inputs.BLOCK_SIZE);
+    } else if ("DigestHashBlockChunker".equals(chunker)) {
+      return new DigestHashBlockChunker(DigestHashBlockChunker.Algorithm.MD5, Inputs.BLOCK_SIZE);
+    } else if ("LongBlockChunker".equals(chunker)) {
+      return new LongBlockChunker(Inputs.BLOCK_SIZE);
+    } else if ("RollingHashBlockChunker".equals(chunker)) {
+      return new RollingHashBlockChunker(Inputs.BLOCK_SIZE);
+    } else if ("RollingMurmurHashBlockChunker".equals(chunker)) {
+      return new RollingHashBlockChunker(Inputs.BLOCK_SIZE, RollingHashBlockChunker.MURMUR_HASHER);
+    } else if ("RollingDigestHashBlockChunker".equals(chunker)) {
+      return new RollingHashBlockChunker(Inputs.BLOCK_SIZE, RollingHashBlockChunker.digestHasher("MD5"));
+    } else if ("Murmur3BlockChunker64".equals(chunker)) {
+      return new Murmur3BlockChunker(Inputs.BLOCK_SIZE, Murmur3BlockChunker.Width.BITS_64);
+    } else if ("Murmur3BlockChunker128".equals(chunker)) {
+      return new Murmur3BlockChunker(Inputs.BLOCK_SIZE, Murmur3BlockChunker.Width.BITS_128);
+    }
+    throw new IllegalArgumentException("Unknown chunker: " + chunker);
+  }
+
+  /**
+   * All chunkers are measured with creation of blocks, see {@link LongChunkerBenchmark} for chunking into primitive arrays.
+   */
+  @Benchmark
+  public void chunk(Blackhole blackhole) {
+    for (int i = 0; i < inputs.size(); i++) {
+      blackhole.consume(blockChunker.chunk(inputs.getResourceId(i), inputs.getStatements(i)));
+    }
+  }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.duplications.algorithm.FileBlockGroup;
+import org.sonar.duplications.algorithm.filter.BruteForceCloneFilter;
+import org.sonar.duplications.algorithm.filter.IntervalTreeCloneFilter;
+import org.sonar.duplications.algorithm.filter.SweepLineCloneFilter;
+import org.sonar.duplications.index.CloneGroup;
+import org.sonar.duplications.index.MemoryCloneIndex;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Filtering of clones of all input files, which were reported without filtering.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(3)
+@State(Scope.Benchmark)
+public class CloneFilterBenchmark {
+
+  private final IntervalTreeCloneFilter intervalTreeFilter = new IntervalTreeCloneFilter();
+  private final BruteForceCloneFilter bruteForceFilter = new BruteForceCloneFilter();
+  private final SweepLineCloneFilter sweepLineFilter = new SweepLineCloneFilter();
+
+  private List<List<CloneGroup>> clones;
+
+  @Setup
+  public void setUp() {
+    MemoryCloneIndex index = new MemoryCloneIndex();
+    List<FileBlockGroup> fileBlockGroups = Inputs.get().chunkAndIndex(index);
+    UnfilteredCloneReporter reporter = new UnfilteredCloneReporter(index);
+    clones = Lists.newArrayList();
+    for (FileBlockGroup fileBlockGroup : fileBlockGroups) {
+      List<CloneGroup> fileClones = reporter.reportClones(fileBlockGroup);
+      if (!fileClones.isEmpty()) {
+        clones.add(fileClones);
+      }
+    }
+  }
+
+  @Benchmark
+  public void intervalTree(Blackhole blackhole) {
+    for (List<CloneGroup> fileClones : clones) {
+      blackhole.consume(intervalTreeFilter.filter(fileClones));
+    }
+  }
+
+  @Benchmark
+  public void bruteForce(Blackhole blackhole) {
+    for (List<CloneGroup> fileClones : clones) {
+      blackhole.consume(bruteForceFilter.filter(fileClones));
+    }
+  }
+
+  @Benchmark
+  public void sweepLine(Blackhole blackhole) {
+    for (List<CloneGroup> fileClones : clones) {
+      blackhole.consume(sweepLineFilter.filter(fileClones));
+    }
+  }
+
+}
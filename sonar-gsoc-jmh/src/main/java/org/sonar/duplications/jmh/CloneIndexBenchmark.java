@@ -0,0 +1,101 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.BlockChunker;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.index.ConcurrentCloneIndex;
+import org.sonar.duplications.index.LongHashCloneIndex;
+import org.sonar.duplications.index.MemoryCloneIndex;
+import org.sonar.duplications.index.PackedMemoryCloneIndex;
+
+/**
+ * Population of index by blocks of all input files and lookup of all these blocks by hash.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(3)
+@State(Scope.Benchmark)
+public class CloneIndexBenchmark {
+
+  @Param({ "MemoryCloneIndex", "PackedMemoryCloneIndex", "ConcurrentCloneIndex", "LongHashCloneIndex" })
+  public String index;
+
+  private List<List<Block>> blocks;
+  private CloneIndex populatedIndex;
+
+  @Setup
+  public void setUp() {
+    blocks = Inputs.get().chunk(new BlockChunker(Inputs.BLOCK_SIZE));
+    populatedIndex = insert();
+  }
+
+  @Benchmark
+  public CloneIndex insert() {
+    CloneIndex cloneIndex = createIndex();
+    for (List<Block> fileBlocks : blocks) {
+      for (Block block : fileBlocks) {
+        cloneIndex.insert(block);
+      }
+    }
+    return cloneIndex;
+  }
+
+  @Benchmark
+  public void getBySequenceHash(Blackhole blackhole) {
+    for (List<Block> fileBlocks : blocks) {
+      for (Block block : fileBlocks) {
+        blackhole.consume(populatedIndex.getBySequenceHash(block.getBlockHash()));
+      }
+    }
+  }
+
+  private CloneIndex createIndex() {
+    if ("MemoryCloneIndex".equals(index)) {
+      return new MemoryCloneIndex();
+    } else if ("PackedMemoryCloneIndex".equals(index)) {
+      return new PackedMemoryCloneIndex();
+    } else if ("ConcurrentCloneIndex".equals(index)) {
+      return new ConcurrentCloneIndex();
+    } else if ("LongHashCloneIndex".equals(index)) {
+      return new LongHashCloneIndex();
+    }
+    throw new IllegalArgumentException("Unknown index: " + index);
+  }
+
+}
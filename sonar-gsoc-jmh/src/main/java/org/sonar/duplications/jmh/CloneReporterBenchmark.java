@@ -0,0 +1,118 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.duplications.algorithm.AdvancedGroupCloneReporter;
+import org.sonar.duplications.algorithm.CloneConsumer;
+import org.sonar.duplications.algorithm.FileBlockGroup;
+import org.sonar.duplications.block.LongBlockChunker;
+import org.sonar.duplications.block.LongBlocks;
+import org.sonar.duplications.index.CloneGroup;
+import org.sonar.duplications.index.LongHashCloneIndex;
+import org.sonar.duplications.index.MemoryCloneIndex;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Reporting of clones for all input files, when index already populated.
+ * <p>
+ * Paths:
+ * <ul>
+ * <li><tt>MemoryCloneIndex</tt> - {@link FileBlockGroup}s and {@link MemoryCloneIndex}</li>
+ * <li><tt>LongHashCloneIndex</tt> - {@link FileBlockGroup}s and {@link LongHashCloneIndex}, i.e. lookup by {@link org.sonar.duplications.block.ByteArray}</li>
+ * <li><tt>LongBlocks</tt> - {@link LongBlocks} and {@link LongHashCloneIndex}, i.e. lookup by <tt>long</tt> without conversions of hashes</li>
+ * </ul>
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(3)
+@State(Scope.Benchmark)
+public class CloneReporterBenchmark {
+
+  @Param({ "MemoryCloneIndex", "LongHashCloneIndex", "LongBlocks" })
+  public String path;
+
+  private List<FileBlockGroup> fileBlockGroups;
+  private List<LongBlocks> longBlocks;
+  private AdvancedGroupCloneReporter reporter;
+
+  @Setup
+  public void setUp() {
+    Inputs inputs = Inputs.get();
+    if ("MemoryCloneIndex".equals(path)) {
+      MemoryCloneIndex index = new MemoryCloneIndex();
+      fileBlockGroups = inputs.chunkAndIndex(index);
+      reporter = new AdvancedGroupCloneReporter(index);
+    } else if ("LongHashCloneIndex".equals(path)) {
+      LongHashCloneIndex index = new LongHashCloneIndex();
+      fileBlockGroups = inputs.chunkAndIndex(index);
+      reporter = new AdvancedGroupCloneReporter(index);
+    } else if ("LongBlocks".equals(path)) {
+      LongHashCloneIndex index = new LongHashCloneIndex();
+      LongBlockChunker blockChunker = new LongBlockChunker(Inputs.BLOCK_SIZE);
+      longBlocks = Lists.newArrayListWithCapacity(inputs.size());
+      for (int i = 0; i < inputs.size(); i++) {
+        LongBlocks fileBlocks = blockChunker.chunkToLongs(inputs.getResourceId(i), inputs.getStatements(i));
+        index.insert(fileBlocks);
+        longBlocks.add(fileBlocks);
+      }
+      reporter = new AdvancedGroupCloneReporter(index);
+    } else {
+      throw new IllegalArgumentException("Unknown path: " + path);
+    }
+  }
+
+  @Benchmark
+  public void reportClones(final Blackhole blackhole) {
+    if (longBlocks == null) {
+      for (FileBlockGroup fileBlockGroup : fileBlockGroups) {
+        blackhole.consume(reporter.reportClones(fileBlockGroup));
+      }
+    } else {
+      CloneConsumer consumer = new CloneConsumer() {
+        public void accept(CloneGroup clone) {
+          blackhole.consume(clone);
+        }
+      };
+      for (LongBlocks fileBlocks : longBlocks) {
+        reporter.reportClones(fileBlocks, consumer);
+      }
+    }
+  }
+
+}
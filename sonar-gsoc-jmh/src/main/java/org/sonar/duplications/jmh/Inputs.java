@@ -0,0 +1,212 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.jmh;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.sonar.duplications.DuplicationsException;
+import org.sonar.duplications.algorithm.FileBlockGroup;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.BlockChunker;
+import org.sonar.duplications.index.CloneIndex;
+import org.sonar.duplications.java.JavaStatementBuilder;
+import org.sonar.duplications.java.JavaTokenProducer;
+import org.sonar.duplications.statement.Statement;
+import org.sonar.duplications.statement.StatementChunker;
+import org.sonar.duplications.token.TokenChunker;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Statements of source files, which are used as inputs for all benchmarks.
+ * <p>
+ * Tokenization is not a subject of benchmarks and its results might depend on version of tokenizer,
+ * so statements are produced only once from sources and stored in file. All following runs load statements from this file,
+ * so that all benchmarks work on exactly same data and results of different runs can be compared.
+ * </p>
+ * <p>
+ * Location of file can be specified by system property {@value #INPUTS_PROPERTY} and location of sources by {@value #SOURCES_PROPERTY}.
+ * By default sources of commons-collections 3.2 are used, which are unpacked during build.
+ * </p>
+ */
+public final class Inputs {
+
+  public static final String INPUTS_PROPERTY = "sonar.jmh.inputs";
+  public static final String SOURCES_PROPERTY = "sonar.jmh.sources";
+
+  private static final String DEFAULT_INPUTS = "target/jmh-inputs.dat";
+  private static final String DEFAULT_SOURCES = "target/test-projects/commons-collections-3.2";
+
+  private static final int MAGIC = 0x53544d54;
+  private static final int VERSION = 1;
+
+  public static final int BLOCK_SIZE = 13;
+
+  private static Inputs instance;
+
+  private final List<String> resourceIds;
+  private final List<List<Statement>> statements;
+
+  private Inputs(List<String> resourceIds, List<List<Statement>> statements) {
+    this.resourceIds = resourceIds;
+    this.statements = statements;
+  }
+
+  /**
+   * Loads inputs from file or creates file, if it doesn't exist.
+   */
+  public static synchronized Inputs get() {
+    if (instance == null) {
+      File file = new File(System.getProperty(INPUTS_PROPERTY, DEFAULT_INPUTS));
+      try {
+        if (!file.exists()) {
+          write(file, new File(System.getProperty(SOURCES_PROPERTY, DEFAULT_SOURCES)));
+        }
+        instance = read(file);
+      } catch (IOException e) {
+        throw new DuplicationsException("Unable to load inputs from " + file, e);
+      }
+    }
+    return instance;
+  }
+
+  public int size() {
+    return resourceIds.size();
+  }
+
+  public String getResourceId(int i) {
+    return resourceIds.get(i);
+  }
+
+  public List<Statement> getStatements(int i) {
+    return statements.get(i);
+  }
+
+  /**
+   * @return blocks of all files in same order as files
+   */
+  public List<List<Block>> chunk(BlockChunker blockChunker) {
+    List<List<Block>> result = Lists.newArrayListWithCapacity(size());
+    for (int i = 0; i < size(); i++) {
+      result.add(blockChunker.chunk(getResourceId(i), getStatements(i)));
+    }
+    return result;
+  }
+
+  /**
+   * Populates given index by blocks of all files.
+   *
+   * @return blocks of all files in same order as files
+   */
+  public List<FileBlockGroup> chunkAndIndex(CloneIndex index) {
+    List<List<Block>> blocks = chunk(new BlockChunker(BLOCK_SIZE));
+    List<FileBlockGroup> result = Lists.newArrayListWithCapacity(size());
+    for (int i = 0; i < size(); i++) {
+      for (Block block : blocks.get(i)) {
+        index.insert(block);
+      }
+      result.add(FileBlockGroup.create(getResourceId(i), blocks.get(i)));
+    }
+    return result;
+  }
+
+  private static void write(File file, File sourcesDir) throws IOException {
+    List<File> sources = Lists.newArrayList();
+    listJavaFiles(sourcesDir, sources);
+    if (sources.isEmpty()) {
+      throw new DuplicationsException("No sources found in " + sourcesDir);
+    }
+    // order of files should not depend on file system
+    Collections.sort(sources);
+
+    TokenChunker tokenChunker = JavaTokenProducer.build();
+    StatementChunker statementChunker = JavaStatementBuilder.build();
+    String prefix = sourcesDir.getAbsolutePath();
+    file.getAbsoluteFile().getParentFile().mkdirs();
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(sources.size());
+      for (File source : sources) {
+        List<Statement> fileStatements = statementChunker.chunk(tokenChunker.chunk(source));
+        out.writeUTF(source.getAbsolutePath().substring(prefix.length()));
+        out.writeInt(fileStatements.size());
+        for (Statement statement : fileStatements) {
+          out.writeInt(statement.getStartLine());
+          out.writeInt(statement.getEndLine());
+          out.writeUTF(statement.getValue());
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static Inputs read(File file) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new DuplicationsException("Unsupported format of inputs: " + file);
+      }
+      int files = in.readInt();
+      List<String> resourceIds = Lists.newArrayListWithCapacity(files);
+      List<List<Statement>> statements = Lists.newArrayListWithCapacity(files);
+      for (int i = 0; i < files; i++) {
+        resourceIds.add(in.readUTF());
+        int count = in.readInt();
+        List<Statement> fileStatements = Lists.newArrayListWithCapacity(count);
+        for (int j = 0; j < count; j++) {
+          int startLine = in.readInt();
+          int endLine = in.readInt();
+          fileStatements.add(new Statement(startLine, endLine, in.readUTF()));
+        }
+        statements.add(Collections.unmodifiableList(fileStatements));
+      }
+      return new Inputs(Collections.unmodifiableList(resourceIds), Collections.unmodifiableList(statements));
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void listJavaFiles(File dir, List<File> result) {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.isDirectory()) {
+        listJavaFiles(file, result);
+      } else if (file.getName().endsWith(".java")) {
+        result.add(file);
+      }
+    }
+  }
+
+}
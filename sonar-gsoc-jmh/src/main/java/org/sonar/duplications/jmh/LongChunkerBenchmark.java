@@ -0,0 +1,69 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sonar.duplications.block.LongBlockChunker;
+
+/**
+ * Chunking of statements of all input files into primitive arrays by {@link LongBlockChunker#chunkToLongs(String, java.util.List)},
+ * i.e. without creation of blocks. Same chunkers with creation of blocks are measured by {@link ChunkerBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(3)
+@State(Scope.Benchmark)
+public class LongChunkerBenchmark {
+
+  @Param({ "LongBlockChunker", "RollingHashBlockChunker", "RollingMurmurHashBlockChunker", "RollingDigestHashBlockChunker" })
+  public String chunker;
+
+  private Inputs inputs;
+  private LongBlockChunker blockChunker;
+
+  @Setup
+  public void setUp() {
+    inputs = Inputs.get();
+    blockChunker = (LongBlockChunker) ChunkerBenchmark.createChunker(chunker);
+  }
+
+  @Benchmark
+  public void chunkToLongs(Blackhole blackhole) {
+    for (int i = 0; i < inputs.size(); i++) {
+      blackhole.consume(blockChunker.chunkToLongs(inputs.getResourceId(i), inputs.getStatements(i)));
+    }
+  }
+
+}
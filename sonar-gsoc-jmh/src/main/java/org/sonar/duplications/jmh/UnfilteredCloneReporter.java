@@ -0,0 +1,51 @@
+/*
+ * Sonar, open source software quality management tool.
+ * Copyright (C) 2008-2011 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * Sonar is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * Sonar is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with Sonar; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.duplications.jmh;
+
+import java.util.List;
+
+import org.sonar.duplications.algorithm.AbstractAdvancedCloneReporter;
+import org.sonar.duplications.algorithm.CloneConsumer;
+import org.sonar.duplications.algorithm.ClonePair;
+import org.sonar.duplications.index.CloneGroup;
+import org.sonar.duplications.index.CloneIndex;
+
+/**
+ * Reports clones without filtering in order to prepare inputs for {@link CloneFilterBenchmark}.
+ */
+class UnfilteredCloneReporter extends AbstractAdvancedCloneReporter {
+
+  public UnfilteredCloneReporter(CloneIndex cloneIndex) {
+    super(cloneIndex);
+  }
+
+  @Override
+  protected void startFile() {
+    // nothing to do
+  }
+
+  @Override
+  protected void processClonePairs(List<ClonePair> pairs, int lastIndexInFile, CloneConsumer consumer) {
+    for (CloneGroup clone : groupClonePairs(pairs)) {
+      consumer.accept(clone);
+    }
+  }
+
+}